@@ -1,9 +1,14 @@
-﻿using System.Net;
+using System.Buffers.Binary;
+using System.Net;
+using System.Net.Sockets;
 using System.Text;
 using System.Text.Json;
+using System.Text.Json.Nodes;
 using System.Threading;
 using Windows.Media.Control;
 using System.Runtime.InteropServices.WindowsRuntime;
+using System.Security.Cryptography;
+using System.Text.Json.Serialization;
 
 internal class Program
 {
@@ -14,6 +19,24 @@ internal class Program
     // Single immutable state object (atomically replaced)
     private static MediaState _state = MediaState.Empty;
 
+    // Every session the system reports, for /media_info?sessions=1. Ids are the app's
+    // The states and their numbers are replaced as a whole; all are guarded by _sessionIds.
+    // The states are replaced as a whole; both are guarded by _sessionIds.
+    private static readonly Dictionary<GlobalSystemMediaTransportControlsSession, string> _sessionIds =
+        new(ReferenceEqualityComparer.Instance);
+    private static IReadOnlyDictionary<string, MediaState> _sessionStates = new Dictionary<string, MediaState>();
+    // Per session, the sequence numbers in which its state and its text last changed
+    private static IReadOnlyDictionary<string, SessionSeqs> _sessionSeqs = new Dictionary<string, SessionSeqs>();
+
+    // Every change to the sessions is numbered. Numbers continue from the start time, so a restarted
+    // companion never reuses one; clients send the last one back as ?since= and get "unchanged" or a
+    // patch against any of the last SessionsHistory versions, a full document otherwise.
+    private const int SessionsHistory = 64;
+    private static SessionsVersion _published =
+        new(DateTimeOffset.UtcNow.ToUnixTimeMilliseconds() * 1000,
+            new Dictionary<string, MediaState>(), new Dictionary<string, SessionSeqs>(), null);
+    private static readonly Queue<SessionsVersion> _sessionsHistory = new();
+
     // Playback simulation data (used only by polling loop)
     private static PlaybackSim _sim = PlaybackSim.Empty;
 
@@ -25,15 +48,58 @@ internal class Program
     // Prevents overlapping media updates from multiple events
     private static readonly SemaphoreSlim _updateLock = new(1, 1);
 
+    // Completed (and replaced) whenever the state changes, wakes /media_events subscribers
+    private static TaskCompletionSource _stateChanged = NewStateSignal();
+
+    // Same for any session's state or the current pick, wakes /media_events?sessions=1 subscribers
+    private static TaskCompletionSource _sessionsChanged = NewStateSignal();
+
+    // Completed once a second of playback, wakes v1 /media_events subscribers: their Position string
+    // is all they have, they can't extrapolate it
+    private static TaskCompletionSource _positionTicked = NewStateSignal();
+
+    // Keep-alive comment interval for /media_events subscribers
+    private static readonly TimeSpan EventHeartbeat = TimeSpan.FromSeconds(10);
+
+    // Binary state frames (see StateFrameCodec on the mod side) are served here, next to the executable
+    private static readonly string SocketPath = Path.Combine(AppContext.BaseDirectory, "nowplaying.sock");
+
+    // HTTP port; "--port 0" picks a free one. "--port-file <path>" publishes "port pid" there once the
+    // listener is up, which is how the mod's instances find the one companion they share.
+    private const int DefaultPort = 58888;
+    private static int _port = DefaultPort;
+    private static string? _portFile;
+
+    // Requests are accepted on this many pending GetContextAsync calls, so a burst of polls from
+    // several game instances doesn't queue behind a single accept
+    private static readonly int AcceptLoops = Math.Max(4, Environment.ProcessorCount);
+
+    // With --stdio the same frames go to stdout as Base64 lines behind this prefix (MediaStdioStream on
+    // the mod side), between the ordinary log lines. No HTTP listener or socket is opened then.
+    private const string StdioLinePrefix = "\u001ENP1 ";
+
     // JSON serialization options
     private static readonly JsonSerializerOptions _jsonOptions = new()
     {
         PropertyNamingPolicy = JsonNamingPolicy.CamelCase
     };
 
-    public static async Task Main()
+    public static async Task Main(string[] args)
     {
         using var cts = new CancellationTokenSource();
+        var stdio = args.Contains("--stdio");
+        var portArg = Array.IndexOf(args, "--port");
+        if (portArg >= 0 && portArg + 1 < args.Length)
+            _port = int.Parse(args[portArg + 1]);
+        var portFileArg = Array.IndexOf(args, "--port-file");
+        if (portFileArg >= 0 && portFileArg + 1 < args.Length)
+            _portFile = args[portFileArg + 1];
+
+        if (stdio)
+        {
+            // The mod decodes our output as UTF-8; state lines are ASCII either way
+            Console.OutputEncoding = new UTF8Encoding(encoderShouldEmitUTF8Identifier: false);
+        }
 
         // Graceful shutdown on Ctrl+C
         Console.CancelKeyPress += (_, e) =>
@@ -59,18 +125,20 @@ internal class Program
             await SafeDiscoverAsync(cts.Token, "SessionsChanged");
 
         // Start background tasks
-        var httpTask = StartHttpServerAsync(cts.Token);
-        var pollTask = PollPlaybackPositionAsync(cts.Token);
+        var tasks = stdio
+            ? new[] { WriteStdioFramesAsync(cts.Token) }
+            : new[] { StartHttpServerAsync(cts.Token), StartSocketServerAsync(cts.Token), PollPlaybackPositionAsync(cts.Token) };
 
         try
         {
-            await Task.WhenAll(httpTask, pollTask);
+            await Task.WhenAll(tasks);
         }
         catch (OperationCanceledException)
         {
             // Expected during shutdown
         }
 
+        RemovePortFile();
         Console.WriteLine($"{DateTime.Now} Application stopped.");
     }
 
@@ -101,6 +169,8 @@ internal class Program
         var sessions = _sessionManager.GetSessions()?.ToList() ?? new();
         var current = _sessionManager.GetCurrentSession();
 
+        TrackSessions(sessions);
+
         if (sessions.Count > 0)
         {
             var playing = sessions
@@ -123,21 +193,62 @@ internal class Program
         }
 
         if (!ReferenceEquals(targetSession, _currentSession))
-            SubscribeToSession(targetSession);
+            SelectSession(targetSession);
         else if (_currentSession == null)
             SetState(MediaState.Empty);
     }
 
-    private static void SubscribeToSession(GlobalSystemMediaTransportControlsSession? session)
+    // Every session is subscribed to, not just the current one, so the sessions document stays up to
+    // date for all of them; sessions that went away are dropped
+    private static void TrackSessions(List<GlobalSystemMediaTransportControlsSession> sessions)
     {
-        // Unsubscribe from previous session
-        if (_currentSession != null)
+        var added = new List<GlobalSystemMediaTransportControlsSession>();
+        lock (_sessionIds)
         {
-            _currentSession.MediaPropertiesChanged -= OnMediaPropertiesChanged;
-            _currentSession.PlaybackInfoChanged -= OnPlaybackInfoChanged;
+            var gone = _sessionIds.Keys.Where(s => !sessions.Any(t => ReferenceEquals(s, t))).ToList();
+            foreach (var session in gone)
+            {
+                session.MediaPropertiesChanged -= OnMediaPropertiesChanged;
+                session.PlaybackInfoChanged -= OnPlaybackInfoChanged;
+                session.TimelinePropertiesChanged -= OnTimelinePropertiesChanged;
+                RemoveSessionState(_sessionIds[session]);
+                _sessionIds.Remove(session);
+            }
+
+            foreach (var session in sessions)
+            {
+                if (_sessionIds.ContainsKey(session))
+                    continue;
+
+                _sessionIds[session] = UniqueSessionId(session.SourceAppUserModelId ?? "");
+                session.MediaPropertiesChanged += OnMediaPropertiesChanged;
+                session.PlaybackInfoChanged += OnPlaybackInfoChanged;
+                session.TimelinePropertiesChanged += OnTimelinePropertiesChanged;
+                added.Add(session);
+            }
         }
 
-        _currentSession = session;
+        foreach (var session in added)
+            _ = UpdateMediaInfoAsync(session, CancellationToken.None);
+    }
+
+    // Only call while holding _sessionIds
+    private static string UniqueSessionId(string app)
+    {
+        var id = app.Length > 0 ? app : "session";
+        for (var n = 2; _sessionIds.ContainsValue(id); n++)
+            id = $"{(app.Length > 0 ? app : "session")}#{n}";
+        return id;
+    }
+
+    private static void SelectSession(GlobalSystemMediaTransportControlsSession? session)
+    {
+        lock (_sessionIds)
+        {
+            _currentSession = session;
+            PublishSessions();
+        }
+        SignalSessionsChanged();
 
         if (_currentSession == null)
         {
@@ -147,10 +258,6 @@ internal class Program
             return;
         }
 
-        // Subscribe to new session events
-        _currentSession.MediaPropertiesChanged += OnMediaPropertiesChanged;
-        _currentSession.PlaybackInfoChanged += OnPlaybackInfoChanged;
-
         _ = UpdateMediaInfoAsync(_currentSession, CancellationToken.None);
     }
 
@@ -162,12 +269,18 @@ internal class Program
         GlobalSystemMediaTransportControlsSession sender, object args)
         => _ = HandleSessionEventAsync(sender);
 
+    // Seeks only show up as timeline changes; push them so streaming clients resync
+    private static void OnTimelinePropertiesChanged(
+        GlobalSystemMediaTransportControlsSession sender, object args)
+        => _ = HandleSessionEventAsync(sender);
+
     private static async Task HandleSessionEventAsync(
         GlobalSystemMediaTransportControlsSession sender)
     {
-        if (ReferenceEquals(sender, _currentSession))
-            await UpdateMediaInfoAsync(sender, CancellationToken.None);
-        else
+        await UpdateMediaInfoAsync(sender, CancellationToken.None);
+
+        // Another session changed; it may have become the one to show
+        if (!ReferenceEquals(sender, _currentSession))
             await DiscoverAndSubscribeToSession(CancellationToken.None);
     }
 
@@ -184,11 +297,11 @@ internal class Program
             var media = await session.TryGetMediaPropertiesAsync();
             var playback = session.GetPlaybackInfo();
             var timeline = session.GetTimelineProperties();
+            var anchor = TimelineAnchor(timeline);
 
-            // Update playback simulation info
-            _sim = new PlaybackSim(
+            var sim = new PlaybackSim(
                 timeline.Position,
-                DateTime.UtcNow,
+                anchor.UtcDateTime,
                 playback?.PlaybackRate ?? 1.0,
                 playback?.PlaybackStatus ==
                     GlobalSystemMediaTransportControlsSessionPlaybackStatus.Playing,
@@ -205,8 +318,7 @@ internal class Program
                 image = ms.ToArray();
             }
 
-            // Atomically replace state
-            SetState(new MediaState(
+            var state = new MediaState(
                 media?.Title ?? "",
                 media?.Artist ?? "",
                 session.SourceAppUserModelId ?? "",
@@ -214,16 +326,33 @@ internal class Program
                 FormatTime(timeline.Position),
                 FormatTime(timeline.StartTime),
                 FormatTime(timeline.EndTime),
-                image
-            ));
+                image,
+                image != null ? Convert.ToHexString(SHA1.HashData(image)) : null,
+                ToMillis(timeline.Position),
+                ToMillis(timeline.StartTime),
+                ToMillis(timeline.EndTime),
+                playback?.PlaybackRate ?? 1.0,
+                anchor.ToUnixTimeMilliseconds()
+            );
 
+            SetSessionState(session, state);
+            if (!ReferenceEquals(session, _currentSession))
+                return;
+
+            // Atomically replace state and update playback simulation info
+            _sim = sim;
+            SetState(state);
             LogState(force: false);
         }
         catch (Exception ex)
         {
             Console.WriteLine($"{DateTime.Now} Media update failed: {ex.Message}");
-            SetState(MediaState.Empty);
-            _sim = PlaybackSim.Empty;
+            SetSessionState(session, MediaState.Empty);
+            if (ReferenceEquals(session, _currentSession))
+            {
+                SetState(MediaState.Empty);
+                _sim = PlaybackSim.Empty;
+            }
         }
         finally
         {
@@ -237,6 +366,8 @@ internal class Program
 
     private static async Task PollPlaybackPositionAsync(CancellationToken ct)
     {
+        var tickedSecond = -1L;
+
         while (!ct.IsCancellationRequested)
         {
             try
@@ -253,7 +384,16 @@ internal class Program
                     if (pos > sim.EndTime)
                         pos = sim.EndTime;
 
-                    SetState(st with { Position = FormatTime(pos) });
+                    // Only the v1 string moves; v2 clients extrapolate from PositionMs at AnchorMs themselves,
+                    // so the tick only wakes v1 subscribers, and only once a second
+                    SetState(st with { Position = FormatTime(pos) }, notify: false);
+
+                    var second = (long)pos.TotalSeconds;
+                    if (second != tickedSecond)
+                    {
+                        tickedSecond = second;
+                        Interlocked.Exchange(ref _positionTicked, NewStateSignal()).TrySetResult();
+                    }
                 }
             }
             catch { /* polling must never crash */ }
@@ -268,12 +408,47 @@ internal class Program
 
     private static async Task StartHttpServerAsync(CancellationToken ct)
     {
-        var listener = new HttpListener();
-        listener.Prefixes.Add("http://localhost:58888/");
-        listener.Start();
+        var listener = StartListener();
+        Console.WriteLine($"{DateTime.Now} Serving HTTP on port {_port}.");
+        PublishPort();
 
         ct.Register(() => listener.Close());
 
+        await Task.WhenAll(Enumerable.Range(0, AcceptLoops).Select(_ => AcceptLoopAsync(listener, ct)));
+    }
+
+    private static HttpListener StartListener()
+    {
+        // A free port can be taken between probing and binding; try again with another one
+        for (var attempt = 1; ; attempt++)
+        {
+            var port = _port != 0 ? _port : FreeLoopbackPort();
+            var listener = new HttpListener();
+            listener.Prefixes.Add($"http://localhost:{port}/");
+            try
+            {
+                listener.Start();
+                _port = port;
+                return listener;
+            }
+            catch (HttpListenerException) when (_port == 0 && attempt < 5)
+            {
+                listener.Close();
+            }
+        }
+    }
+
+    private static int FreeLoopbackPort()
+    {
+        var probe = new TcpListener(IPAddress.Loopback, 0);
+        probe.Start();
+        var port = ((IPEndPoint)probe.LocalEndpoint).Port;
+        probe.Stop();
+        return port;
+    }
+
+    private static async Task AcceptLoopAsync(HttpListener listener, CancellationToken ct)
+    {
         while (!ct.IsCancellationRequested)
         {
             try
@@ -285,6 +460,32 @@ internal class Program
         }
     }
 
+    // Written to a temporary file and moved into place, so readers never see half of it
+    private static void PublishPort()
+    {
+        if (_portFile == null) return;
+
+        var tmp = _portFile + ".tmp";
+        File.WriteAllText(tmp, $"{_port} {Environment.ProcessId}\n");
+        File.Move(tmp, _portFile, overwrite: true);
+    }
+
+    private static void RemovePortFile()
+    {
+        if (_portFile == null) return;
+
+        try
+        {
+            // A newer companion may already have replaced it
+            if (File.ReadAllText(_portFile).Trim().EndsWith($" {Environment.ProcessId}"))
+                File.Delete(_portFile);
+        }
+        catch
+        {
+            // Already gone
+        }
+    }
+
     private static async Task HandleRequestAsync(
         HttpListenerContext ctx, CancellationToken ct)
     {
@@ -296,17 +497,39 @@ internal class Program
 
         var path = ctx.Request.Url?.AbsolutePath ?? "";
 
+        // Clients opt into protocol v2 (numeric timeline) with ?v=2, and into every session at once
+        // (always v2) with &sessions=1
+        var v2 = ctx.Request.QueryString["v"] == "2";
+        var sessions = ctx.Request.QueryString["sessions"] == "1";
+        long.TryParse(ctx.Request.QueryString["since"], out var since);
+
         if (path == "/media_info")
         {
-            var buffer = JsonSerializer.SerializeToUtf8Bytes(GetState(), _jsonOptions);
+            var buffer = sessions ? SerializeSessions(since, out _) : SerializeState(GetState(), v2);
             res.ContentType = "application/json";
             res.ContentLength64 = buffer.Length;
             await res.OutputStream.WriteAsync(buffer, ct);
         }
-        else if (path == "/media_image")
+        else if (path == "/media_events")
+        {
+            await StreamEventsAsync(res, v2, sessions, ct);
+            return;
+        }
+        else if (path == "/media_image" || path == "/media_image.jpg")
         {
-            var img = GetState().ImageBytes;
-            if (img != null)
+            // ?session=<id> serves that session's artwork instead of the current one's
+            var id = ctx.Request.QueryString["session"];
+            var st = id == null ? GetState() : GetSessionState(id);
+            var img = st.ImageBytes;
+            if (img != null && st.ImageHash != null)
+                res.Headers.Add("ETag", $"\"{st.ImageHash}\"");
+
+            if (img != null && ctx.Request.Headers["If-None-Match"] == $"\"{st.ImageHash}\"")
+            {
+                // Client already has this artwork
+                res.StatusCode = 304;
+            }
+            else if (img != null)
             {
                 res.ContentType = "image/*";
                 res.ContentLength64 = img.Length;
@@ -325,16 +548,289 @@ internal class Program
         res.OutputStream.Close();
     }
 
+    // -------------------------
+    // Unix domain socket server (binary frames)
+    // -------------------------
+
+    private static async Task StartSocketServerAsync(CancellationToken ct)
+    {
+        Socket listener;
+        try
+        {
+            // A stale socket file from a crashed run would make Bind fail
+            File.Delete(SocketPath);
+
+            listener = new Socket(AddressFamily.Unix, SocketType.Stream, ProtocolType.Unspecified);
+            listener.Bind(new UnixDomainSocketEndPoint(SocketPath));
+            // Every game instance sharing this companion connects here
+            listener.Listen(32);
+        }
+        catch (Exception ex)
+        {
+            // HTTP keeps working; the mod falls back to it
+            Console.WriteLine($"{DateTime.Now} Unix socket unavailable: {ex.Message}");
+            return;
+        }
+
+        ct.Register(() => listener.Close());
+
+        while (!ct.IsCancellationRequested)
+        {
+            try
+            {
+                var client = await listener.AcceptAsync(ct);
+                _ = StreamFramesAsync(client, ct);
+            }
+            catch { break; }
+        }
+
+        try { File.Delete(SocketPath); } catch { }
+    }
+
+    // One frame per state change, plus the current state on connect; artwork only when it changed
+    private static async Task StreamFramesAsync(Socket client, CancellationToken ct)
+    {
+        string? sentHash = null;
+
+        try
+        {
+            using var stream = new NetworkStream(client, ownsSocket: true);
+            while (!ct.IsCancellationRequested)
+            {
+                var changed = _stateChanged.Task;
+                var st = GetState();
+
+                var art = st.ImageBytes != null && st.ImageHash != sentHash ? st.ImageBytes : null;
+                await stream.WriteAsync(StateFrame.Encode(st, art), ct);
+                if (art != null) sentHash = st.ImageHash;
+
+                await changed.WaitAsync(ct);
+            }
+        }
+        catch
+        {
+            // Client went away or we are shutting down
+        }
+    }
+
+    // Stdio mode: the same frames as the socket, one line each. Console.Out is synchronized, so a
+    // single WriteLine never interleaves with a log line from another thread.
+    private static async Task WriteStdioFramesAsync(CancellationToken ct)
+    {
+        string? sentHash = null;
+
+        try
+        {
+            while (!ct.IsCancellationRequested)
+            {
+                var changed = _stateChanged.Task;
+                var st = GetState();
+
+                var art = st.ImageBytes != null && st.ImageHash != sentHash ? st.ImageBytes : null;
+                Console.Out.WriteLine(StdioLinePrefix + Convert.ToBase64String(StateFrame.Encode(st, art)));
+                if (art != null) sentHash = st.ImageHash;
+
+                await changed.WaitAsync(ct);
+            }
+        }
+        catch (IOException)
+        {
+            // The mod closed our stdout; nobody is left to read the state
+        }
+    }
+
+    // Server-Sent Events: one "data:" event per state change, plus the current state on connect.
+    // With sessions, the first event is a full sessions document and every later one a patch
+    // against the one before.
+    private static async Task StreamEventsAsync(HttpListenerResponse res, bool v2, bool sessions, CancellationToken ct)
+    {
+        res.ContentType = "text/event-stream";
+        res.SendChunked = true;
+
+        long sent = 0;
+
+        try
+        {
+            var output = res.OutputStream;
+            while (!ct.IsCancellationRequested)
+            {
+                // Grab the signal before reading the state so a change in between is not missed
+                var changed = sessions ? _sessionsChanged.Task
+                    : v2 ? _stateChanged.Task
+                    : Task.WhenAny(_stateChanged.Task, _positionTicked.Task);
+
+                byte[] json;
+                if (sessions)
+                {
+                    json = SerializeSessions(sent, out var seq);
+                    sent = seq;
+                }
+                else
+                {
+                    json = SerializeState(GetState(), v2);
+                }
+                await output.WriteAsync(Encoding.UTF8.GetBytes("data: "), ct);
+                await output.WriteAsync(json, ct);
+                await output.WriteAsync(Encoding.UTF8.GetBytes("\n\n"), ct);
+                await output.FlushAsync(ct);
+
+                // Wait for the next change, sending keep-alive comments in the meantime
+                while (await Task.WhenAny(changed, Task.Delay(EventHeartbeat, ct)) != changed)
+                {
+                    await output.WriteAsync(Encoding.UTF8.GetBytes(": ping\n\n"), ct);
+                    await output.FlushAsync(ct);
+                }
+            }
+        }
+        catch
+        {
+            // Subscriber went away or we are shutting down
+        }
+        finally
+        {
+            try { res.OutputStream.Close(); } catch { }
+        }
+    }
+
     // -------------------------
     // Helpers
     // -------------------------
 
-    private static void SetState(MediaState state)
-        => _state = state;
+    private static TaskCompletionSource NewStateSignal()
+        => new(TaskCreationOptions.RunContinuationsAsynchronously);
+
+    private static void SetState(MediaState state, bool notify = true)
+    {
+        var previous = _state;
+        _state = state;
+
+        if (notify && !Equals(previous, state))
+            Interlocked.Exchange(ref _stateChanged, NewStateSignal()).TrySetResult();
+    }
 
     private static MediaState GetState()
         => _state;
 
+    private static void SetSessionState(GlobalSystemMediaTransportControlsSession session, MediaState state)
+    {
+        lock (_sessionIds)
+        {
+            // Dropped while its update was running
+            if (!_sessionIds.TryGetValue(session, out var id))
+                return;
+            var known = _sessionStates.TryGetValue(id, out var previous);
+            if (known && Equals(previous, state))
+                return;
+
+            // PublishSessions numbers this change
+            var seq = _published.Seq + 1;
+            var textChanged = !known
+                || previous!.Title != state.Title || previous.Artist != state.Artist || previous.App != state.App;
+            var textSeq = textChanged ? seq : _sessionSeqs[id].TextSeq;
+
+            _sessionStates = new Dictionary<string, MediaState>(_sessionStates) { [id] = state };
+            _sessionSeqs = new Dictionary<string, SessionSeqs>(_sessionSeqs) { [id] = new SessionSeqs(seq, textSeq) };
+            PublishSessions();
+        }
+        SignalSessionsChanged();
+    }
+
+    // Only call while holding _sessionIds
+    private static void RemoveSessionState(string id)
+    {
+        var states = new Dictionary<string, MediaState>(_sessionStates);
+        if (states.Remove(id))
+        {
+            _sessionStates = states;
+            _sessionSeqs = _sessionSeqs.Where(e => e.Key != id).ToDictionary(e => e.Key, e => e.Value);
+            PublishSessions();
+            SignalSessionsChanged();
+        }
+    }
+
+    // Only call while holding _sessionIds
+    private static void PublishSessions()
+    {
+        string? current = null;
+        if (_currentSession != null && _sessionIds.TryGetValue(_currentSession, out var id))
+            current = id;
+
+        _published = new SessionsVersion(_published.Seq + 1, _sessionStates, _sessionSeqs, current);
+        _sessionsHistory.Enqueue(_published);
+        if (_sessionsHistory.Count > SessionsHistory)
+            _sessionsHistory.Dequeue();
+    }
+
+    private static MediaState GetSessionState(string id)
+        => _sessionStates.TryGetValue(id, out var state) ? state : MediaState.Empty;
+
+    private static void SignalSessionsChanged()
+        => Interlocked.Exchange(ref _sessionsChanged, NewStateSignal()).TrySetResult();
+
+    // In full, or relative to version "since" while it is still in the history
+    private static byte[] SerializeSessions(long since, out long seq)
+    {
+        SessionsVersion now;
+        SessionsVersion? from;
+        lock (_sessionIds)
+        {
+            now = _published;
+            from = since == now.Seq ? now : _sessionsHistory.FirstOrDefault(v => v.Seq == since);
+        }
+
+        seq = now.Seq;
+        var nowMs = DateTimeOffset.UtcNow.ToUnixTimeMilliseconds();
+        if (ReferenceEquals(from, now))
+            return JsonSerializer.SerializeToUtf8Bytes(new SessionsUnchangedV2(2, now.Seq, nowMs, true), _jsonOptions);
+        if (from != null)
+            return JsonSerializer.SerializeToUtf8Bytes(
+                new SessionsPatchV2(2, now.Seq, from.Seq, nowMs, now.Current, Patch(from, now)), _jsonOptions);
+
+        var sessions = now.States.Select(e => SessionInfoV2.From(e.Key, e.Value, now.Seqs[e.Key])).ToList();
+        return JsonSerializer.SerializeToUtf8Bytes(
+            new MediaSessionsV2(2, now.Seq, nowMs, now.Current, sessions), _jsonOptions);
+    }
+
+    // Id plus the changed fields of every changed or new session, and "removed" for the ones that went away
+    private static List<JsonObject> Patch(SessionsVersion from, SessionsVersion to)
+    {
+        var patch = new List<JsonObject>();
+        foreach (var (id, state) in to.States)
+        {
+            var after = JsonSerializer.SerializeToNode(SessionInfoV2.From(id, state, to.Seqs[id]), _jsonOptions)!.AsObject();
+            if (!from.States.TryGetValue(id, out var old))
+            {
+                patch.Add(after);
+                continue;
+            }
+
+            var before = JsonSerializer.SerializeToNode(SessionInfoV2.From(id, old, from.Seqs[id]), _jsonOptions)!.AsObject();
+            var entry = new JsonObject { ["id"] = id };
+            foreach (var (name, value) in after)
+            {
+                if (name != "id" && !JsonNode.DeepEquals(value, before[name]))
+                    entry[name] = value?.DeepClone();
+            }
+            if (entry.Count > 1)
+                patch.Add(entry);
+        }
+
+        foreach (var id in from.States.Keys.Where(id => !to.States.ContainsKey(id)))
+            patch.Add(new JsonObject { ["id"] = id, ["removed"] = true });
+        return patch;
+    }
+
+    private static long ToMillis(TimeSpan t)
+        => t == TimeSpan.MaxValue ? 0 : (long)t.TotalMilliseconds;
+
+    // When the session captured its position; some apps leave it unset or in the future
+    private static DateTimeOffset TimelineAnchor(GlobalSystemMediaTransportControlsSessionTimelineProperties timeline)
+    {
+        var now = DateTimeOffset.UtcNow;
+        var updated = timeline.LastUpdatedTime;
+        return updated.Year < 2000 || updated > now ? now : updated;
+    }
+
     private static string FormatTime(TimeSpan t)
         => t == TimeSpan.Zero || t == TimeSpan.MaxValue
             ? ""
@@ -368,10 +864,95 @@ internal record MediaState(
     string Position,
     string Start,
     string End,
-    byte[]? ImageBytes)
+    [property: JsonIgnore] byte[]? ImageBytes,
+    string? ImageHash,
+    [property: JsonIgnore] long PositionMs,
+    [property: JsonIgnore] long StartMs,
+    [property: JsonIgnore] long EndMs,
+    [property: JsonIgnore] double PlaybackRate,
+    [property: JsonIgnore] long AnchorMs)
 {
     public static MediaState Empty =>
-        new("(none)", "", "", "Stopped", "", "", "", null);
+        new("(none)", "", "", "Stopped", "", "", "", null, null, 0, 0, 0, 1.0, 0);
+}
+
+// Protocol v2: numeric millisecond timeline plus playback rate, no formatted strings.
+// PositionMs held at AnchorMs (Unix ms); NowMs is our clock when the response was written,
+// which lets the client estimate the offset between the two clocks.
+internal record MediaInfoV2(
+    int Version,
+    string Title,
+    string Artist,
+    string App,
+    string Status,
+    long PositionMs,
+    long StartMs,
+    long EndMs,
+    double PlaybackRate,
+    long AnchorMs,
+    long NowMs,
+    string? ImageHash)
+{
+    public static MediaInfoV2 From(MediaState s) =>
+        new(2, s.Title, s.Artist, s.App, s.Status,
+            s.PositionMs, s.StartMs, s.EndMs, s.PlaybackRate,
+            s.AnchorMs, DateTimeOffset.UtcNow.ToUnixTimeMilliseconds(), s.ImageHash);
+}
+
+// Every session in one response (?sessions=1): the v2 fields per session, keyed by Id, and the one
+// the companion itself would show as Current. NowMs is shared by all of them. Seq numbers the
+// version; with ?since= a client gets one of the two shorter forms below when it can.
+internal record MediaSessionsV2(
+    int Version,
+    long Seq,
+    long NowMs,
+    string? Current,
+    IReadOnlyList<SessionInfoV2> Sessions);
+
+internal record SessionsUnchangedV2(
+    int Version,
+    long Seq,
+    long NowMs,
+    bool Unchanged);
+
+// Base comes before Patch, so clients can check it before applying anything
+internal record SessionsPatchV2(
+    int Version,
+    long Seq,
+    long Base,
+    long NowMs,
+    string? Current,
+    IReadOnlyList<JsonObject> Patch);
+
+internal record SessionsVersion(
+    long Seq,
+    IReadOnlyDictionary<string, MediaState> States,
+    IReadOnlyDictionary<string, SessionSeqs> Seqs,
+    string? Current);
+
+// Sequence numbers in which a session's state, and its title, artist or app, last changed; clients
+// diff full documents by these instead of field by field
+internal record SessionSeqs(long StateSeq, long TextSeq);
+
+internal record SessionInfoV2(
+    string Id,
+    string Title,
+    string Artist,
+    string App,
+    string Status,
+    long PositionMs,
+    long StartMs,
+    long EndMs,
+    double PlaybackRate,
+    long AnchorMs,
+    string? ImageHash,
+    long StateSeq,
+    long TextSeq)
+{
+    public static SessionInfoV2 From(string id, MediaState s, SessionSeqs seqs) =>
+        new(id, s.Title, s.Artist, s.App, s.Status,
+            s.PositionMs, s.StartMs, s.EndMs, s.PlaybackRate, s.AnchorMs, s.ImageHash,
+            seqs.StateSeq, seqs.TextSeq);
 }
 
 internal record PlaybackSim(
@@ -385,3 +966,68 @@ internal record PlaybackSim(
         new(TimeSpan.Zero, DateTime.UtcNow, 1.0, false, TimeSpan.MaxValue);
 }
 
+// Binary frame layout shared with the mod's StateFrameCodec (all little-endian):
+// header: u16 magic "NP", u8 version, u8 flags, u32 body length
+// body:   i64 positionMs, i64 startMs, i64 endMs, f64 playbackRate, i64 anchorMs, i64 nowMs,
+//         title, artist, app, status, imageHash as varint length + UTF-8,
+//         then varint length + artwork bytes when flags has 0x01
+internal static class StateFrame
+{
+    private const ushort Magic = 0x504E;
+    // 2 added anchorMs and nowMs; must match StateFrameCodec.VERSION
+    private const byte Version = 2;
+    private const byte FlagArtwork = 0x01;
+    private const int HeaderBytes = 8;
+
+    public static byte[] Encode(MediaState s, byte[]? artwork)
+    {
+        using var body = new MemoryStream();
+
+        var fixedPart = new byte[48];
+        BinaryPrimitives.WriteInt64LittleEndian(fixedPart.AsSpan(0), s.PositionMs);
+        BinaryPrimitives.WriteInt64LittleEndian(fixedPart.AsSpan(8), s.StartMs);
+        BinaryPrimitives.WriteInt64LittleEndian(fixedPart.AsSpan(16), s.EndMs);
+        BinaryPrimitives.WriteDoubleLittleEndian(fixedPart.AsSpan(24), s.PlaybackRate);
+        BinaryPrimitives.WriteInt64LittleEndian(fixedPart.AsSpan(32), s.AnchorMs);
+        BinaryPrimitives.WriteInt64LittleEndian(fixedPart.AsSpan(40), DateTimeOffset.UtcNow.ToUnixTimeMilliseconds());
+        body.Write(fixedPart);
+
+        WriteString(body, s.Title);
+        WriteString(body, s.Artist);
+        WriteString(body, s.App);
+        WriteString(body, s.Status);
+        WriteString(body, s.ImageHash ?? "");
+
+        if (artwork != null)
+        {
+            WriteVarint(body, artwork.Length);
+            body.Write(artwork);
+        }
+
+        var frame = new byte[HeaderBytes + body.Length];
+        BinaryPrimitives.WriteUInt16LittleEndian(frame.AsSpan(0), Magic);
+        frame[2] = Version;
+        frame[3] = artwork != null ? FlagArtwork : (byte)0;
+        BinaryPrimitives.WriteInt32LittleEndian(frame.AsSpan(4), (int)body.Length);
+        Buffer.BlockCopy(body.GetBuffer(), 0, frame, HeaderBytes, (int)body.Length);
+        return frame;
+    }
+
+    private static void WriteString(MemoryStream ms, string s)
+    {
+        var bytes = Encoding.UTF8.GetBytes(s);
+        WriteVarint(ms, bytes.Length);
+        ms.Write(bytes);
+    }
+
+    private static void WriteVarint(MemoryStream ms, int value)
+    {
+        var v = (uint)value;
+        while (v >= 0x80)
+        {
+            ms.WriteByte((byte)(v | 0x80));
+            v >>= 7;
+        }
+        ms.WriteByte((byte)v);
+    }
+}
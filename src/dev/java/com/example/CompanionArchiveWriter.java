@@ -0,0 +1,68 @@
+package com.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a {@link CompanionArchive} from files in memory, for the tests and benchmarks that need
+ * one without a Gradle build. The mod ships the archive the {@code packCompanion} task writes.
+ */
+final class CompanionArchiveWriter {
+
+    private CompanionArchiveWriter() {}
+
+    /**
+     * Packs {@code files} (path to contents, in the given order) the same way the Gradle task does.
+     */
+    static void pack(Map<String, byte[]> files, OutputStream out) throws IOException {
+        List<byte[]> stored = new ArrayList<>(files.size());
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(CompanionArchive.MAGIC);
+        data.writeInt(files.size());
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            byte[] bytes = file.getValue();
+            byte[] compressed = deflate(bytes);
+            // Keep already-compressed files as they are; inflating them would only cost time
+            boolean deflate = compressed.length < bytes.length * 0.9;
+            stored.add(deflate ? compressed : bytes);
+
+            data.writeUTF(file.getKey());
+            data.writeLong(bytes.length);
+            data.writeLong(deflate ? compressed.length : bytes.length);
+            data.writeByte(deflate ? CompanionArchive.DEFLATED : CompanionArchive.STORED);
+            data.write(sha256(bytes));
+        }
+        for (byte[] bytes : stored) data.write(bytes);
+        data.flush();
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            try (DeflaterOutputStream deflating = new DeflaterOutputStream(out, deflater)) {
+                deflating.write(bytes);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Cold extraction of the companion into an empty directory, three ways, each from a freshly built
+ * mod-like jar:
+ * <ul>
+ *   <li>jar walk: enumerate every entry of the jar and copy the loose companion files through a
+ *       {@link BufferedInputStream} (the original {@code extractFromJar})</li>
+ *   <li>per-file resources: one class-loader lookup and copy per loose file</li>
+ *   <li>packed archive: {@link CompanionInstaller} streaming the single {@link CompanionArchive}</li>
+ * </ul>
+ * Every iteration uses a new class loader and an empty target, so nothing is cached between runs.
+ * Usage: {@code CompanionExtractBenchmark [companionDir|runtime] [iterations]}; without a directory
+ * (or if it is missing) a synthetic payload of similar shape is used, and {@code runtime} stands in
+ * for a self-contained publish with the whole .NET runtime next to the companion.
+ */
+public final class CompanionExtractBenchmark {
+
+    private static final String PREFIX = "assets/nowplaying/executables/nowPlayingServer/";
+    private static final String ARCHIVE = "assets/nowplaying/executables/nowPlayingServer.pack";
+
+    // Other mod resources the jar walk has to step over
+    private static final int FILLER_ENTRIES = 500;
+
+    private interface Extraction {
+        void run(Path jar, Path target) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, byte[]> payload;
+        if (args.length > 0 && args[0].equals("runtime")) {
+            payload = syntheticRuntimePayload();
+        } else if (args.length > 0 && Files.isDirectory(Path.of(args[0]))) {
+            payload = readPayload(Path.of(args[0]));
+        } else {
+            payload = syntheticPayload();
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        long total = payload.values().stream().mapToLong(b -> b.length).sum();
+        System.out.printf(Locale.ROOT, "Payload: %d files, %.1f KB%n", payload.size(), total / 1024.0);
+
+        Path work = Files.createTempDirectory("nowplaying-extract-bench");
+        try {
+            Path looseJar = work.resolve("loose.jar");
+            Path packedJar = work.resolve("packed.jar");
+            writeJar(looseJar, payload, false);
+            writeJar(packedJar, payload, true);
+            System.out.printf(Locale.ROOT, "Jar sizes: loose %.1f KB, packed %.1f KB%n",
+                    Files.size(looseJar) / 1024.0, Files.size(packedJar) / 1024.0);
+
+            Extraction jarWalk = (jar, target) -> jarWalk(jar, target);
+            Extraction perFile = (jar, target) -> perFileResources(jar, target, payload);
+            Extraction packed = CompanionExtractBenchmark::packedArchive;
+
+            // Warm up the JIT on all three before measuring any of them
+            for (int i = 0; i < 5; i++) {
+                time(jarWalk, looseJar, work);
+                time(perFile, looseJar, work);
+                time(packed, packedJar, work);
+            }
+
+            report("jar walk", jarWalk, looseJar, work, iterations);
+            report("per-file resources", perFile, looseJar, work, iterations);
+            report("packed archive", packed, packedJar, work, iterations);
+        } finally {
+            deleteRecursively(work);
+        }
+    }
+
+    private static void report(String name, Extraction extraction, Path jar, Path work, int iterations) throws Exception {
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) nanos[i] = time(extraction, jar, work);
+        Arrays.sort(nanos);
+        System.out.printf(Locale.ROOT, "%-20s median %6.2f ms   min %6.2f ms   max %6.2f ms%n",
+                name, nanos[iterations / 2] / 1e6, nanos[0] / 1e6, nanos[iterations - 1] / 1e6);
+    }
+
+    private static long time(Extraction extraction, Path jar, Path work) throws Exception {
+        Path target = Files.createTempDirectory(work, "target");
+        try {
+            long start = System.nanoTime();
+            extraction.run(jar, target);
+            return System.nanoTime() - start;
+        } finally {
+            deleteRecursively(target);
+        }
+    }
+
+    // -------------------------
+    // The three approaches
+    // -------------------------
+
+    private static void jarWalk(Path jar, Path target) throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.startsWith(PREFIX) || entry.isDirectory()) continue;
+
+                Path file = target.resolve(name.substring(PREFIX.length()));
+                Files.createDirectories(file.getParent());
+                try (InputStream in = new BufferedInputStream(jarFile.getInputStream(entry))) {
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static void perFileResources(Path jar, Path target, Map<String, byte[]> payload) throws IOException {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+            for (String path : payload.keySet()) {
+                Path file = target.resolve(path);
+                Files.createDirectories(file.getParent());
+                try (InputStream in = new BufferedInputStream(loader.getResourceAsStream(PREFIX + path))) {
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static void packedArchive(Path jar, Path target) throws IOException {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+            new CompanionInstaller(() -> loader.getResourceAsStream(ARCHIVE), target).install();
+        }
+    }
+
+    // -------------------------
+    // Fixtures
+    // -------------------------
+
+    private static void writeJar(Path jar, Map<String, byte[]> payload, boolean packed) throws IOException {
+        Random random = new Random(17);
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file)) {
+            for (int i = 0; i < FILLER_ENTRIES; i++) {
+                out.putNextEntry(new JarEntry("assets/nowplaying/filler/" + i + ".json"));
+                byte[] filler = new byte[256 + random.nextInt(2048)];
+                Arrays.fill(filler, (byte) ('a' + i % 26));
+                out.write(filler);
+                out.closeEntry();
+            }
+
+            if (packed) {
+                ByteArrayOutputStream archive = new ByteArrayOutputStream();
+                CompanionArchiveWriter.pack(payload, archive);
+                out.putNextEntry(new JarEntry(ARCHIVE));
+                archive.writeTo(out);
+                out.closeEntry();
+            } else {
+                for (Map.Entry<String, byte[]> e : payload.entrySet()) {
+                    out.putNextEntry(new JarEntry(PREFIX + e.getKey()));
+                    out.write(e.getValue());
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    private static Map<String, byte[]> readPayload(Path dir) throws IOException {
+        Map<String, byte[]> payload = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                payload.put(dir.relativize(file).toString().replace('\\', '/'), Files.readAllBytes(file));
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Roughly the shipped companion: one big runtime DLL, an exe, a few small files.
+     */
+    private static Map<String, byte[]> syntheticPayload() {
+        Random random = new Random(23);
+        Map<String, byte[]> payload = new LinkedHashMap<>();
+        payload.put("NowPlaying.deps.json", text(random, 1_000));
+        payload.put("NowPlaying.dll", binary(random, 30_000));
+        payload.put("NowPlaying.exe", binary(random, 140_000));
+        payload.put("NowPlaying.pdb", binary(random, 16_000));
+        payload.put("NowPlaying.runtimeconfig.json", text(random, 300));
+        payload.put("WinRT.Runtime.dll", binary(random, 530_000));
+        return payload;
+    }
+
+    /**
+     * A self-contained publish: a couple of hundred framework assemblies, a few of them large.
+     */
+    private static Map<String, byte[]> syntheticRuntimePayload() {
+        Random random = new Random(29);
+        Map<String, byte[]> payload = syntheticPayload();
+        payload.put("coreclr.dll", binary(random, 5_000_000));
+        payload.put("System.Private.CoreLib.dll", binary(random, 12_000_000));
+        payload.put("Microsoft.Windows.SDK.NET.dll", binary(random, 20_000_000));
+        for (int i = 0; i < 190; i++) {
+            payload.put("System.Assembly" + i + ".dll", binary(random, 15_000 + random.nextInt(200_000)));
+        }
+        return payload;
+    }
+
+    // Compresses about as well as PE files do
+    private static byte[] binary(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(8));
+        return data;
+    }
+
+    private static byte[] text(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) ('a' + random.nextInt(26));
+        return data;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compares the old per-request {@link HttpURLConnection} path with the pooled {@link CompanionHttp}
+ * transport against a local {@link StandInCompanionServer}.
+ *
+ * Reports per-request latency percentiles and bytes allocated per request on the calling thread.
+ * Usage: {@code CompanionHttpBenchmark [iterations]}.
+ */
+public final class CompanionHttpBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+
+        StandInCompanionServer server = new StandInCompanionServer(0, 60_000);
+        server.start();
+        String infoUrl = "http://localhost:" + server.port() + "/media_info";
+        URI infoUri = URI.create(infoUrl);
+
+        try {
+            // Warm up both paths so JIT and connection setup don't skew the first run
+            run("warmup-legacy", iterations / 5, () -> legacyFetch(infoUrl), false);
+            run("warmup-pooled", iterations / 5, () -> pooledFetch(infoUri), false);
+
+            run("legacy HttpURLConnection", iterations, () -> legacyFetch(infoUrl), true);
+            run("pooled CompanionHttp", iterations, () -> pooledFetch(infoUri), true);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private interface Fetch {
+        MediaInfo fetch() throws Exception;
+    }
+
+    private static void run(String name, int iterations, Fetch fetch, boolean report) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long[] latencies = new long[iterations];
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            MediaInfo info = fetch.fetch();
+            latencies[i] = System.nanoTime() - start;
+            if (info == null) throw new IllegalStateException(name + ": request " + i + " failed");
+        }
+
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (!report) return;
+
+        Arrays.sort(latencies);
+        System.out.printf(Locale.ROOT,
+                "%-26s mean %7.1f us | p50 %7.1f us | p99 %7.1f us | %8.0f B/op%n",
+                name,
+                Arrays.stream(latencies).average().orElse(0) / 1000.0,
+                latencies[iterations / 2] / 1000.0,
+                latencies[(int) (iterations * 0.99)] / 1000.0,
+                allocated / (double) iterations);
+    }
+
+    // The pre-pooling implementation of NowPlayingClient.fetchMediaInfo, kept here as the baseline
+    private static MediaInfo legacyFetch(String urlStr) throws Exception {
+        HttpURLConnection conn = null;
+        try {
+            URL url = new URL(urlStr);
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(1000);
+            conn.setReadTimeout(1000);
+
+            if (conn.getResponseCode() != 200) return null;
+
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
+                StringBuilder content = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) content.append(line);
+                return GSON.fromJson(content.toString(), MediaInfo.class);
+            }
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    private static MediaInfo pooledFetch(URI uri) {
+        CompanionHttp.ResponseBuffer body = CompanionHttp.get(uri);
+        return body != null ? GSON.fromJson(body.reader(), MediaInfo.class) : null;
+    }
+}
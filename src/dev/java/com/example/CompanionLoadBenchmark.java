@@ -0,0 +1,124 @@
+package com.example;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the companion's request handling holds up as more game instances poll one shared companion:
+ * 1, 2, 4, ... up to {@code maxPollers} threads each fetching {@code /media_info?v=2} in a loop,
+ * reporting throughput, latency percentiles and failures for every step.
+ *
+ * Usage: {@code CompanionLoadBenchmark [maxPollers] [intervalMillis] [port|portFile]}. An interval of
+ * 0 (the default) polls back to back, which saturates the server; the client's fast poll interval
+ * shows the latency a real instance would see. Without a port an in-process
+ * {@link StandInCompanionServer} is used; pass the real companion's port, or its
+ * {@code companion.port} file, to measure that instead.
+ */
+public final class CompanionLoadBenchmark {
+
+    private static final long WARMUP_MILLIS = 2_000;
+    private static final long MEASURE_MILLIS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxPollers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+        StandInCompanionServer server = null;
+        int port;
+        if (args.length > 2) {
+            Path file = Path.of(args[2]);
+            port = Files.isRegularFile(file)
+                    ? Integer.parseInt(Files.readString(file).trim().split("\\s+")[0])
+                    : Integer.parseInt(args[2]);
+        } else {
+            server = new StandInCompanionServer(0, 60_000);
+            server.start();
+            port = server.port();
+        }
+        URI info = URI.create("http://localhost:" + port + "/media_info?v=2");
+
+        System.out.printf(Locale.ROOT, "Polling %s every %d ms per poller, %d s per step, %d cores%n",
+                info, intervalMillis, TimeUnit.MILLISECONDS.toSeconds(MEASURE_MILLIS),
+                Runtime.getRuntime().availableProcessors());
+        try {
+            // Warm up client and server at full load, so the first step isn't measuring the JIT
+            run(info, maxPollers, 0, WARMUP_MILLIS, false, 0);
+            double single = 0;
+            for (int pollers = 1; pollers <= maxPollers; pollers *= 2) {
+                double throughput = run(info, pollers, intervalMillis, MEASURE_MILLIS, true, single);
+                if (pollers == 1) single = throughput;
+            }
+        } finally {
+            if (server != null) server.stop();
+        }
+    }
+
+    /**
+     * @return requests per second
+     */
+    private static double run(URI info, int pollers, long intervalMillis, long durationMillis,
+                              boolean report, double singleThroughput) throws InterruptedException {
+        long[][] latencies = new long[pollers][];
+        int[] counts = new int[pollers];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(pollers);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        for (int i = 0; i < pollers; i++) {
+            int poller = i;
+            Thread t = new Thread(() -> {
+                long[] samples = new long[1024];
+                int n = 0;
+                while (System.nanoTime() - deadline < 0) {
+                    long start = System.nanoTime();
+                    CompanionHttp.ResponseBuffer body = CompanionHttp.get(info);
+                    long elapsed = System.nanoTime() - start;
+                    if (body == null) {
+                        failures.incrementAndGet();
+                    } else {
+                        if (n == samples.length) samples = Arrays.copyOf(samples, n * 2);
+                        samples[n++] = elapsed;
+                    }
+                    if (intervalMillis > 0) {
+                        try {
+                            Thread.sleep(intervalMillis);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                latencies[poller] = samples;
+                counts[poller] = n;
+                done.countDown();
+            }, "LoadBench-Poller-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int offset = 0;
+        for (int i = 0; i < pollers; i++) {
+            System.arraycopy(latencies[i], 0, all, offset, counts[i]);
+            offset += counts[i];
+        }
+        Arrays.sort(all);
+
+        double throughput = total / (durationMillis / 1000.0);
+        if (report && total > 0) {
+            System.out.printf(Locale.ROOT,
+                    "%3d pollers: %8.0f req/s (%5.2fx of 1) | p50 %8.1f us | p99 %8.1f us | max %8.1f us | failed %d%n",
+                    pollers, throughput, singleThroughput > 0 ? throughput / singleThroughput : 1.0,
+                    all[total / 2] / 1000.0, all[(int) (total * 0.99)] / 1000.0, all[total - 1] / 1000.0,
+                    failures.get());
+        }
+        return throughput;
+    }
+}
@@ -0,0 +1,777 @@
+package com.example;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pure-Java stand-in for the Windows companion, so the client can be exercised on Linux.
+ *
+ * Serves the same endpoints as {@code nowPlayingServer} with a fake playlist:
+ * {@code /media_info}, {@code /media_image} (alias {@code /media_image.jpg}) and {@code /media_events}.
+ * Given a socket path it is also the reference server for the binary {@link StateFrameCodec} transport.
+ * With {@code sessions=1} it reports a second session as well: a browser video, paused unless told
+ * otherwise. Only the HTTP endpoints know about it; the socket and stdio carry the player alone.
+ * Sessions documents are numbered, each session carries the numbers of its last changes, and
+ * {@code since=<seq>} is answered with "unchanged" or a patch like the companion does.
+ *
+ * Usage: {@code StandInCompanionServer [--port-file <path>] [port] [trackSeconds] [socketPath]}; port 0
+ * picks a free one, and {@code --port-file} publishes it like the companion does for
+ * {@link SharedCompanion}. While running, type
+ * {@code next}, {@code pause}, {@code play}, {@code seek <seconds>}, {@code browser play|pause},
+ * {@code crash [exitCode]} or {@code stop} on stdin.
+ * Start the game with {@code -Dnowplaying.externalCompanion=true} to use it (and
+ * {@code -Dnowplaying.socket=<socketPath>} for the socket transport).
+ *
+ * {@code StandInCompanionServer --stdio [trackSeconds]} behaves like the companion started with
+ * {@code --stdio}: no listener at all, state lines ({@link MediaStdioStream}) and log lines mixed
+ * on stdout. It is meant to run as a child process; it takes the same commands on stdin and exits
+ * when stdin closes.
+ *
+ * {@code StandInCompanionServer --legacy [flags...] [port] [trackSeconds]} behaves like the
+ * companion binaries built before any of that: v1 {@code /media_info} (with the cover inlined as
+ * {@code imageBytes}) and {@code /media_image} on exact paths only, 404 for everything else, the
+ * fixed port 58888 unless one is given, and every flag such as {@code --stdio} or
+ * {@code --port-file <path>} ignored.
+ */
+public final class StandInCompanionServer {
+
+    private static final String[][] PLAYLIST = {
+            {"Stand-In Overture", "The Loopback Ensemble"},
+            {"Keep-Alive Blues", "Socket & The Handshakes"},
+            {"Server-Sent Serenade", "Polling Is Dead"},
+            {"Ångström Über Café ☕", "Ünïcödé Ärtist"},
+    };
+
+    private static final long HEARTBEAT_MS = 10_000;
+    private static final long POSITION_TICK_MS = 1_000;
+
+    // Session ids, as the companion derives them from the app
+    static final String PLAYER_SESSION = "StandIn.exe";
+    static final String BROWSER_SESSION = "MSEdge";
+    private static final String BROWSER_TITLE = "Stand-In Video Tutorial";
+    private static final long BROWSER_LENGTH_MS = TimeUnit.MINUTES.toMillis(12);
+
+    // Sessions documents kept to patch against; older ones get a full document
+    private static final int SEQ_HISTORY = 64;
+
+    private record SessionsVersion(Map<String, JsonObject> sessions, String current) {}
+
+    static {
+        // Without TCP_NODELAY small keep-alive responses hit the 40 ms delayed-ACK stall
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final int port;
+    private final long trackMillis;
+    private volatile HttpServer http;
+    private volatile ServerSocketChannel socketServer;
+    private volatile Path socketPath;
+
+    // Guarded by "this"; notifyAll() wakes the event subscribers
+    private int track;
+    private boolean playing = true;
+    private long positionBaseMs;
+    private long positionBaseAt = System.currentTimeMillis();
+    private long stateVersion;
+    // Sequence numbers continue from the start time, so a restarted server never reuses one
+    private final long seqBase = System.currentTimeMillis() * 1000;
+    private final Map<Long, SessionsVersion> seqHistory = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SessionsVersion> eldest) {
+            return size() > SEQ_HISTORY;
+        }
+    };
+    // Each session's last published state (without its numbers), and the sequence numbers in
+    // which its state and its text last changed
+    private final Map<String, JsonObject> lastSessionStates = new HashMap<>();
+    private final Map<String, long[]> sessionSeqs = new HashMap<>();
+    private byte[] image;
+    private String imageHash;
+    private boolean browserPlaying;
+    private long browserBaseMs = TimeUnit.MINUTES.toMillis(3);
+    private long browserBaseAt = System.currentTimeMillis();
+    private final byte[] browserImage = renderCover(PLAYLIST.length / 2);
+    private final String browserImageHash = sha1(browserImage);
+
+    public StandInCompanionServer(int port, long trackMillis) {
+        this.port = port;
+        this.trackMillis = trackMillis;
+        setImage(renderCover(0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--legacy")) {
+            runLegacy(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stdio")) {
+            long trackSeconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+            runStdio(new StandInCompanionServer(0, TimeUnit.SECONDS.toMillis(trackSeconds)));
+            return;
+        }
+
+        Path portFile = null;
+        if (args.length > 1 && args[0].equals("--port-file")) {
+            portFile = Path.of(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 58888;
+        long trackSeconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+
+        StandInCompanionServer server = new StandInCompanionServer(port, TimeUnit.SECONDS.toMillis(trackSeconds));
+        server.start();
+        System.out.println("Stand-in companion listening on http://localhost:" + server.port());
+        if (portFile != null) server.publishPort(portFile);
+
+        if (args.length > 2) {
+            server.serveSocket(Path.of(args[2]));
+            System.out.println("Serving binary frames on " + args[2]);
+        }
+
+        if (readCommands(server)) {
+            server.stop();
+        } else if (portFile != null) {
+            // Shared like the companion: outlives the instance that launched it and owned our stdin
+            Thread.currentThread().join();
+        }
+    }
+
+    private static void runStdio(StandInCompanionServer server) {
+        server.startPlaylist();
+
+        Thread commands = new Thread(() -> {
+            try {
+                readCommands(server);
+            } catch (IOException ignored) {
+                // Parent went away
+            }
+            // Like a child should: no parent on the other end of stdin, no reason to live
+            System.exit(0);
+        }, "StandIn-Commands");
+        commands.setDaemon(true);
+        commands.start();
+
+        // One UTF-8 stream for log and state lines; println is atomic, so they never interleave
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(out);
+        out.println("Stand-in companion writing state to stdout");
+        server.serveStdio(out);
+    }
+
+    private static void runLegacy(String[] args) throws Exception {
+        // Flags (and the value after --port-file or --port) mean nothing to it
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port-file") || args[i].equals("--port")) {
+                i++;
+            } else if (!args[i].startsWith("--")) {
+                positional.add(args[i]);
+            }
+        }
+        int port = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 58888;
+        long trackSeconds = positional.size() > 1 ? Long.parseLong(positional.get(1)) : 30;
+
+        StandInCompanionServer server = new StandInCompanionServer(port, TimeUnit.SECONDS.toMillis(trackSeconds));
+        server.startLegacy();
+        System.out.println("Legacy stand-in companion listening on http://localhost:" + server.port());
+        if (readCommands(server)) server.stop();
+    }
+
+    /**
+     * Applies commands from stdin until {@code stop} or end of input.
+     *
+     * @return whether {@code stop} was requested
+     */
+    private static boolean readCommands(StandInCompanionServer server) throws IOException {
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = stdin.readLine()) != null) {
+            String[] cmd = line.trim().toLowerCase(Locale.ROOT).split("\\s+");
+            switch (cmd[0]) {
+                case "next" -> server.nextTrack();
+                case "pause" -> server.setPlaying(false);
+                case "play" -> server.setPlaying(true);
+                case "seek" -> server.seek(TimeUnit.SECONDS.toMillis(Long.parseLong(cmd[1])));
+                case "browser" -> server.setBrowserPlaying(cmd.length > 1 && cmd[1].equals("play"));
+                // Dies like a crashing companion would: no cleanup, no shutdown hooks
+                case "crash" -> Runtime.getRuntime().halt(cmd.length > 1 ? Integer.parseInt(cmd[1]) : 1);
+                case "stop" -> {
+                    return true;
+                }
+                default -> System.out.println("Commands: next, pause, play, seek <seconds>, browser play|pause, crash [exitCode], stop");
+            }
+        }
+        return false;
+    }
+
+    public void start() throws IOException {
+        HttpServer server = listen();
+        server.createContext("/media_info", this::handleInfo);
+        server.createContext("/media_image", this::handleImage);
+        server.createContext("/media_events", this::handleEvents);
+        server.start();
+        http = server;
+
+        startPlaylist();
+    }
+
+    /**
+     * Starts serving like a companion built before protocol v2 (see {@code --legacy}).
+     */
+    public void startLegacy() throws IOException {
+        HttpServer server = listen();
+        server.createContext("/", this::handleLegacy);
+        server.start();
+        http = server;
+
+        startPlaylist();
+    }
+
+    private HttpServer listen() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "StandIn-Http");
+            t.setDaemon(true);
+            return t;
+        }));
+        return server;
+    }
+
+    private void startPlaylist() {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "StandIn-Playlist");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(() -> {
+            if (currentPositionMs() >= trackMillis) nextTrack();
+        }, 250, 250, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        HttpServer httpServer = http;
+        if (httpServer != null) httpServer.stop(0);
+
+        ServerSocketChannel server = socketServer;
+        if (server != null) {
+            try {
+                server.close();
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Also serves the state as {@link StateFrameCodec} frames on a Unix domain socket at {@code path}.
+     */
+    public void serveSocket(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        socketPath = path;
+        socketServer = server;
+
+        Thread acceptor = new Thread(() -> {
+            while (server.isOpen()) {
+                try {
+                    SocketChannel client = server.accept();
+                    Thread t = new Thread(() -> streamFrames(client), "StandIn-Socket");
+                    t.setDaemon(true);
+                    t.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "StandIn-SocketAccept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Writes the state to {@code out} as {@link MediaStdioStream} lines until interrupted, with a
+     * log line for every track or play state change in between, like the companion in stdio mode.
+     */
+    public void serveStdio(PrintStream out) {
+        ByteBuffer buf = null;
+        String sentHash = null;
+        String loggedState = null;
+
+        try {
+            while (!out.checkError()) {
+                long seen;
+                MediaInfo info;
+                byte[] art;
+                synchronized (this) {
+                    seen = stateVersion;
+                    info = stateInfo();
+                    art = imageHash.equals(sentHash) ? null : image;
+                    sentHash = imageHash;
+                }
+
+                String state = info.status + ": " + info.title + " - " + info.artist;
+                if (!state.equals(loggedState)) {
+                    out.println(LocalDateTime.now() + " " + state);
+                    loggedState = state;
+                }
+
+                buf = StateFrameCodec.encode(info, art, buf);
+                out.println(MediaStdioStream.stateLine(buf));
+
+                synchronized (this) {
+                    while (stateVersion == seen) wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void streamFrames(SocketChannel client) {
+        ByteBuffer buf = null;
+        String sentHash = null;
+
+        try (client) {
+            while (true) {
+                long seen;
+                MediaInfo info;
+                byte[] art;
+                synchronized (this) {
+                    seen = stateVersion;
+                    info = stateInfo();
+                    // Artwork only rides along when it changed since the last frame on this connection
+                    art = imageHash.equals(sentHash) ? null : image;
+                    sentHash = imageHash;
+                }
+
+                buf = StateFrameCodec.encode(info, art, buf);
+                while (buf.hasRemaining()) client.write(buf);
+
+                synchronized (this) {
+                    while (stateVersion == seen) wait();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client disconnected
+        }
+    }
+
+    private synchronized MediaInfo stateInfo() {
+        MediaInfo info = new MediaInfo();
+        info.reset();
+        info.version = 2;
+        info.title = PLAYLIST[track][0];
+        info.artist = PLAYLIST[track][1];
+        info.app = "StandIn.exe";
+        info.status = playing ? "Playing" : "Paused";
+        // Like the companion: the position as of the last change, anchored to when that happened
+        info.positionMs = positionBaseMs;
+        info.anchorMs = positionBaseAt;
+        info.nowMs = System.currentTimeMillis();
+        info.endMs = trackMillis;
+        info.imageHash = imageHash;
+        return info;
+    }
+
+    /**
+     * Writes "port pid" to {@code file} atomically, like the companion started with {@code --port-file}.
+     */
+    public void publishPort(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, port() + " " + ProcessHandle.current().pid() + "\n");
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    public synchronized void nextTrack() {
+        track = (track + 1) % PLAYLIST.length;
+        setImage(renderCover(track));
+        positionBaseMs = 0;
+        positionBaseAt = System.currentTimeMillis();
+        changed();
+    }
+
+    public synchronized void setPlaying(boolean playing) {
+        if (this.playing == playing) return;
+        positionBaseMs = currentPositionMs();
+        positionBaseAt = System.currentTimeMillis();
+        this.playing = playing;
+        changed();
+    }
+
+    public synchronized void seek(long positionMs) {
+        positionBaseMs = Math.max(0, Math.min(positionMs, trackMillis));
+        positionBaseAt = System.currentTimeMillis();
+        changed();
+    }
+
+    public synchronized void setBrowserPlaying(boolean playing) {
+        if (browserPlaying == playing) return;
+        long now = System.currentTimeMillis();
+        if (browserPlaying) browserBaseMs = Math.min(BROWSER_LENGTH_MS, browserBaseMs + (now - browserBaseAt));
+        browserBaseAt = now;
+        browserPlaying = playing;
+        changed();
+    }
+
+    private void setImage(byte[] png) {
+        image = png;
+        imageHash = sha1(png);
+    }
+
+    private void changed() {
+        stateVersion++;
+        notifyAll();
+    }
+
+    private synchronized long currentPositionMs() {
+        if (!playing) return positionBaseMs;
+        return Math.min(trackMillis, positionBaseMs + (System.currentTimeMillis() - positionBaseAt));
+    }
+
+    /**
+     * Both sessions, as the companion answers {@code sessions=1}: in full, or relative to the
+     * document numbered {@code since} if that is still known. Its own pick is the one session
+     * playing, or the player.
+     */
+    private synchronized String sessionsJson(long since) {
+        long seq = seqBase + stateVersion;
+        SessionsVersion now = seqHistory.computeIfAbsent(seq, k -> new SessionsVersion(
+                numbered(sessionStates(), seq), browserPlaying && !playing ? BROWSER_SESSION : PLAYER_SESSION));
+        SessionsVersion base = seqHistory.get(since);
+
+        JsonObject o = new JsonObject();
+        o.addProperty("version", 2);
+        o.addProperty("seq", seq);
+        o.addProperty("nowMs", System.currentTimeMillis());
+        if (base == now) {
+            o.addProperty("unchanged", true);
+        } else if (base != null) {
+            o.addProperty("base", since);
+            o.addProperty("current", now.current());
+            o.add("patch", patch(base.sessions(), now.sessions()));
+        } else {
+            JsonArray sessions = new JsonArray();
+            now.sessions().values().forEach(sessions::add);
+            o.addProperty("current", now.current());
+            o.add("sessions", sessions);
+        }
+        return o.toString();
+    }
+
+    private synchronized Map<String, JsonObject> sessionStates() {
+        JsonObject player = playerJson(true);
+        player.remove("version");
+        player.remove("nowMs");
+        JsonObject playerSession = new JsonObject();
+        playerSession.addProperty("id", PLAYER_SESSION);
+        player.entrySet().forEach(e -> playerSession.add(e.getKey(), e.getValue()));
+
+        JsonObject browser = new JsonObject();
+        browser.addProperty("id", BROWSER_SESSION);
+        browser.addProperty("title", BROWSER_TITLE);
+        browser.addProperty("artist", "Loopback Channel");
+        browser.addProperty("app", BROWSER_SESSION);
+        browser.addProperty("status", browserPlaying ? "Playing" : "Paused");
+        browser.addProperty("positionMs", browserBaseMs);
+        browser.addProperty("startMs", 0L);
+        browser.addProperty("endMs", BROWSER_LENGTH_MS);
+        browser.addProperty("playbackRate", 1.0);
+        browser.addProperty("anchorMs", browserBaseAt);
+        browser.addProperty("imageHash", browserImageHash);
+
+        Map<String, JsonObject> sessions = new LinkedHashMap<>();
+        sessions.put(PLAYER_SESSION, playerSession);
+        sessions.put(BROWSER_SESSION, browser);
+        return sessions;
+    }
+
+    /**
+     * Adds {@code stateSeq} and {@code textSeq} to each session, as the companion does: the
+     * sequence number in which its state and its title, artist or app last changed.
+     */
+    private Map<String, JsonObject> numbered(Map<String, JsonObject> sessions, long seq) {
+        sessions.forEach((id, session) -> {
+            JsonObject last = lastSessionStates.put(id, session.deepCopy());
+            long[] seqs = sessionSeqs.computeIfAbsent(id, k -> new long[] {seq, seq});
+            if (last != null && !last.equals(session)) {
+                seqs[0] = seq;
+                for (String name : List.of("title", "artist", "app")) {
+                    if (!Objects.equals(last.get(name), session.get(name))) seqs[1] = seq;
+                }
+            }
+            session.addProperty("stateSeq", seqs[0]);
+            session.addProperty("textSeq", seqs[1]);
+        });
+        return sessions;
+    }
+
+    /**
+     * Id plus changed fields for every changed or new session, null for fields that went away,
+     * and {@code removed} for sessions that did.
+     */
+    static JsonArray patch(Map<String, JsonObject> from, Map<String, JsonObject> to) {
+        JsonArray patch = new JsonArray();
+        to.forEach((id, session) -> {
+            JsonObject old = from.get(id);
+            JsonObject entry = new JsonObject();
+            entry.addProperty("id", id);
+            for (Map.Entry<String, JsonElement> field : session.entrySet()) {
+                if (field.getKey().equals("id")) continue;
+                if (old == null || !field.getValue().equals(old.get(field.getKey()))) entry.add(field.getKey(), field.getValue());
+            }
+            if (old != null) {
+                for (String name : old.keySet()) {
+                    if (!session.has(name)) entry.add(name, JsonNull.INSTANCE);
+                }
+            }
+            if (old == null || entry.size() > 1) patch.add(entry);
+        });
+        from.keySet().stream().filter(id -> !to.containsKey(id)).forEach(id -> {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("id", id);
+            entry.addProperty("removed", true);
+            patch.add(entry);
+        });
+        return patch;
+    }
+
+    private synchronized String stateJson(boolean v2) {
+        return playerJson(v2).toString();
+    }
+
+    private synchronized JsonObject playerJson(boolean v2) {
+        JsonObject o = new JsonObject();
+        if (v2) o.addProperty("version", 2);
+        o.addProperty("title", PLAYLIST[track][0]);
+        o.addProperty("artist", PLAYLIST[track][1]);
+        o.addProperty("app", "StandIn.exe");
+        o.addProperty("status", playing ? "Playing" : "Paused");
+        if (v2) {
+            o.addProperty("positionMs", positionBaseMs);
+            o.addProperty("startMs", 0L);
+            o.addProperty("endMs", trackMillis);
+            o.addProperty("playbackRate", 1.0);
+            o.addProperty("anchorMs", positionBaseAt);
+            o.addProperty("nowMs", System.currentTimeMillis());
+        } else {
+            o.addProperty("position", formatTime(currentPositionMs()));
+            o.addProperty("start", "00:00:00.000");
+            o.addProperty("end", formatTime(trackMillis));
+        }
+        o.addProperty("imageHash", imageHash);
+        return o;
+    }
+
+    // Clients opt into protocol v2 with ?v=2; anything else gets the v1 strings
+    private static boolean wantsV2(HttpExchange ex) {
+        String query = ex.getRequestURI().getQuery();
+        return query != null && query.contains("v=2");
+    }
+
+    private static boolean wantsSessions(HttpExchange ex) {
+        return "1".equals(queryParam(ex, "sessions"));
+    }
+
+    private static String queryParam(HttpExchange ex, String name) {
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private void handleInfo(HttpExchange ex) throws IOException {
+        String since = queryParam(ex, "since");
+        String json = wantsSessions(ex)
+                ? sessionsJson(since != null ? Long.parseLong(since) : 0L)
+                : stateJson(wantsV2(ex));
+        send(ex, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleImage(HttpExchange ex) throws IOException {
+        String session = queryParam(ex, "session");
+        byte[] img;
+        String hash;
+        synchronized (this) {
+            boolean browser = BROWSER_SESSION.equals(session);
+            img = browser ? browserImage : image;
+            hash = browser ? browserImageHash : imageHash;
+        }
+        if (session != null && !session.equals(PLAYER_SESSION) && !session.equals(BROWSER_SESSION)) {
+            ex.sendResponseHeaders(404, -1);
+            ex.close();
+            return;
+        }
+
+        String etag = '"' + hash + '"';
+        ex.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        send(ex, 200, "image/png", img);
+    }
+
+    private void handleLegacy(HttpExchange ex) throws IOException {
+        // Exact paths, queries ignored: ?v=2, sessions=1 and since= all get the one v1 state
+        switch (ex.getRequestURI().getPath()) {
+            case "/media_info" -> {
+                JsonObject o;
+                synchronized (this) {
+                    o = playerJson(false);
+                    o.remove("imageHash");
+                    o.addProperty("imageBytes", Base64.getEncoder().encodeToString(image));
+                }
+                send(ex, 200, "application/json", o.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            case "/media_image" -> {
+                byte[] img;
+                synchronized (this) {
+                    img = image;
+                }
+                send(ex, 200, "image/*", img);
+            }
+            default -> {
+                ex.sendResponseHeaders(404, -1);
+                ex.close();
+            }
+        }
+    }
+
+    private void handleEvents(HttpExchange ex) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+        ex.getResponseHeaders().set("Cache-Control", "no-store");
+        ex.sendResponseHeaders(200, 0);
+        boolean v2 = wantsV2(ex);
+        boolean sessions = wantsSessions(ex);
+        // After the first full document, every event patches the one before
+        long sent = 0L;
+
+        try (OutputStream out = ex.getResponseBody()) {
+            while (true) {
+                long seen;
+                String json;
+                synchronized (this) {
+                    seen = stateVersion;
+                    json = sessions ? sessionsJson(sent) : stateJson(v2);
+                    sent = seqBase + seen;
+                }
+                out.write(("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+
+                synchronized (this) {
+                    while (stateVersion == seen) {
+                        // v1 subscribers only have the position string; send it again every second
+                        if (!v2 && !sessions && playing) {
+                            wait(POSITION_TICK_MS);
+                            break;
+                        }
+                        wait(HEARTBEAT_MS);
+                        if (stateVersion == seen) {
+                            out.write(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Subscriber disconnected
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.getResponseHeaders().set("Cache-Control", "no-store");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static String formatTime(long millis) {
+        long h = millis / 3_600_000;
+        long m = (millis / 60_000) % 60;
+        long s = (millis / 1000) % 60;
+        long ms = millis % 1000;
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d", h, m, s, ms);
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            return HexFormat.of().withUpperCase().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] renderCover(int index) {
+        BufferedImage img = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.getHSBColor(index / (float) PLAYLIST.length, 0.6f, 0.8f));
+        g.fillRect(0, 0, 300, 300);
+        g.setColor(Color.WHITE);
+        g.fillOval(100, 100, 100, 100);
+        g.dispose();
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(img, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example;
+
+import net.minecraft.client.texture.NativeImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-artwork work on the artwork thread: the CRC used for legacy companions, and image decode.
+ *
+ * {@link NativeImage} only needs the Minecraft/LWJGL jars on the classpath, not a running game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArtworkBenchmark {
+
+    // SMTC thumbnails are usually 300x300; some players hand out 640x640 or larger
+    @Param({"300", "640", "1000"})
+    public int size;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Noise plus gradients compresses about as badly as real cover art
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int r = (x * 255 / size) ^ (random.nextInt(32));
+                int g = (y * 255 / size) ^ (random.nextInt(32));
+                int b = ((x + y) * 127 / size) ^ (random.nextInt(32));
+                img.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public long crc32() {
+        return ArtworkPipeline.crc32(encoded);
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        try (NativeImage image = NativeImage.read(encoded)) {
+            return image.getWidth();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The marquee offset of a scrolling line, computed every frame while it scrolls.
+ *
+ * Listed as allocation-free in build.gradle, so {@code ./gradlew jmh} fails if the GC profiler sees
+ * it allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FittedTextBenchmark {
+
+    private static final HudLayout.TextMeasurer MEASURER = text -> text.length() * 6;
+
+    private final FittedText line = new FittedText();
+    private long frameNanos;
+
+    @Setup
+    public void setup() {
+        line.measure("Everything In Its Right Place (Live at the Royal Albert Hall)", MEASURER);
+    }
+
+    @Benchmark
+    public int marqueeOffset() {
+        frameNanos += 16_000_000L;
+        return line.marqueeOffset(frameNanos);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HUD layout per frame: the common case (cache hit) and a full recompute (new snapshot every frame).
+ *
+ * Text is measured at a fixed 6px per char, which keeps the benchmark free of the font renderer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HudLayoutBenchmark {
+
+    private static final HudLayout.TextMeasurer MEASURER = text -> text.length() * 6;
+
+    private final NowPlayingConfig config = new NowPlayingConfig();
+    private final HudLayout layout = new HudLayout();
+
+    private final Snapshot[] snapshots = {
+            new Snapshot("Everything In Its Right P...", "Radiohead", true, true, true,
+                    0.4, 0.0, 100.0, 251.0, 1.0, 0L, true, 300, 300),
+            new Snapshot("Windowlicker", "Aphex Twin", false, true, false,
+                    0.7, 0.0, 260.0, 367.0, 1.0, 0L, false, 0, 0)
+    };
+
+    private int i;
+
+    @Benchmark
+    public int cached() {
+        layout.update(snapshots[0], config, 0, 854, 480, 9, MEASURER);
+        return layout.barWidth;
+    }
+
+    @Benchmark
+    public int recompute() {
+        i ^= 1;
+        layout.update(snapshots[i], config, 0, 854, 480, 9, MEASURER);
+        return layout.barWidth;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example;
+
+import net.minecraft.text.CharacterVisitor;
+import net.minecraft.text.OrderedText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Panel text per frame: {@link HudPanelRenderer} prepares the static layer once per layout and a
+ * timestamp only when its second changes, against preparing all of it every frame as before.
+ *
+ * Both walk every prepared text once, as drawing it does. {@link OrderedText} only needs the
+ * Minecraft jar on the classpath, not a running game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HudPanelBenchmark {
+
+    private static final String TITLE = "Everything In Its Right Place";
+    private static final String ARTIST = "Radiohead";
+    private static final double END_SEC = 251.0;
+    private static final double FRAME_SEC = 1.0 / 60.0;
+
+    private static final CharacterVisitor DRAW = (index, style, codePoint) -> true;
+
+    private final OrderedText title = HudPanelRenderer.prepare(TITLE);
+    private final OrderedText artist = HudPanelRenderer.prepare(ARTIST);
+    private final OrderedText icon = HudPanelRenderer.prepare(HudLayout.ICON_PLAYING);
+
+    private String positionString;
+    private OrderedText position;
+    private String endString;
+    private OrderedText end;
+
+    private double positionSec;
+
+    @Benchmark
+    public boolean cached() {
+        String currentPosString = TimestampFormatter.format(nextPosition());
+        String endPosString = TimestampFormatter.format(END_SEC);
+        if (currentPosString != positionString) {
+            positionString = currentPosString;
+            position = HudPanelRenderer.prepare(currentPosString);
+        }
+        if (endPosString != endString) {
+            endString = endPosString;
+            end = HudPanelRenderer.prepare(endPosString);
+        }
+        return draw(title, artist, icon, position, end);
+    }
+
+    // Every text prepared from its string each frame, kept as the baseline
+    @Benchmark
+    public boolean uncached() {
+        return draw(HudPanelRenderer.prepare(TITLE),
+                HudPanelRenderer.prepare(ARTIST),
+                HudPanelRenderer.prepare(HudLayout.ICON_PLAYING),
+                HudPanelRenderer.prepare(TimestampFormatter.format(nextPosition())),
+                HudPanelRenderer.prepare(TimestampFormatter.format(END_SEC)));
+    }
+
+    private double nextPosition() {
+        positionSec += FRAME_SEC;
+        if (positionSec > END_SEC) positionSec = 0.0;
+        return positionSec;
+    }
+
+    private static boolean draw(OrderedText... texts) {
+        boolean drawn = true;
+        for (OrderedText text : texts) drawn &= text.accept(DRAW);
+        return drawn;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one {@code /media_info} response (or SSE event payload), as done on every poll or push.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaInfoDecodeBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    private final byte[] v1 = ("{\"title\":\"Everything In Its Right Place\",\"artist\":\"Radiohead\","
+            + "\"app\":\"Spotify.exe\",\"status\":\"Playing\",\"position\":\"00:02:41.337\","
+            + "\"start\":\"\",\"end\":\"00:04:11.000\","
+            + "\"imageHash\":\"3f786850e387550fdab836ed7e6dc881de23001b\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] v2 = ("{\"version\":2,\"title\":\"Everything In Its Right Place\",\"artist\":\"Radiohead\","
+            + "\"app\":\"Spotify.exe\",\"status\":\"Playing\",\"positionMs\":161337,"
+            + "\"startMs\":0,\"endMs\":251000,\"playbackRate\":1.0,"
+            + "\"imageHash\":\"3f786850e387550fdab836ed7e6dc881de23001b\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final MediaInfo holder = new MediaInfo();
+
+    // Reflection-based decode into a fresh object, as the client did before protocol v2
+    @Benchmark
+    public MediaInfo gsonReflectiveV1() {
+        return GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(v1), StandardCharsets.UTF_8), MediaInfo.class);
+    }
+
+    @Benchmark
+    public MediaInfo streamingV1() throws IOException {
+        MediaInfoReader.read(new InputStreamReader(new ByteArrayInputStream(v1), StandardCharsets.UTF_8), holder);
+        return holder;
+    }
+
+    @Benchmark
+    public MediaInfo streamingV2() throws IOException {
+        MediaInfoReader.read(new InputStreamReader(new ByteArrayInputStream(v2), StandardCharsets.UTF_8), holder);
+        return holder;
+    }
+}
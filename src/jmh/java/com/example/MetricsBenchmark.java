@@ -0,0 +1,53 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into {@link NowPlayingMetrics}, which happens every frame and on every poll.
+ * {@code -prof gc} should report no allocation for the record benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private long value = 12_345;
+
+    @Benchmark
+    public void recordHistogram() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        NowPlayingMetrics.HUD_RENDER.record((value >>> 40) & 0xFFFFF);
+    }
+
+    // The render thread and the poller record concurrently
+    @Benchmark
+    @Threads(2)
+    public void recordHistogramContended() {
+        NowPlayingMetrics.POLL_LATENCY.record(250_000);
+    }
+
+    @Benchmark
+    public void incrementCounter() {
+        NowPlayingMetrics.MAIN_THREAD_TASKS.increment();
+    }
+
+    // What the overlay pays twice a second per histogram
+    @Benchmark
+    public long percentile() {
+        return NowPlayingMetrics.HUD_RENDER.percentile(0.99);
+    }
+}
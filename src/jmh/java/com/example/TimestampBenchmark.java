@@ -0,0 +1,74 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-update (parse, three fields per state) and per-frame (format, twice a frame) time handling.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampBenchmark {
+
+    // Shapes the companion actually sends (hh:mm:ss.fff, empty when unknown)
+    private final String[] timestamps = {"00:03:07.512", "01:02:03.000", "00:00:41.250", "3:07", ""};
+    private final double[] positions = {0.4, 187.51, 3723.0, 59.6, 36000.2};
+
+    private int i;
+
+    @Benchmark
+    public long parseMillis() {
+        i = (i + 1) % timestamps.length;
+        return TimestampFormatter.parseMillis(timestamps[i]);
+    }
+
+    // The split/parseDouble implementation parseMillis replaced, kept as the baseline
+    @Benchmark
+    public double parseSplit() {
+        i = (i + 1) % timestamps.length;
+        String time = timestamps[i];
+        if (time.isEmpty() || "(unknown)".equalsIgnoreCase(time)) return 0.0;
+        try {
+            String[] parts = time.split(":");
+            if (parts.length == 3) {
+                return Integer.parseInt(parts[0]) * 3600.0 + Integer.parseInt(parts[1]) * 60.0 + Double.parseDouble(parts[2]);
+            } else if (parts.length == 2) {
+                return Integer.parseInt(parts[0]) * 60.0 + Double.parseDouble(parts[1]);
+            }
+            return 0.0;
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        i = (i + 1) % positions.length;
+        return TimestampFormatter.format(positions[i]);
+    }
+
+    // The pre-table implementation, kept as the baseline
+    @Benchmark
+    public String formatStringFormat() {
+        i = (i + 1) % positions.length;
+        int totalSeconds = (int) Math.round(positions[i]);
+        int hours = totalSeconds / 3600;
+        int minutes = (totalSeconds % 3600) / 60;
+        int remainingSeconds = totalSeconds % 60;
+        if (hours > 0) return String.format("%d:%02d:%02d", hours, minutes, remainingSeconds);
+        return String.format("%d:%02d", minutes, remainingSeconds);
+    }
+}
@@ -0,0 +1,302 @@
+package com.example;
+
+import net.minecraft.client.texture.NativeImage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier album art cache keyed by artwork content hash.
+ *
+ * Memory tier: decoded {@link NativeImage}s, LRU-evicted against a byte budget. A hit hands out
+ * a pixel copy, so neither the network nor the decoder is touched.
+ * Disk tier: encoded bytes under {@code config/nowplaying/artCache}, LRU by file mtime. A hit
+ * skips the network; the bytes still need decoding once.
+ *
+ * Title/artist pairs are mapped to the hash they last showed, so companions that don't advertise
+ * a hash can still hit the cache on track changes. Thread-safe; all I/O happens on the caller.
+ */
+final class ArtworkCache {
+
+    // Hashes double as file names, so only accept what is safe on every filesystem
+    private static final Pattern SAFE_KEY = Pattern.compile("[0-9A-Za-z_-]{1,128}");
+
+    private static final int MAX_TRACK_ENTRIES = 512;
+    private static final int MAX_PALETTE_ENTRIES = 512;
+    private static final int MAX_CRC_ENTRIES = 512;
+    private static final String FILE_SUFFIX = ".img";
+
+    private final Path directory;
+    private final IntSupplier memoryBudgetMb;
+    private final IntSupplier diskBudgetMb;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, NativeImage> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private final LinkedHashMap<String, String> hashByTrack = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_TRACK_ENTRIES;
+        }
+    };
+
+    // CoverPalette results by hash; a few bytes each, so they outlive the decoded images
+    private final LinkedHashMap<String, Long> paletteByHash = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_PALETTE_ENTRIES;
+        }
+    };
+
+    // CRC32 of the encoded bytes by hash, so cache hits can report it without the bytes at hand
+    private final LinkedHashMap<String, Long> crcByHash = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_CRC_ENTRIES;
+        }
+    };
+
+    // Lazily loaded from the directory listing, then maintained incrementally
+    private LinkedHashMap<String, Long> diskIndex;
+    private long diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ArtworkCache(Path directory, IntSupplier memoryBudgetMb, IntSupplier diskBudgetMb) {
+        this.directory = directory;
+        this.memoryBudgetMb = memoryBudgetMb;
+        this.diskBudgetMb = diskBudgetMb;
+    }
+
+    long memoryHits() {
+        return memoryHits.get();
+    }
+
+    long diskHits() {
+        return diskHits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The hash this title/artist showed last time, or null.
+     */
+    synchronized String hashForTrack(String trackKey) {
+        return hashByTrack.get(trackKey);
+    }
+
+    synchronized void rememberTrack(String trackKey, String hash) {
+        hashByTrack.put(trackKey, hash);
+    }
+
+    /**
+     * CRC32 of the encoded art with this hash, or 0 if it isn't known.
+     */
+    synchronized long crc(String hash) {
+        Long crc = crcByHash.get(hash);
+        return crc != null ? crc : 0L;
+    }
+
+    synchronized void rememberCrc(String hash, long crc) {
+        crcByHash.put(hash, crc);
+    }
+
+    /**
+     * The {@link CoverPalette} of the art with this hash, computed from {@code image} only the first
+     * time it is asked for.
+     */
+    long palette(String hash, NativeImage image) {
+        synchronized (this) {
+            Long known = paletteByHash.get(hash);
+            if (known != null) return known;
+        }
+        long palette = CoverPalette.extract(image.getWidth(), image.getHeight(), image::getColorArgb);
+        synchronized (this) {
+            paletteByHash.put(hash, palette);
+        }
+        return palette;
+    }
+
+    /**
+     * Memory tier lookup.
+     *
+     * @return a copy of the cached pixels owned by the caller, or null
+     */
+    synchronized NativeImage getDecoded(String hash) {
+        NativeImage cached = memory.get(hash);
+        if (cached == null) return null;
+
+        NativeImage copy = new NativeImage(cached.getFormat(), cached.getWidth(), cached.getHeight(), false);
+        copy.copyFrom(cached);
+        memoryHits.incrementAndGet();
+        return copy;
+    }
+
+    /**
+     * Disk tier lookup. Counts a miss when absent, since both tiers have been checked by then.
+     *
+     * @return the encoded bytes, or null
+     */
+    byte[] getEncoded(String hash) {
+        if (!SAFE_KEY.matcher(hash).matches()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        synchronized (this) {
+            if (!loadDiskIndex().containsKey(hash)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            diskIndex.get(hash); // touch for access order
+        }
+
+        Path file = directory.resolve(hash + FILE_SUFFIX);
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            diskHits.incrementAndGet();
+            return bytes;
+        } catch (IOException e) {
+            synchronized (this) {
+                Long size = diskIndex.remove(hash);
+                if (size != null) diskBytes -= size;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a freshly decoded image. The cache keeps its own copy; the caller keeps {@code image}.
+     */
+    void put(String hash, byte[] encoded, NativeImage image) {
+        putDecoded(hash, image);
+        putEncoded(hash, encoded);
+    }
+
+    /**
+     * Memory tier only, for disk hits that were just decoded.
+     */
+    synchronized void putDecoded(String hash, NativeImage image) {
+        long budget = memoryBudgetMb.getAsInt() * 1024L * 1024L;
+        long size = (long) image.getWidth() * image.getHeight() * 4L;
+        if (size > budget || memory.containsKey(hash)) return;
+
+        NativeImage copy = new NativeImage(image.getFormat(), image.getWidth(), image.getHeight(), false);
+        copy.copyFrom(image);
+        memory.put(hash, copy);
+        memoryBytes += size;
+
+        Iterator<Map.Entry<String, NativeImage>> it = memory.entrySet().iterator();
+        while (memoryBytes > budget && it.hasNext()) {
+            NativeImage evicted = it.next().getValue();
+            it.remove();
+            memoryBytes -= (long) evicted.getWidth() * evicted.getHeight() * 4L;
+            evicted.close();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Disk tier only. Art larger than the disk budget (all of it with a budget of 0) is not stored.
+     */
+    private void putEncoded(String hash, byte[] encoded) {
+        long budget = diskBudgetMb.getAsInt() * 1024L * 1024L;
+        if (encoded.length > budget || !SAFE_KEY.matcher(hash).matches()) return;
+
+        synchronized (this) {
+            if (loadDiskIndex().containsKey(hash)) return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+
+            // Write-then-move so a crash never leaves a truncated image behind
+            Path tmp = Files.createTempFile(directory, hash, ".tmp");
+            Files.write(tmp, encoded);
+            Files.move(tmp, directory.resolve(hash + FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("[NowPlayingMod] Failed to write album art cache entry: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            diskIndex.put(hash, (long) encoded.length);
+            diskBytes += encoded.length;
+
+            Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+            while (diskBytes > budget && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                it.remove();
+                diskBytes -= eldest.getValue();
+                evictions.incrementAndGet();
+                try {
+                    Files.deleteIfExists(directory.resolve(eldest.getKey() + FILE_SUFFIX));
+                } catch (IOException e) {
+                    System.err.println("[NowPlayingMod WARNING] Failed to evict " + eldest.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees every decoded image. The disk tier is left for the next session.
+     */
+    synchronized void clearMemory() {
+        for (NativeImage image : memory.values()) image.close();
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    // Caller holds the lock
+    private LinkedHashMap<String, Long> loadDiskIndex() {
+        if (diskIndex != null) return diskIndex;
+
+        diskIndex = new LinkedHashMap<>(64, 0.75f, true);
+        diskBytes = 0;
+        if (!Files.isDirectory(directory)) return diskIndex;
+
+        // Oldest first, so the access order starts out as least recently used
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        long size = p.toFile().length();
+                        diskIndex.put(name.substring(0, name.length() - FILE_SUFFIX.length()), size);
+                        diskBytes += size;
+                    });
+        } catch (IOException e) {
+            System.err.println("[NowPlayingMod WARNING] Failed to index album art cache: " + e.getMessage());
+        }
+        return diskIndex;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ArtworkCache{memoryHits=" + memoryHits + ", diskHits=" + diskHits
+                + ", misses=" + misses + ", evictions=" + evictions
+                + ", memoryBytes=" + memoryBytes + ", diskBytes=" + diskBytes + "}";
+    }
+}
@@ -0,0 +1,272 @@
+package com.example;
+
+import net.minecraft.client.texture.NativeImage;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Fetches and decodes album art on its own thread, so the poller never waits on image size.
+ *
+ * Every request is stamped with a generation number. A newer request supersedes all older ones:
+ * queued work is cancelled, in-flight downloads are interrupted, and anything that still finishes
+ * is dropped (and its {@link NativeImage} closed) before it reaches the {@link CoverTextureManager}.
+ * Art seen before is served from the {@link ArtworkCache} without touching the network, and so is
+ * art the companion pushed along with the state (see {@link #offer}).
+ */
+final class ArtworkPipeline {
+
+    /**
+     * Receives the outcome of the newest request.
+     */
+    interface Listener {
+        /**
+         * Client thread. The newest artwork is now the front cover texture.
+         *
+         * @param palette its {@link CoverPalette}
+         */
+        void onArtworkShown(int width, int height, long palette);
+
+        /**
+         * Artwork thread. The companion has no artwork, or it couldn't be decoded.
+         */
+        void onArtworkMissing();
+    }
+
+    // Asked on every fetch; the companion's port can change when it is restarted
+    private final Supplier<URI> endpoint;
+    private final ArtworkCache cache;
+    private final CoverTextureManager textures;
+    private final Listener listener;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "NowPlaying-Artwork");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong generation = new AtomicLong();
+
+    // The last artwork pushed with the state, until the next push replaces it
+    private record Pushed(String hash, byte[] encoded) {}
+    private final AtomicReference<Pushed> pushed = new AtomicReference<>();
+
+    // Guarded by "this"
+    private Future<?> pending;
+    private String pendingKey;
+
+    // What the front texture shows; written on the client thread
+    private volatile String currentHash;
+    private volatile long currentCrc;
+
+    ArtworkPipeline(Supplier<URI> endpoint, ArtworkCache cache, CoverTextureManager textures, Listener listener) {
+        this.endpoint = endpoint;
+        this.cache = cache;
+        this.textures = textures;
+        this.listener = listener;
+    }
+
+    /**
+     * Cache key of the artwork currently on screen (the companion's hash when it advertises one),
+     * or null if nothing is loaded.
+     */
+    String currentHash() {
+        return currentHash;
+    }
+
+    /**
+     * Starts fetching the art for the current track, superseding any other request.
+     * Asking again for the art that is already in flight is a no-op.
+     *
+     * @param hash      artwork hash advertised by the companion, or null for older companions
+     * @param trackKey  title/artist identity of the track, used for cache lookups without a hash
+     * @param eager     register the result even if it looks identical to the current art
+     * @param knownHash hash to send as If-None-Match, or null for an unconditional fetch
+     */
+    synchronized void request(String hash, String trackKey, boolean eager, String knownHash) {
+        if (executor.isShutdown()) return;
+        String key = hash != null ? hash : trackKey;
+        if (pending != null && !pending.isDone() && key.equals(pendingKey)) return;
+
+        long gen = generation.incrementAndGet();
+        if (pending != null) pending.cancel(true);
+
+        pendingKey = key;
+        pending = executor.submit(() -> run(gen, hash, trackKey, eager, knownHash));
+    }
+
+    /**
+     * Whether a request is queued or still running.
+     */
+    synchronized boolean fetching() {
+        return pending != null && !pending.isDone();
+    }
+
+    /**
+     * Artwork the companion pushed along with the state, ahead of the request for its hash. That
+     * request decodes these bytes instead of fetching them again; only the newest push is kept.
+     * Called on the stream thread.
+     */
+    void offer(String hash, byte[] encoded) {
+        if (hash != null && encoded.length > 0) pushed.set(new Pushed(hash, encoded));
+    }
+
+    /**
+     * Drops every outstanding request, e.g. when media stops.
+     */
+    synchronized void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) pending.cancel(true);
+        pending = null;
+        pendingKey = null;
+    }
+
+    /**
+     * Forgets the current art so the next request registers unconditionally.
+     */
+    void forgetCurrent() {
+        currentHash = null;
+        currentCrc = 0L;
+    }
+
+    /**
+     * Stops the artwork thread for good; later requests are ignored.
+     */
+    synchronized void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private boolean superseded(long gen) {
+        return generation.get() != gen;
+    }
+
+    private void run(long gen, String hash, String trackKey, boolean eager, String knownHash) {
+        // An advertised hash is authoritative; a title/artist match is only trusted on track changes,
+        // otherwise late-arriving art for the same track would never replace the cached one.
+        String cachedKey = hash != null ? hash : (eager ? cache.hashForTrack(trackKey) : null);
+        if (cachedKey != null) {
+            if (cachedKey.equals(currentHash)) return;
+
+            NativeImage cached = loadFromCache(cachedKey);
+            if (cached != null) {
+                deliver(gen, cached, cachedKey, cache.crc(cachedKey));
+                return;
+            }
+        }
+
+        if (superseded(gen)) return;
+
+        // Pushed with the state: already here, whatever the disk tier's budget
+        Pushed p = pushed.get();
+        if (hash != null && p != null && hash.equals(p.hash)) {
+            decodeAndDeliver(gen, p.encoded, hash, crc32(p.encoded), trackKey);
+            return;
+        }
+
+        CompanionHttp.ResponseBuffer body = CompanionHttp.getIfNoneMatch(endpoint.get(), knownHash);
+        if (superseded(gen)) return;
+
+        if (body == null || (!body.notModified() && body.length() == 0)) {
+            listener.onArtworkMissing();
+            return;
+        }
+
+        // 304: the texture we have is still current, nothing crossed the wire
+        if (body.notModified()) return;
+
+        String etag = body.etag();
+        byte[] bytes = body.toByteArray();
+
+        long crc;
+        String contentKey;
+        if (etag != null) {
+            // The companion hashed it for us; the CRC is only needed once the art is kept
+            if (!eager && etag.equals(currentHash)) return;
+            crc = crc32(bytes);
+            contentKey = etag;
+        } else {
+            crc = crc32(bytes);
+
+            // If not eager and same image, do nothing
+            if (!eager && currentCrc == crc) return;
+            contentKey = String.format("crc%08x", crc);
+        }
+
+        if (superseded(gen)) return;
+        decodeAndDeliver(gen, bytes, contentKey, crc, trackKey);
+    }
+
+    private void decodeAndDeliver(long gen, byte[] bytes, String contentKey, long crc, String trackKey) {
+        NativeImage img = decode(bytes);
+        if (img == null) {
+            if (!superseded(gen)) listener.onArtworkMissing();
+            return;
+        }
+
+        // Cache even if superseded: skipping back to this track is exactly the case we want to be fast
+        cache.put(contentKey, bytes, img);
+        cache.rememberTrack(trackKey, contentKey);
+        cache.rememberCrc(contentKey, crc);
+
+        deliver(gen, img, contentKey, crc);
+    }
+
+    private NativeImage loadFromCache(String key) {
+        NativeImage decoded = cache.getDecoded(key);
+        if (decoded != null) return decoded;
+
+        byte[] encoded = cache.getEncoded(key);
+        if (encoded == null) return null;
+
+        NativeImage img = decode(encoded);
+        if (img != null) {
+            cache.putDecoded(key, img);
+            cache.rememberCrc(key, crc32(encoded));
+        }
+        return img;
+    }
+
+    private void deliver(long gen, NativeImage img, String key, long crc) {
+        if (superseded(gen)) {
+            img.close();
+            return;
+        }
+
+        int w = img.getWidth();
+        int h = img.getHeight();
+        // Here rather than on the client thread; the same art gets the cached one
+        long palette = cache.palette(key, img);
+
+        // The texture manager re-checks the generation on the client thread, right before uploading
+        textures.submit(img, () -> !superseded(gen), () -> {
+            currentHash = key;
+            currentCrc = crc;
+            listener.onArtworkShown(w, h, palette);
+        });
+    }
+
+    private static NativeImage decode(byte[] bytes) {
+        long start = System.nanoTime();
+        try {
+            NativeImage img = NativeImage.read(bytes);
+            NowPlayingMetrics.ARTWORK_DECODE.recordSince(start);
+            return img;
+        } catch (Exception e) {
+            System.err.println("[NowPlayingMod] Failed to decode album art: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static long crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
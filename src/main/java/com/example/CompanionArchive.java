@@ -0,0 +1,180 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The companion payload packed into a single resource: an index up front, then the bytes of every
+ * file back to back in index order.
+ *
+ * <pre>
+ * int   magic "NPK1"
+ * int   count
+ * count x { UTF path, long size, long storedSize, byte method, byte[32] sha256 }
+ * count x byte[storedSize]   (raw for STORED, raw deflate without zlib header for DEFLATED)
+ * </pre>
+ *
+ * Written by the {@code packCompanion} Gradle task; {@code CompanionArchiveWriter} in the dev
+ * tools writes the same format for the tests and benchmarks. Reading
+ * is strictly sequential, so a resource stream out of the mod jar works as well as a file: one
+ * lookup finds the whole payload, and entries that don't need writing are skipped.
+ */
+final class CompanionArchive implements Closeable {
+
+    static final int MAGIC = 0x4E504B31; // "NPK1"
+
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int INFLATE_BUFFER_SIZE = 1024 * 1024;
+
+    // Pool threads only live for one install, so their buffers go with them
+    private static final ThreadLocal<ByteBuffer> INFLATE_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(INFLATE_BUFFER_SIZE));
+
+    record Entry(String path, long size, long storedSize, byte method, String sha256) {}
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final List<Entry> entries;
+    private int next;
+
+    private CompanionArchive(InputStream in, List<Entry> entries) {
+        this.in = in;
+        this.channel = Channels.newChannel(in);
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the index; the stream is then positioned at the first entry's data.
+     *
+     * @throws IOException if the stream is not an archive or the index is truncated
+     */
+    static CompanionArchive open(InputStream raw) throws IOException {
+        InputStream in = new BufferedInputStream(raw, READ_BUFFER_SIZE);
+        try {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC) throw new IOException("Not a companion archive");
+
+            int count = data.readInt();
+            if (count < 0) throw new IOException("Corrupt companion archive index");
+
+            List<Entry> entries = new ArrayList<>(count);
+            byte[] sha = new byte[32];
+            for (int i = 0; i < count; i++) {
+                String path = data.readUTF();
+                long size = data.readLong();
+                long storedSize = data.readLong();
+                byte method = data.readByte();
+                data.readFully(sha);
+                if (size < 0 || storedSize < 0 || storedSize > Integer.MAX_VALUE || (method != STORED && method != DEFLATED)) {
+                    throw new IOException("Corrupt companion archive entry: " + path);
+                }
+                entries.add(new Entry(path, size, storedSize, method, HexFormat.of().formatHex(sha)));
+            }
+            return new CompanionArchive(in, Collections.unmodifiableList(entries));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Every entry, in the order their data follows the index.
+     */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Reads the stored (possibly compressed) bytes of {@code entry} into a new direct buffer.
+     * Entries must be read or {@linkplain #skip skipped} in index order.
+     */
+    ByteBuffer read(Entry entry) throws IOException {
+        advanceTo(entry);
+        ByteBuffer stored = ByteBuffer.allocateDirect((int) entry.storedSize());
+        while (stored.hasRemaining()) {
+            if (channel.read(stored) < 0) throw new EOFException("Companion archive truncated in " + entry.path());
+        }
+        return stored.flip();
+    }
+
+    void skip(Entry entry) throws IOException {
+        advanceTo(entry);
+        long remaining = entry.storedSize();
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException("Companion archive truncated in " + entry.path());
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private void advanceTo(Entry entry) {
+        if (next >= entries.size() || entries.get(next) != entry) {
+            throw new IllegalStateException("Companion archive entries must be consumed in order");
+        }
+        next++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Writes the file contents of {@code entry} from its stored bytes to {@code out}, feeding
+     * {@code digest} along the way. Direct buffers end to end: the stored bytes, the inflate output
+     * and the channel write.
+     *
+     * @return the number of bytes written
+     */
+    static long extract(Entry entry, ByteBuffer stored, FileChannel out, MessageDigest digest) throws IOException {
+        if (entry.method() == STORED) {
+            digest.update(stored.duplicate());
+            long written = 0;
+            while (stored.hasRemaining()) written += out.write(stored);
+            return written;
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored);
+            ByteBuffer buffer = INFLATE_BUFFERS.get();
+            long written = 0;
+            while (!inflater.finished()) {
+                buffer.clear();
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Companion archive entry is truncated: " + entry.path());
+                }
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) written += out.write(buffer);
+            }
+            return written;
+        } catch (DataFormatException e) {
+            throw new IOException("Companion archive entry is corrupt: " + entry.path(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
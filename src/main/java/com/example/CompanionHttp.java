@@ -0,0 +1,149 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Shared HTTP transport for request/response calls to the companion.
+ *
+ * One {@link HttpClient} is used for the lifetime of the game, so the loopback connection is kept
+ * alive and reused between polls instead of being opened and torn down every second.
+ * Response bodies are read into a per-thread buffer that is reused across calls.
+ */
+final class CompanionHttp {
+
+    private CompanionHttp() {}
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(1000);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMillis(1000);
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    // HTTP/1.1 on purpose: the companion's HttpListener doesn't speak h2c, and the upgrade attempt costs a round trip
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .proxy(HttpClient.Builder.NO_PROXY)
+            .build();
+
+    private static final ThreadLocal<ResponseBuffer> BUFFERS = ThreadLocal.withInitial(ResponseBuffer::new);
+
+    /**
+     * Reusable response body. Owned by the calling thread and only valid until its next request.
+     */
+    static final class ResponseBuffer {
+        private byte[] data = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+        private boolean notModified;
+        private String etag;
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * True when a conditional request was answered with 304; the body is empty.
+         */
+        boolean notModified() {
+            return notModified;
+        }
+
+        /**
+         * The response's entity tag without quotes, or null if the companion didn't send one.
+         */
+        String etag() {
+            return etag;
+        }
+
+        InputStream stream() {
+            return new ByteArrayInputStream(data, 0, length);
+        }
+
+        Reader reader() {
+            return new InputStreamReader(stream(), StandardCharsets.UTF_8);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        private void readFrom(InputStream in, long expectedLength) throws IOException {
+            length = 0;
+            // +1 so a body of exactly the advertised size never triggers a grow
+            if (expectedLength >= data.length) data = new byte[(int) expectedLength + 1];
+
+            int n;
+            while ((n = in.read(data, length, data.length - length)) >= 0) {
+                length += n;
+                if (length == data.length) {
+                    // Unknown or wrong content length: grow and keep reading
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs a GET and reads the body into the calling thread's reusable buffer.
+     *
+     * @return the filled buffer, or null if the request failed or the status was not 200
+     */
+    static ResponseBuffer get(URI uri) {
+        return getIfNoneMatch(uri, null);
+    }
+
+    /**
+     * Conditional GET: when {@code etag} still matches, the companion answers 304 and no body is sent.
+     *
+     * @param etag unquoted entity tag of the copy we already have, or null for an unconditional GET
+     * @return the filled buffer (check {@link ResponseBuffer#notModified()}), or null on failure or
+     *         any status other than 200/304
+     */
+    static ResponseBuffer getIfNoneMatch(URI uri, String etag) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+        if (etag != null) builder.header("If-None-Match", '"' + etag + '"');
+
+        try {
+            HttpResponse<InputStream> response = CLIENT.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+            try (InputStream in = response.body()) {
+                // Drain non-200 bodies too, otherwise the pooled connection can't be reused
+                ResponseBuffer buffer = BUFFERS.get();
+                buffer.readFrom(in, response.headers().firstValueAsLong("Content-Length").orElse(-1));
+                NowPlayingMetrics.BYTES_FETCHED.add(buffer.length);
+                buffer.notModified = response.statusCode() == 304;
+                buffer.etag = response.headers().firstValue("ETag").map(CompanionHttp::unquote).orElse(null);
+
+                int status = response.statusCode();
+                return status == 200 || status == 304 ? buffer : null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String unquote(String etag) {
+        // Weak validators (W/"...") compare the same for our purposes
+        String tag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        return tag;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Brings an extracted companion directory in line with the bundled {@link CompanionArchive},
+ * touching as little as possible.
+ *
+ * The archive index lists every file with its size and SHA-256. Next to the extracted files an
+ * install state remembers size, modification time and hash of what we last wrote or verified. A
+ * file whose size and mtime still match that record is trusted without reading it; a file whose
+ * size matches but mtime doesn't is hashed; anything missing or different is rewritten. Checks run
+ * in parallel; then the archive is streamed once, up to the last entry that needs writing, and each
+ * of those is inflated into a preallocated file on the pool while the next is read. Files from an
+ * older install that the archive no longer lists are removed.
+ *
+ * No Fabric dependency, so the dev tools can run it against a temporary directory.
+ */
+final class CompanionInstaller {
+
+    static final String STATE_FILE = ".install-state";
+    private static final String STATE_HEADER = "# nowplaying install state v1: sha256 size mtime path";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Opens the bundled archive.
+     */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * What {@link #install()} did; one line for the log.
+     */
+    record Result(int trusted, int hashed, int written, int removed, long elapsedMillis) {
+        @Override
+        public String toString() {
+            return trusted + " unchanged, " + hashed + " verified by hash, " + written + " written, "
+                    + removed + " removed in " + elapsedMillis + " ms";
+        }
+    }
+
+    private record Recorded(String sha256, long size, long mtime) {}
+
+    private enum Outcome { TRUSTED, HASHED, WRITE }
+
+    private final Source source;
+    private final Path target;
+
+    CompanionInstaller(Source source, Path target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    Result install() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(target);
+
+        try (CompanionArchive archive = CompanionArchive.open(source.open())) {
+            List<CompanionArchive.Entry> entries = archive.entries();
+            for (CompanionArchive.Entry entry : entries) resolve(entry.path());
+
+            Map<String, Recorded> recorded = readState();
+            Map<String, Recorded> updated = new HashMap<>();
+
+            int threads = Math.max(1, Math.min(entries.size(), Runtime.getRuntime().availableProcessors()));
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "NowPlaying-Extract-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+            int trusted = 0;
+            int hashed = 0;
+            int written = 0;
+            try {
+                List<Future<Outcome>> checks = new ArrayList<>(entries.size());
+                for (CompanionArchive.Entry entry : entries) {
+                    Recorded known = recorded.get(entry.path());
+                    checks.add(pool.submit(() -> check(entry, known, updated)));
+                }
+
+                boolean[] needsWrite = new boolean[entries.size()];
+                int lastWrite = -1;
+                for (int i = 0; i < checks.size(); i++) {
+                    switch (await(checks.get(i))) {
+                        case TRUSTED -> trusted++;
+                        case HASHED -> hashed++;
+                        case WRITE -> {
+                            needsWrite[i] = true;
+                            lastWrite = i;
+                        }
+                    }
+                }
+
+                // One pass over the archive; nothing past the last file we need is read
+                List<Future<?>> writes = new ArrayList<>();
+                for (int i = 0; i <= lastWrite; i++) {
+                    CompanionArchive.Entry entry = entries.get(i);
+                    if (!needsWrite[i]) {
+                        archive.skip(entry);
+                        continue;
+                    }
+                    ByteBuffer stored = archive.read(entry);
+                    writes.add(pool.submit(() -> {
+                        write(entry, stored, updated);
+                        return null;
+                    }));
+                }
+                for (Future<?> write : writes) {
+                    await(write);
+                    written++;
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            int removed = removeStale(entries, recorded);
+            if (hashed > 0 || written > 0 || removed > 0 || recorded.size() != updated.size()) {
+                writeState(entries, updated);
+            }
+
+            return new Result(trusted, hashed, written, removed, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Decides whether the extracted copy of {@code entry} can stay, hashing it only when the install
+     * state can't vouch for it.
+     */
+    private Outcome check(CompanionArchive.Entry entry, Recorded known, Map<String, Recorded> updated) throws IOException {
+        Path file = resolve(entry.path());
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return Outcome.WRITE;
+        }
+        if (!attrs.isRegularFile() || attrs.size() != entry.size()) return Outcome.WRITE;
+
+        long mtime = attrs.lastModifiedTime().toMillis();
+        if (known != null && known.size() == entry.size() && known.mtime() == mtime && known.sha256().equals(entry.sha256())) {
+            // Same file we wrote or verified last time; not worth reading
+            record(updated, entry.path(), known);
+            return Outcome.TRUSTED;
+        }
+
+        if (!sha256(file).equals(entry.sha256())) return Outcome.WRITE;
+
+        record(updated, entry.path(), new Recorded(entry.sha256(), entry.size(), mtime));
+        return Outcome.HASHED;
+    }
+
+    private static void record(Map<String, Recorded> updated, String path, Recorded value) {
+        synchronized (updated) {
+            updated.put(path, value);
+        }
+    }
+
+    /**
+     * Inflates {@code stored} into a preallocated file next to the destination while hashing it,
+     * then moves it into place, so an interrupted write never leaves a truncated file behind under
+     * the real name.
+     */
+    private void write(CompanionArchive.Entry entry, ByteBuffer stored, Map<String, Recorded> updated) throws IOException {
+        Path file = resolve(entry.path());
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        MessageDigest digest = newDigest();
+        long size;
+        try (RandomAccessFile out = new RandomAccessFile(temp.toFile(), "rw")) {
+            // Reserve the space up front instead of growing the file write by write
+            out.setLength(entry.size());
+            size = CompanionArchive.extract(entry, stored, out.getChannel(), digest);
+            if (size != entry.size()) out.setLength(size);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (size != entry.size() || !sha256.equals(entry.sha256())) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Bundled " + entry.path() + " does not match the archive index (corrupt mod jar?)");
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        long mtime = Files.getLastModifiedTime(file).toMillis();
+        record(updated, entry.path(), new Recorded(entry.sha256(), entry.size(), mtime));
+    }
+
+    /**
+     * Deletes files a previous install wrote that the archive no longer lists.
+     * Only recorded files are touched, never anything else in the directory.
+     */
+    private int removeStale(List<CompanionArchive.Entry> entries, Map<String, Recorded> recorded) {
+        Set<String> current = new HashSet<>();
+        for (CompanionArchive.Entry entry : entries) current.add(entry.path());
+
+        int removed = 0;
+        for (String path : recorded.keySet()) {
+            if (current.contains(path)) continue;
+            try {
+                if (Files.deleteIfExists(resolve(path))) removed++;
+            } catch (IOException e) {
+                System.err.println("[NowPlayingMod WARNING] Failed to delete stale companion file " + path + ": " + e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    private Path resolve(String path) throws IOException {
+        Path file = target.resolve(path).normalize();
+        if (!file.startsWith(target.normalize())) throw new IOException("Archive path escapes the install directory: " + path);
+        return file;
+    }
+
+    // -------------------------
+    // Install state
+    // -------------------------
+
+    private Map<String, Recorded> readState() {
+        Map<String, Recorded> state = new HashMap<>();
+        Path file = target.resolve(STATE_FILE);
+        if (!Files.exists(file)) return state;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!STATE_HEADER.equals(reader.readLine())) return state;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 4);
+                if (parts.length != 4) continue;
+                state.put(parts[3], new Recorded(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Worst case every file gets hashed once
+            System.err.println("[NowPlayingMod WARNING] Ignoring unreadable companion install state: " + e.getMessage());
+            state.clear();
+        }
+        return state;
+    }
+
+    private void writeState(List<CompanionArchive.Entry> entries, Map<String, Recorded> state) throws IOException {
+        StringBuilder out = new StringBuilder(STATE_HEADER).append('\n');
+        for (CompanionArchive.Entry entry : entries) {
+            Recorded r = state.get(entry.path());
+            if (r == null) continue;
+            out.append(r.sha256()).append(' ').append(r.size()).append(' ').append(r.mtime()).append(' ')
+                    .append(entry.path()).append('\n');
+        }
+
+        Path file = target.resolve(STATE_FILE);
+        Path temp = file.resolveSibling(STATE_FILE + ".tmp");
+        Files.writeString(temp, out, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // -------------------------
+    // Hashing
+    // -------------------------
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) >= 0) digest.update(buffer, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while installing the companion", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
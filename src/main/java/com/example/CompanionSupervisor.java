@@ -0,0 +1,300 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps the companion process running: launches it, waits until it answers, and restarts it with
+ * exponential backoff and jitter when it dies or never becomes ready. A companion that keeps
+ * crashing is given up on instead of being relaunched forever.
+ *
+ * All of it happens on one supervisor thread, so there is never more than one process, one launch
+ * attempt or one output reader at a time, however often callers look at the companion. No Fabric
+ * dependency, so the dev tools can supervise the stand-in.
+ */
+final class CompanionSupervisor {
+
+    /**
+     * Timing and give-up rules.
+     *
+     * @param initialBackoffMillis delay before the first restart; doubles with every failure in a row
+     * @param maxBackoffMillis     cap of the doubling
+     * @param jitter               each delay is spread by up to this fraction either way, so several
+     *                             clients don't restart in lockstep
+     * @param readyTimeoutMillis   a launch that doesn't pass the readiness probe by then counts as a crash
+     * @param stableMillis         uptime after which a process is considered healthy again, resetting the backoff
+     * @param maxCrashes           crashes within {@code crashWindowMillis} that make the supervisor give up
+     */
+    record Policy(long initialBackoffMillis, long maxBackoffMillis, double jitter, long readyTimeoutMillis,
+                  long stableMillis, int maxCrashes, long crashWindowMillis) {
+
+        static final Policy DEFAULT = new Policy(
+                500, 30_000, 0.2, 20_000,
+                60_000, 5, TimeUnit.MINUTES.toMillis(2));
+    }
+
+    enum State {
+        STOPPED,
+        STARTING,
+        READY,
+        BACKOFF,
+        GAVE_UP
+    }
+
+    interface Launcher {
+        Process launch() throws IOException;
+    }
+
+    /**
+     * Called on the supervisor thread, except the output callbacks, which run on the reader thread
+     * of the process that wrote the line.
+     */
+    interface Listener {
+        void onOutputLine(String line);
+
+        /** The current process's output ended; it is exiting or gone. */
+        void onOutputClosed();
+
+        void onReady(Process process);
+
+        /**
+         * The process exited or was killed for not becoming ready.
+         *
+         * @param exitCode the process's exit code, or -1 if it never started
+         * @param retryInMillis delay before the next launch
+         */
+        void onDown(int exitCode, long retryInMillis);
+
+        void onGaveUp(String reason);
+    }
+
+    private static final long PROBE_INTERVAL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final Launcher launcher;
+    private final BooleanSupplier readinessProbe;
+    private final Listener listener;
+    private final Policy policy;
+
+    private final Object lock = new Object();
+    private Thread thread;
+    private volatile boolean stopping;
+    // False when detaching: the process is shared and outlives this supervisor
+    private volatile boolean terminateOnStop = true;
+    private volatile Process process;
+    private volatile State state = State.STOPPED;
+
+    // Written by the supervisor thread only
+    private final ArrayDeque<Long> recentCrashes = new ArrayDeque<>();
+    private volatile int failuresInARow;
+
+    private volatile int restarts;
+
+    CompanionSupervisor(Launcher launcher, BooleanSupplier readinessProbe, Listener listener, Policy policy) {
+        this.launcher = launcher;
+        this.readinessProbe = readinessProbe;
+        this.listener = listener;
+        this.policy = policy;
+    }
+
+    void start() {
+        synchronized (lock) {
+            if (thread != null) return;
+            stopping = false;
+            terminateOnStop = true;
+            thread = new Thread(this::supervise, "NowPlaying-Supervisor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops supervising and terminates the process, forcibly if it doesn't exit in time.
+     * Blocks until the supervisor thread is gone.
+     */
+    void stop() {
+        stop(true);
+    }
+
+    /**
+     * Stops supervising but leaves the process running, for a companion other clients still use.
+     * Blocks until the supervisor thread is gone.
+     */
+    void detach() {
+        stop(false);
+    }
+
+    private void stop(boolean terminate) {
+        Thread t;
+        synchronized (lock) {
+            t = thread;
+            thread = null;
+            terminateOnStop = terminate;
+            stopping = true;
+        }
+        if (t == null) return;
+
+        t.interrupt();
+        if (terminate) terminate(process);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state = State.STOPPED;
+    }
+
+    State state() {
+        return state;
+    }
+
+    /**
+     * Relaunches after the first one.
+     */
+    int restarts() {
+        return restarts;
+    }
+
+    /**
+     * Failures since the companion last stayed up for {@link Policy#stableMillis()}.
+     */
+    int failuresInARow() {
+        return failuresInARow;
+    }
+
+    // -------------------------
+    // Supervisor thread
+    // -------------------------
+
+    private void supervise() {
+        boolean first = true;
+        while (!stopping) {
+            if (!first) {
+                restarts++;
+                NowPlayingMetrics.COMPANION_RESTARTS.increment();
+            }
+            first = false;
+
+            state = State.STARTING;
+            long launchedAt = System.nanoTime();
+            int exitCode = runOnce();
+            if (stopping) break;
+
+            // A long healthy run wipes the slate; a crash right after start keeps doubling
+            if (System.nanoTime() - launchedAt >= TimeUnit.MILLISECONDS.toNanos(policy.stableMillis())) {
+                failuresInARow = 0;
+            }
+            failuresInARow++;
+
+            long now = System.nanoTime();
+            recentCrashes.addLast(now);
+            while (now - recentCrashes.peekFirst() > TimeUnit.MILLISECONDS.toNanos(policy.crashWindowMillis())) {
+                recentCrashes.removeFirst();
+            }
+            if (recentCrashes.size() >= policy.maxCrashes()) {
+                state = State.GAVE_UP;
+                listener.onGaveUp("companion failed " + recentCrashes.size() + " times within "
+                        + TimeUnit.MILLISECONDS.toSeconds(policy.crashWindowMillis()) + " s (last exit code " + exitCode + ")");
+                break;
+            }
+
+            long delay = backoffMillis(failuresInARow);
+            state = State.BACKOFF;
+            listener.onDown(exitCode, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        if (state != State.GAVE_UP) state = State.STOPPED;
+    }
+
+    /**
+     * Launches once and waits until the process is gone.
+     *
+     * @return its exit code, or -1 if it couldn't be started
+     */
+    private int runOnce() {
+        Process p;
+        try {
+            p = launcher.launch();
+        } catch (IOException e) {
+            System.err.println("[NowPlayingMod ERROR] Failed to launch C# server: " + e.getMessage());
+            return -1;
+        }
+        process = p;
+        System.out.println("[NowPlayingMod] C# server launched. PID: " + p.pid());
+
+        Thread reader = new Thread(() -> readOutput(p), "NowPlaying-CSharp-Log");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            if (awaitReady(p)) {
+                state = State.READY;
+                listener.onReady(p);
+            } else if (p.isAlive() && !stopping) {
+                System.err.println("[NowPlayingMod] C# server did not become ready within "
+                        + policy.readyTimeoutMillis() + " ms. Restarting it.");
+                terminate(p);
+            }
+            return p.waitFor();
+        } catch (InterruptedException e) {
+            // stop() terminates the process
+            return -1;
+        } finally {
+            if (stopping && terminateOnStop) terminate(p);
+            process = null;
+        }
+    }
+
+    private boolean awaitReady(Process p) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.readyTimeoutMillis());
+        while (System.nanoTime() - deadline < 0) {
+            if (!p.isAlive() || stopping) return false;
+            if (readinessProbe.getAsBoolean()) return true;
+            Thread.sleep(PROBE_INTERVAL_MILLIS);
+        }
+        return false;
+    }
+
+    private long backoffMillis(int failures) {
+        int doublings = Math.min(failures - 1, 30);
+        long base = Math.min(policy.maxBackoffMillis(), policy.initialBackoffMillis() << doublings);
+        double spread = 1.0 + policy.jitter() * (ThreadLocalRandom.current().nextDouble() * 2.0 - 1.0);
+        return Math.max(0, Math.round(base * spread));
+    }
+
+    private void readOutput(Process p) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                listener.onOutputLine(line);
+            }
+        } catch (IOException e) {
+            if (!stopping) System.err.println("[NowPlayingMod] Error reading C# server output: " + e.getMessage());
+        } finally {
+            listener.onOutputClosed();
+        }
+    }
+
+    private static void terminate(Process p) {
+        if (p == null || !p.isAlive()) return;
+
+        p.destroy();
+        try {
+            if (!p.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) p.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example;
+
+/**
+ * Picks a panel background and a progress bar colour from album art: a colour histogram over a
+ * grid of sampled pixels, quantized to 3 bits per channel. The background is the most common
+ * colour, darkened until white text stays readable on it; the accent is the most common colourful
+ * one (saturation weighs in), lightened until it stands out from that background.
+ *
+ * Pure arithmetic over a {@link Pixels} source, so it runs on the artwork thread and without a game.
+ */
+final class CoverPalette {
+
+    /**
+     * Reads one pixel as ARGB (normally {@code NativeImage::getColorArgb}).
+     */
+    interface Pixels {
+        int argb(int x, int y);
+    }
+
+    private static final int SAMPLES_PER_SIDE = 48;
+    private static final int CHANNEL_BITS = 3;
+    private static final int BINS = 1 << (CHANNEL_BITS * 3);
+
+    // Mostly transparent pixels don't count towards the colours
+    private static final int MIN_ALPHA = 128;
+
+    // Perceived luminance bounds (0..1), so text stays readable and the bar visible
+    private static final double MAX_BACKGROUND_LUMINANCE = 0.16;
+    private static final double MIN_ACCENT_LUMINANCE = 0.5;
+    private static final double MIN_ACCENT_SATURATION = 0.25;
+
+    private CoverPalette() {}
+
+    /**
+     * @return the background colour in the upper and the accent in the lower 32 bits, both opaque
+     *         ARGB; 0 if the image has no opaque pixel
+     */
+    static long extract(int width, int height, Pixels pixels) {
+        if (width <= 0 || height <= 0) return 0L;
+
+        int[] counts = new int[BINS];
+        int[] sumR = new int[BINS];
+        int[] sumG = new int[BINS];
+        int[] sumB = new int[BINS];
+
+        int stepsX = Math.min(SAMPLES_PER_SIDE, width);
+        int stepsY = Math.min(SAMPLES_PER_SIDE, height);
+        for (int j = 0; j < stepsY; j++) {
+            int y = (int) ((j + 0.5) * height / stepsY);
+            for (int i = 0; i < stepsX; i++) {
+                int x = (int) ((i + 0.5) * width / stepsX);
+                int c = pixels.argb(x, y);
+                if ((c >>> 24) < MIN_ALPHA) continue;
+
+                int r = (c >> 16) & 0xFF;
+                int g = (c >> 8) & 0xFF;
+                int b = c & 0xFF;
+                int shift = 8 - CHANNEL_BITS;
+                int bin = (r >> shift) << (CHANNEL_BITS * 2) | (g >> shift) << CHANNEL_BITS | (b >> shift);
+                counts[bin]++;
+                sumR[bin] += r;
+                sumG[bin] += g;
+                sumB[bin] += b;
+            }
+        }
+
+        int dominant = -1;
+        int accent = -1;
+        double bestAccent = 0.0;
+        for (int bin = 0; bin < BINS; bin++) {
+            int n = counts[bin];
+            if (n == 0) continue;
+            if (dominant < 0 || n > counts[dominant]) dominant = bin;
+
+            double saturation = saturation(sumR[bin] / n, sumG[bin] / n, sumB[bin] / n);
+            double score = n * saturation;
+            if (saturation >= MIN_ACCENT_SATURATION && score > bestAccent) {
+                bestAccent = score;
+                accent = bin;
+            }
+        }
+        if (dominant < 0) return 0L;
+        if (accent < 0) accent = dominant;
+
+        int background = darken(mean(dominant, counts, sumR, sumG, sumB), MAX_BACKGROUND_LUMINANCE);
+        int bar = lighten(mean(accent, counts, sumR, sumG, sumB), MIN_ACCENT_LUMINANCE);
+        return ((long) background << 32) | (bar & 0xFFFFFFFFL);
+    }
+
+    static int background(long palette) {
+        return (int) (palette >>> 32);
+    }
+
+    static int accent(long palette) {
+        return (int) palette;
+    }
+
+    static double luminance(int rgb) {
+        return (0.2126 * ((rgb >> 16) & 0xFF) + 0.7152 * ((rgb >> 8) & 0xFF) + 0.0722 * (rgb & 0xFF)) / 255.0;
+    }
+
+    private static int mean(int bin, int[] counts, int[] sumR, int[] sumG, int[] sumB) {
+        int n = counts[bin];
+        return rgb(sumR[bin] / n, sumG[bin] / n, sumB[bin] / n);
+    }
+
+    private static double saturation(int r, int g, int b) {
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        return max == 0 ? 0.0 : (max - min) / (double) max;
+    }
+
+    /**
+     * Scales towards black until the luminance is at most {@code max}.
+     */
+    private static int darken(int rgb, double max) {
+        double luminance = luminance(rgb);
+        if (luminance <= max) return rgb;
+        double f = max / luminance;
+        return rgb((int) (((rgb >> 16) & 0xFF) * f), (int) (((rgb >> 8) & 0xFF) * f), (int) ((rgb & 0xFF) * f));
+    }
+
+    /**
+     * Mixes with white until the luminance is at least {@code min}.
+     */
+    private static int lighten(int rgb, double min) {
+        double luminance = luminance(rgb);
+        if (luminance >= min) return rgb;
+        double t = (min - luminance) / (1.0 - luminance);
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return rgb((int) Math.ceil(r + (255 - r) * t), (int) Math.ceil(g + (255 - g) * t), (int) Math.ceil(b + (255 - b) * t));
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.RenderPipelines;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.client.texture.TextureManager;
+import net.minecraft.util.Identifier;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Owns the GPU textures for the cover art.
+ *
+ * Two texture slots are kept (front and back): a new cover is written into the back slot and the
+ * slots are swapped, so the old cover can be crossfaded out without a hitch. When the back slot
+ * already has the right dimensions its pixels are overwritten and re-uploaded instead of
+ * destroying and registering a new texture.
+ *
+ * Uploads may be submitted from any thread and are coalesced: if several arrive before the client
+ * thread gets to them, only the newest is uploaded. Main-thread work is only posted when something
+ * actually changes, so clearing an already empty cover costs nothing.
+ */
+final class CoverTextureManager {
+
+    private static final long CROSSFADE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final Identifier[] SLOT_IDS = {
+            Identifier.of("nowplaying", "media_0"),
+            Identifier.of("nowplaying", "media_1")
+    };
+
+    private static final class PendingUpload {
+        final NativeImage image;
+        final BooleanSupplier stillWanted;
+        final Runnable onShown;
+
+        PendingUpload(NativeImage image, BooleanSupplier stillWanted, Runnable onShown) {
+            this.image = image;
+            this.stillWanted = stillWanted;
+            this.onShown = onShown;
+        }
+    }
+
+    private final AtomicReference<PendingUpload> pending = new AtomicReference<>();
+
+    // True from the moment a cover is shown until a clear is posted; lets clear() skip no-op tasks
+    private final AtomicBoolean shown = new AtomicBoolean(false);
+
+    // --- Client thread only ---
+    private final NativeImageBackedTexture[] slots = new NativeImageBackedTexture[2];
+    private final int[] slotWidth = new int[2];
+    private final int[] slotHeight = new int[2];
+    private int front = -1;
+    private int previous = -1;
+    private long swapNanos;
+
+    /**
+     * Any thread. Queues {@code image} (ownership passes to the manager) for upload.
+     *
+     * @param stillWanted checked on the client thread right before uploading
+     * @param onShown     run on the client thread once the image is the front texture
+     */
+    void submit(NativeImage image, BooleanSupplier stillWanted, Runnable onShown) {
+        PendingUpload superseded = pending.getAndSet(new PendingUpload(image, stillWanted, onShown));
+        if (superseded != null) {
+            // A drain is already queued and will pick up the newer image
+            superseded.image.close();
+            return;
+        }
+        NowPlayingMetrics.MAIN_THREAD_TASKS.increment();
+        MinecraftClient.getInstance().execute(this::drain);
+    }
+
+    /**
+     * Any thread. Drops the cover; posts to the client thread only if one is shown or pending.
+     */
+    void clear() {
+        PendingUpload dropped = pending.getAndSet(null);
+        if (dropped != null) dropped.image.close();
+
+        if (!shown.getAndSet(false)) return;
+        NowPlayingMetrics.MAIN_THREAD_TASKS.increment();
+        MinecraftClient.getInstance().execute(this::destroyAll);
+    }
+
+    // -------------------------
+    // Client thread
+    // -------------------------
+
+    /**
+     * Draws the cover center-cropped into a {@code size} square, crossfading from the previous one.
+     *
+     * @return the number of quads drawn
+     */
+    int draw(DrawContext drawContext, int x, int y, int size) {
+        if (front < 0) return 0;
+
+        long sinceSwap = System.nanoTime() - swapNanos;
+        if (previous >= 0 && sinceSwap < CROSSFADE_NANOS) {
+            // The old cover stays opaque underneath; fading both would let the panel show through mid-fade
+            float t = sinceSwap / (float) CROSSFADE_NANOS;
+            return drawSlot(drawContext, previous, x, y, size, 1.0f)
+                    + drawSlot(drawContext, front, x, y, size, t);
+        }
+        return drawSlot(drawContext, front, x, y, size, 1.0f);
+    }
+
+    private int drawSlot(DrawContext drawContext, int slot, int x, int y, int size, float alpha) {
+        int w = slotWidth[slot];
+        int h = slotHeight[slot];
+        if (w <= 0 || h <= 0) return 0;
+
+        int srcSize = Math.min(w, h);
+        int srcU = (w - srcSize) / 2;
+        int srcV = (h - srcSize) / 2;
+        int color = ((int) (alpha * 255.0f) << 24) | 0x00FFFFFF;
+
+        drawContext.drawTexture(
+                RenderPipelines.GUI_TEXTURED,
+                SLOT_IDS[slot],
+                x, y,
+                srcU, srcV,
+                size, size,
+                srcSize, srcSize,
+                w, h,
+                color
+        );
+        return 1;
+    }
+
+    private void drain() {
+        PendingUpload upload = pending.getAndSet(null);
+        if (upload == null) return;
+
+        NativeImage image = upload.image;
+        if (!upload.stillWanted.getAsBoolean()) {
+            image.close();
+            return;
+        }
+
+        int target = front < 0 ? 0 : 1 - front;
+        int w = image.getWidth();
+        int h = image.getHeight();
+
+        long uploadStart = System.nanoTime();
+        try {
+            NativeImageBackedTexture texture = slots[target];
+            NativeImage existing = texture != null ? texture.getImage() : null;
+
+            if (existing != null && existing.getWidth() == w && existing.getHeight() == h) {
+                // Same size: overwrite the pixels and re-upload into the existing GPU texture
+                existing.copyFrom(image);
+                image.close();
+                texture.upload();
+            } else {
+                TextureManager textureManager = MinecraftClient.getInstance().getTextureManager();
+                if (texture != null) textureManager.destroyTexture(SLOT_IDS[target]);
+
+                texture = new NativeImageBackedTexture(() -> "nowplaying_media_" + target, image);
+                textureManager.registerTexture(SLOT_IDS[target], texture);
+                slots[target] = texture;
+            }
+        } catch (Exception ex) {
+            System.err.println("[NowPlayingMod] Failed to upload cover texture: " + ex.getMessage());
+
+            // Make sure we free the NativeImage if registration failed
+            try { image.close(); } catch (Exception ignored) {}
+            if (slots[target] != null) {
+                // Don't leave the half-updated texture registered with nothing pointing at it
+                MinecraftClient.getInstance().getTextureManager().destroyTexture(SLOT_IDS[target]);
+                slots[target] = null;
+            }
+            slotWidth[target] = 0;
+            slotHeight[target] = 0;
+            if (previous == target) previous = -1;
+            return;
+        }
+        NowPlayingMetrics.TEXTURE_UPLOAD.recordSince(uploadStart);
+
+        slotWidth[target] = w;
+        slotHeight[target] = h;
+        previous = front;
+        front = target;
+        swapNanos = System.nanoTime();
+        shown.set(true);
+
+        upload.onShown.run();
+    }
+
+    private void destroyAll() {
+        // A newer cover may have been shown between clear() and this task running
+        if (shown.get()) return;
+
+        TextureManager textureManager = MinecraftClient.getInstance().getTextureManager();
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                textureManager.destroyTexture(SLOT_IDS[i]);
+                slots[i] = null;
+            }
+            slotWidth[i] = 0;
+            slotHeight[i] = 0;
+        }
+        front = -1;
+        previous = -1;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example;
+
+import java.text.BreakIterator;
+import java.util.Arrays;
+
+/**
+ * One line of HUD text measured for fitting into a pixel width: the advance of every grapheme
+ * (user-perceived character: a surrogate pair, or a base with its combining marks) summed up once
+ * per text change, so cutting it with an ellipsis is a binary search and a marquee frame is
+ * arithmetic. Cuts only ever fall between graphemes.
+ *
+ * Render thread only; instances are reused across texts.
+ */
+final class FittedText {
+
+    static final String ELLIPSIS = "...";
+
+    // Marquee: pause at the start of every lap, scroll at a steady speed, then repeat after a gap
+    static final int MARQUEE_GAP = 24;
+    private static final int MARQUEE_PIXELS_PER_SEC = 30;
+    private static final long MARQUEE_PAUSE_NANOS = 2_000_000_000L;
+
+    private String text;
+
+    // Grapheme i ends at char ends[i], and text up to there is prefixWidths[i] pixels wide
+    private int[] ends = new int[16];
+    private float[] prefixWidths = new float[16];
+    private int count;
+    private int width;
+
+    // Result of the last fit
+    private String shown = "";
+    private boolean overflows;
+
+    /**
+     * Measures {@code text} unless it is the text measured last time.
+     */
+    void measure(String text, HudLayout.TextMeasurer measurer) {
+        if (text.equals(this.text)) return;
+        this.text = text;
+
+        BreakIterator graphemes = BreakIterator.getCharacterInstance();
+        graphemes.setText(text);
+
+        count = 0;
+        float total = 0f;
+        int start = graphemes.first();
+        for (int end = graphemes.next(); end != BreakIterator.DONE; start = end, end = graphemes.next()) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+                prefixWidths = Arrays.copyOf(prefixWidths, count * 2);
+            }
+            total += measurer.advance(text.substring(start, end));
+            ends[count] = end;
+            prefixWidths[count] = total;
+            count++;
+        }
+        width = (int) Math.ceil(total);
+    }
+
+    /**
+     * The measured text, in full.
+     */
+    String text() {
+        return text;
+    }
+
+    /**
+     * Full width of the measured text.
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Fits the measured text into {@code maxWidth}: as is if it fits, else the longest grapheme
+     * prefix that leaves room for the ellipsis. The result is {@link #shown()}.
+     *
+     * @return the width the result takes up
+     */
+    int fit(int maxWidth, HudLayout.TextMeasurer measurer) {
+        overflows = width > maxWidth;
+        if (!overflows) {
+            shown = text;
+            return width;
+        }
+
+        int ellipsisWidth = measurer.width(ELLIPSIS);
+        int keep = fittingGraphemes(maxWidth - ellipsisWidth);
+        String prefix = keep == 0 ? "" : text.substring(0, ends[keep - 1]).stripTrailing();
+        shown = prefix + ELLIPSIS;
+        return Math.min(maxWidth, measurer.width(shown));
+    }
+
+    /**
+     * Number of leading graphemes whose width fits into {@code maxWidth}.
+     */
+    private int fittingGraphemes(int maxWidth) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (prefixWidths[mid - 1] <= maxWidth) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The text as it fits (possibly ellipsized); the same instance until the text or width changes.
+     */
+    String shown() {
+        return shown;
+    }
+
+    /**
+     * Whether the text didn't fit the last width it was fitted into.
+     */
+    boolean overflows() {
+        return overflows;
+    }
+
+    /**
+     * How far the marquee has scrolled the text left, {@code elapsedNanos} after the text appeared.
+     * A lap is {@link #width()} plus {@link #MARQUEE_GAP}, where the next copy of the text starts.
+     */
+    int marqueeOffset(long elapsedNanos) {
+        int lap = width + MARQUEE_GAP;
+        long scrollNanos = lap * 1_000_000_000L / MARQUEE_PIXELS_PER_SEC;
+        long phase = Math.max(0L, elapsedNanos) % (MARQUEE_PAUSE_NANOS + scrollNanos);
+        if (phase < MARQUEE_PAUSE_NANOS) return 0;
+        return (int) ((phase - MARQUEE_PAUSE_NANOS) * MARQUEE_PIXELS_PER_SEC / 1_000_000_000L);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example;
+
+/**
+ * Panel geometry for the HUD, computed once per text/cover/play state, config or window change and
+ * reused every frame.
+ *
+ * Pure arithmetic plus a {@link TextMeasurer}, so it has no dependency on a running game.
+ * The fields are the cached result; they are only valid after {@link #update} returned.
+ */
+final class HudLayout {
+
+    /**
+     * Measures rendered text width in GUI pixels (normally {@code TextRenderer::getWidth}).
+     */
+    interface TextMeasurer {
+        int width(String text);
+
+        /**
+         * Unrounded advance of {@code text}, so summing the advances of its parts adds up to its
+         * width (normally {@code TextHandler::getWidth}).
+         */
+        default float advance(String text) {
+            return width(text);
+        }
+    }
+
+    // Layout constants
+    static final int TEXT_PADDING = 6;
+    static final int LINE_HEIGHT = 10;
+
+    static final int BASE_COVER_SIZE = 32;
+    static final int MAX_COVER_SIZE = 64;
+
+    static final int BAR_HEIGHT = 2;
+    static final int BAR_PADDING = 2;
+    static final int IMAGE_TEXT_SPACING = 10;
+    static final int TIMELINE_GAP = 4;
+    static final int MIN_TIMELINE_WIDTH = 80;
+    static final int MIN_PANEL_WIDTH = 100;
+    static final int ICON_BAR_SPACING = 6;
+
+    static final String ICON_PLAYING = "❚❚";
+    static final String ICON_PAUSED = "▶";
+
+    // --- Cache key ---
+    private Snapshot keySnapshot;
+    private int keyConfigVersion = -1;
+    private int keyScreenWidth = -1;
+    private int keyScreenHeight = -1;
+
+    // --- Result ---
+    boolean drawPanel;
+    boolean drawCover;
+    boolean drawTitle;
+    boolean drawArtist;
+    boolean drawTimeline;
+    boolean drawIcon;
+
+    int backgroundColor;
+
+    int panelX;
+    int panelY;
+    int panelWidth;
+    int panelHeight;
+
+    int coverX;
+    int coverY;
+    int coverSize;
+
+    int textX;
+    int titleY;
+    int artistY;
+
+    // Title and artist as fitted into the panel; scrolled ones are clipped to textWidth
+    final FittedText title = new FittedText();
+    final FittedText artist = new FittedText();
+    boolean scrollTitle;
+    boolean scrollArtist;
+    int textWidth;
+
+    String icon = ICON_PAUSED;
+    int iconY;
+
+    int barX;
+    int barY;
+    int barWidth;
+    int timeY;
+
+    /**
+     * Recomputes the layout if any input changed since the last call.
+     *
+     * @param configVersion bumped whenever the config is saved, since the config object is mutated in place
+     * @return whether the layout was recomputed
+     */
+    boolean update(Snapshot s, NowPlayingConfig config, int configVersion,
+                   int screenWidth, int screenHeight, int fontHeight, TextMeasurer measurer) {
+        if (configVersion == keyConfigVersion
+                && screenWidth == keyScreenWidth
+                && screenHeight == keyScreenHeight
+                && (s == keySnapshot || sameGeometryInputs(s, keySnapshot))) {
+            keySnapshot = s;
+            return false;
+        }
+
+        compute(s, config, screenWidth, screenHeight, fontHeight, measurer);
+
+        keySnapshot = s;
+        keyConfigVersion = configVersion;
+        keyScreenWidth = screenWidth;
+        keyScreenHeight = screenHeight;
+        return true;
+    }
+
+    /**
+     * Whether the config leaves anything to draw at all.
+     */
+    static boolean anyElementEnabled(NowPlayingConfig config) {
+        return config.showArtistName
+                || config.showTimeline
+                || config.showCoverArt
+                || config.showMediaTitle
+                || config.showPlayStatusIcon;
+    }
+
+    /**
+     * Measures and fits one line of text.
+     *
+     * @param scroll whether text that doesn't fit scrolls, taking up all of {@code maxWidth}
+     * @return the width it takes up
+     */
+    private static int fit(FittedText line, String text, int maxWidth, boolean scroll, TextMeasurer measurer) {
+        line.measure(text != null ? text : "", measurer);
+        int width = line.fit(maxWidth, measurer);
+        return scroll && line.overflows() ? maxWidth : width;
+    }
+
+    /**
+     * Whether two snapshots lay out the same, going by the versions their store stamped: a new
+     * position anchor alone moves nothing. Unstamped snapshots are only the same as themselves.
+     */
+    private static boolean sameGeometryInputs(Snapshot s, Snapshot key) {
+        return key != null
+                && s.version != 0L
+                && key.version != 0L
+                && s.textVersion == key.textVersion
+                && s.artworkVersion == key.artworkVersion
+                && s.isPlaying == key.isPlaying
+                && (s.targetEndSec > 0) == (key.targetEndSec > 0);
+    }
+
+    /**
+     * Forces the next {@link #update} to recompute.
+     */
+    void invalidate() {
+        keySnapshot = null;
+    }
+
+    private void compute(Snapshot s, NowPlayingConfig config,
+                         int screenWidth, int screenHeight, int fontHeight, TextMeasurer measurer) {
+        boolean showCover = s.imageLoaded && config.showCoverArt;
+
+        int textBlockHeight = 0;
+        if (config.showMediaTitle) textBlockHeight += LINE_HEIGHT;
+        if (config.showArtistName) textBlockHeight += LINE_HEIGHT;
+
+        int contentHeight = textBlockHeight;
+
+        if (config.showTimeline) {
+            if (textBlockHeight > 0) contentHeight += TIMELINE_GAP;
+            contentHeight += BAR_HEIGHT + BAR_PADDING + LINE_HEIGHT;
+        }
+
+        int cover = showCover ? Math.max(BASE_COVER_SIZE, contentHeight) : 0;
+        cover = Math.min(cover, MAX_COVER_SIZE);
+
+        // Text gets whatever the widest panel leaves next to the cover
+        int maxTextWidth = config.maxPanelWidth - TEXT_PADDING * 2;
+        if (showCover) maxTextWidth -= cover + IMAGE_TEXT_SPACING;
+        maxTextWidth = Math.max(MIN_TIMELINE_WIDTH, maxTextWidth);
+
+        int mediaTitleWidth = config.showMediaTitle ? fit(title, s.title, maxTextWidth, config.scrollLongText, measurer) : 0;
+        int artistNameWidth = config.showArtistName ? fit(artist, s.artist, maxTextWidth, config.scrollLongText, measurer) : 0;
+
+        int unifiedContentHeight = Math.max(contentHeight, cover);
+        int height = unifiedContentHeight + (TEXT_PADDING * 2);
+
+        int textBlockWidth = 0;
+        if (config.showMediaTitle) textBlockWidth = Math.max(textBlockWidth, mediaTitleWidth);
+        if (config.showArtistName) textBlockWidth = Math.max(textBlockWidth, artistNameWidth);
+        if (config.showTimeline && textBlockWidth < MIN_TIMELINE_WIDTH) textBlockWidth = MIN_TIMELINE_WIDTH;
+
+        int width = 0;
+        if (textBlockWidth > 0) width = textBlockWidth;
+
+        if (showCover) {
+            width += cover;
+            if (textBlockWidth > 0) width += IMAGE_TEXT_SPACING;
+        }
+        width += (TEXT_PADDING * 2);
+
+        if (width < MIN_PANEL_WIDTH && !(showCover && textBlockWidth == 0)) {
+            width = MIN_PANEL_WIDTH;
+        } else if (textBlockWidth == 0 && showCover) {
+            width = cover + (TEXT_PADDING * 2);
+        }
+
+        panelWidth = width;
+        panelHeight = height;
+        panelX = (config.sidePosition == NowPlayingConfig.Side.LEFT) ? 0 : screenWidth - width;
+        panelY = (int) ((screenHeight - height) * (config.yPosition / 100.0));
+
+        drawPanel = anyElementEnabled(config);
+        backgroundColor = ((int) (config.backgroundOpacity * 2.55) << 24) | 0x000000;
+
+        int contentStartY = panelY + (height - unifiedContentHeight) / 2;
+
+        drawCover = showCover;
+        coverSize = cover;
+        coverX = panelX + TEXT_PADDING;
+        coverY = contentStartY;
+
+        textX = panelX + TEXT_PADDING;
+        if (showCover) textX += cover + IMAGE_TEXT_SPACING;
+
+        // Text
+        int currentY = contentStartY;
+
+        textWidth = textBlockWidth;
+
+        drawTitle = config.showMediaTitle;
+        scrollTitle = drawTitle && config.scrollLongText && title.overflows();
+        titleY = currentY;
+        if (drawTitle) currentY += LINE_HEIGHT;
+
+        drawArtist = config.showArtistName;
+        scrollArtist = drawArtist && config.scrollLongText && artist.overflows();
+        artistY = currentY;
+        if (drawArtist) currentY += LINE_HEIGHT;
+
+        // Timeline
+        drawTimeline = config.showTimeline && s.targetEndSec > 0;
+        if (config.showMediaTitle || config.showArtistName) currentY += TIMELINE_GAP;
+
+        barY = currentY;
+        barX = textX;
+
+        drawIcon = config.showPlayStatusIcon;
+        icon = s.isPlaying ? ICON_PLAYING : ICON_PAUSED;
+        iconY = barY - (fontHeight / 2) + (BAR_HEIGHT / 2);
+        if (drawIcon) barX += measurer.width(icon) + ICON_BAR_SPACING;
+
+        barWidth = (panelX + width - TEXT_PADDING) - barX;
+        timeY = barY + BAR_HEIGHT + BAR_PADDING;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example;
+
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+import net.minecraft.text.OrderedText;
+import net.minecraft.text.StringVisitable;
+import net.minecraft.util.Language;
+
+/**
+ * Draws the panel from a {@link HudLayout} in two layers. The static layer (background, cover,
+ * title, artist and play icon) only changes with the layout, so its text is prepared into
+ * {@link OrderedText} (bidi reordering included) once per layout instead of on every frame; the
+ * timeline is the only part prepared per frame, and its timestamps only when their second changes.
+ *
+ * Since 1.21.6 the {@link DrawContext} only records GUI elements that the game batches into draw
+ * calls after the HUD callbacks, so the static layer is still submitted every frame; what it saves
+ * is the preparation (see {@code HudPanelBenchmark}). {@link #elements()} counts what a frame
+ * submitted, for the metrics.
+ *
+ * Render thread only.
+ */
+final class HudPanelRenderer {
+
+    // Static layer, as of the last layout
+    private OrderedText title;
+    private OrderedText artist;
+    private OrderedText icon;
+
+    // Timeline; TimestampFormatter hands out the same String for the same second
+    private String positionString;
+    private OrderedText position;
+    private String endString;
+    private OrderedText end;
+    private int endWidth;
+
+    private int elements;
+
+    /**
+     * @param layoutChanged whether {@link HudLayout#update} recomputed the layout for this frame
+     * @param coverBackground panel colour from the cover (its alpha is the configured opacity), 0 for the default
+     * @param coverAccent progress bar colour from the cover, 0 for the default
+     * @param marqueeElapsedNanos time since the current text appeared, for scrolling lines
+     */
+    void draw(DrawContext drawContext, TextRenderer textRenderer, HudLayout layout, boolean layoutChanged,
+              CoverTextureManager covers, int coverBackground, int coverAccent, double progress, double positionSec, double endSec, long marqueeElapsedNanos) {
+        if (layoutChanged || title == null) prepareStaticLayer(layout);
+        elements = 0;
+
+        // --- Static layer ---
+        if (layout.drawPanel) {
+            int background = coverBackground != 0
+                    ? (layout.backgroundColor & 0xFF000000) | (coverBackground & 0x00FFFFFF)
+                    : layout.backgroundColor;
+            drawContext.fill(layout.panelX, layout.panelY, layout.panelX + layout.panelWidth, layout.panelY + layout.panelHeight, background);
+            elements++;
+        }
+
+        // Cover art (center-cropped, crossfaded on change)
+        if (layout.drawCover) {
+            elements += covers.draw(drawContext, layout.coverX, layout.coverY, layout.coverSize);
+        }
+
+        if (layout.drawTitle) {
+            drawLine(drawContext, textRenderer, title, layout.title, layout.scrollTitle,
+                    layout.textX, layout.titleY, layout.textWidth, 0xFFFFFFFF, marqueeElapsedNanos);
+        }
+        if (layout.drawArtist) {
+            drawLine(drawContext, textRenderer, artist, layout.artist, layout.scrollArtist,
+                    layout.textX, layout.artistY, layout.textWidth, 0xFFAAAAAA, marqueeElapsedNanos);
+        }
+
+        // --- Timeline ---
+        if (!layout.drawTimeline) return;
+
+        if (layout.drawIcon) {
+            drawContext.drawTextWithShadow(textRenderer, icon, layout.textX, layout.iconY, 0xFFFFFFFF);
+            elements++;
+        }
+
+        int barX = layout.barX;
+        int barY = layout.barY;
+        int barWidth = layout.barWidth;
+
+        drawContext.fill(barX, barY, barX + barWidth, barY + HudLayout.BAR_HEIGHT, 0xFF222222);
+        drawContext.fill(barX, barY, barX + (int) (barWidth * progress), barY + HudLayout.BAR_HEIGHT,
+                coverAccent != 0 ? coverAccent : 0xFFD3D3D3);
+        elements += 2;
+
+        // Cached per whole second, so these are the same instances frame to frame
+        String currentPosString = TimestampFormatter.format(positionSec);
+        String endPosString = TimestampFormatter.format(endSec);
+        if (currentPosString != positionString) {
+            positionString = currentPosString;
+            position = prepare(currentPosString);
+        }
+        if (endPosString != endString) {
+            endString = endPosString;
+            end = prepare(endPosString);
+            endWidth = textRenderer.getWidth(end);
+        }
+
+        drawContext.drawTextWithShadow(textRenderer, position, barX, layout.timeY, 0xFFAAAAAA);
+        drawContext.drawTextWithShadow(textRenderer, end, barX + barWidth - endWidth, layout.timeY, 0xFFAAAAAA);
+        elements += 2;
+    }
+
+    /**
+     * GUI elements the last frame submitted.
+     */
+    int elements() {
+        return elements;
+    }
+
+    private void prepareStaticLayer(HudLayout layout) {
+        // A scrolling line draws the whole text, a fitted one what fits
+        title = prepare(layout.scrollTitle ? layout.title.text() : layout.title.shown());
+        artist = prepare(layout.scrollArtist ? layout.artist.text() : layout.artist.shown());
+        icon = prepare(layout.icon);
+    }
+
+    static OrderedText prepare(String text) {
+        return Language.getInstance().reorder(StringVisitable.plain(text != null ? text : ""));
+    }
+
+    /**
+     * Draws a fitted line, or scrolls the full text through {@code clipWidth} pixels followed by
+     * its next lap; nothing is measured or allocated per frame.
+     */
+    private void drawLine(DrawContext drawContext, TextRenderer textRenderer, OrderedText text, FittedText line, boolean scroll,
+                          int x, int y, int clipWidth, int color, long elapsedNanos) {
+        if (!scroll) {
+            drawContext.drawTextWithShadow(textRenderer, text, x, y, color);
+            elements++;
+            return;
+        }
+
+        int offset = line.marqueeOffset(elapsedNanos);
+        drawContext.enableScissor(x, y - 1, x + clipWidth, y + textRenderer.fontHeight + 1);
+        drawContext.drawTextWithShadow(textRenderer, text, x - offset, y, color);
+        elements++;
+        if (offset > 0) {
+            drawContext.drawTextWithShadow(textRenderer, text, x - offset + line.width() + FittedText.MARQUEE_GAP, y, color);
+            elements++;
+        }
+        drawContext.disableScissor();
+    }
+}
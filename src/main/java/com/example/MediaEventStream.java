@@ -0,0 +1,174 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Long-lived Server-Sent Events subscription to the companion's {@code /media_events} endpoint.
+ *
+ * The companion pushes one {@code data:} event whenever the media state changes (and once right
+ * after connecting), so the client no longer has to poll {@code /media_info} every second.
+ * Lost connections are retried automatically with a capped backoff; while disconnected,
+ * {@link #isConnected()} returns false and the caller should fall back to polling.
+ *
+ * Events are handed over as JSON rather than decoded here, since a sessions subscription carries a
+ * whole sessions document per event (see {@link MediaInfoReader#readSessions}). After the first,
+ * those are patches against the previous one, so an event the handler can't apply ends the
+ * subscription; the next one starts over with a full document.
+ */
+final class MediaEventStream implements MediaStateStream {
+
+    interface Handler {
+        /**
+         * @throws IOException if the event is malformed or doesn't apply; the stream then resubscribes
+         */
+        void onEvent(Reader json, long receivedNanos) throws IOException;
+    }
+
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+
+    // The companion sends a ": ping" comment every few seconds; anything longer means the link is dead.
+    private static final int READ_TIMEOUT_MS = 30_000;
+
+    private static final long MIN_RECONNECT_DELAY_MS = 500;
+    private static final long MAX_RECONNECT_DELAY_MS = TimeUnit.SECONDS.toMillis(10);
+
+    // Asked on every reconnect; the companion's port can change when it is restarted
+    private final Supplier<String> url;
+    private final Handler handler;
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile HttpURLConnection activeConnection;
+    private Thread thread;
+
+    MediaEventStream(Supplier<String> url, Handler handler) {
+        this.url = url;
+        this.handler = handler;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        thread = new Thread(this::runLoop, "NowPlaying-Events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        connected = false;
+
+        // Closing the socket is the only reliable way to unblock readLine()
+        HttpURLConnection conn = activeConnection;
+        if (conn != null) conn.disconnect();
+
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void runLoop() {
+        long delayMs = MIN_RECONNECT_DELAY_MS;
+
+        while (running) {
+            try {
+                if (readStream()) {
+                    // We got at least one event, so the next failure starts with a short delay again
+                    delayMs = MIN_RECONNECT_DELAY_MS;
+                }
+            } catch (Exception e) {
+                // Only report lost subscriptions; failed reconnect attempts would just spam the log
+                if (running && connected) {
+                    System.err.println("[NowPlayingMod] Event stream disconnected: " + e.getMessage());
+                }
+            } finally {
+                connected = false;
+            }
+
+            if (!running) break;
+
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            delayMs = Math.min(delayMs * 2, MAX_RECONNECT_DELAY_MS);
+        }
+    }
+
+    /**
+     * Opens one subscription and dispatches events until it ends.
+     *
+     * @return whether any event was received on this connection
+     */
+    private boolean readStream() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url.get()).openConnection();
+        activeConnection = conn;
+        boolean receivedAny = false;
+
+        try {
+            conn.setRequestMethod("GET");
+            conn.setRequestProperty("Accept", "text/event-stream");
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+
+            // Older companions don't know this endpoint; stay in polling mode and retry later.
+            if (conn.getResponseCode() != 200) return false;
+
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+                StringBuilder data = new StringBuilder();
+                String line;
+
+                while (running && (line = in.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        // Blank line terminates an event
+                        if (data.length() > 0) {
+                            dispatch(data.toString());
+                            data.setLength(0);
+                            receivedAny = true;
+                            connected = true;
+                        }
+                    } else if (line.startsWith("data:")) {
+                        if (data.length() > 0) data.append('\n');
+                        data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+                    }
+                    // Comments (": ping") and other fields (event:, id:, retry:) are ignored
+                }
+            }
+        } finally {
+            activeConnection = null;
+            conn.disconnect();
+        }
+
+        return receivedAny;
+    }
+
+    private void dispatch(String json) throws IOException {
+        // Characters, which is bytes for everything but non-ASCII titles
+        NowPlayingMetrics.BYTES_FETCHED.add(json.length());
+        try {
+            handler.onEvent(new StringReader(json), System.nanoTime());
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Media event could not be applied (" + e.getMessage() + "), resubscribing", e);
+        }
+    }
+}
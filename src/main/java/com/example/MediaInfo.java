@@ -0,0 +1,120 @@
+package com.example;
+
+import java.util.Objects;
+
+/**
+ * Companion media state (see {@code /media_info} and {@code /media_events}).
+ *
+ * A mutable holder: each reader thread keeps one and {@link MediaInfoReader} refills it in place.
+ * Timeline fields are always milliseconds; protocol v1 strings are converted while decoding.
+ * v2 companions also anchor the position in time, so it can be extrapolated between updates.
+ */
+final class MediaInfo {
+    // 1 for companions that only send hh:mm:ss.fff strings, 2 for numeric timelines
+    int version;
+
+    String title;
+    String artist;
+    String app;
+    String status;
+
+    long positionMs;
+    long startMs;
+    long endMs;
+
+    // 1.0 is normal speed; v1 companions never report it
+    double playbackRate;
+
+    // Companion wall clock (epoch ms) at which positionMs was captured, and at which this was sent; 0 on v1
+    long anchorMs;
+    long nowMs;
+
+    // Local System.nanoTime() around the exchange, filled in by the transport (equal for pushed state)
+    long requestNanos;
+    long receivedNanos;
+
+    // Hash of the current artwork, also sent as the ETag of /media_image (null on older companions)
+    String imageHash;
+
+    // Sequence number of the companion document this came from (0 if it sends none); the client
+    // sends it back as ?since= to get only what changed
+    long seq;
+
+    // Companion sequence number in which this session's state, and its title, artist or app, last
+    // changed (0 on companions that don't number sessions)
+    long stateSeq;
+    long textSeq;
+
+    // Changes whenever title, artist or app change, so that needs no string comparison; 0 where
+    // nobody tracks it (the socket and stdio frames)
+    long textVersion;
+
+    void reset() {
+        version = 1;
+        title = null;
+        artist = null;
+        app = null;
+        status = null;
+        positionMs = 0L;
+        startMs = 0L;
+        endMs = 0L;
+        playbackRate = 1.0;
+        anchorMs = 0L;
+        nowMs = 0L;
+        requestNanos = 0L;
+        receivedNanos = 0L;
+        imageHash = null;
+        seq = 0L;
+        stateSeq = 0L;
+        textSeq = 0L;
+        textVersion = 0L;
+    }
+
+    void copyFrom(MediaInfo other) {
+        version = other.version;
+        title = other.title;
+        artist = other.artist;
+        app = other.app;
+        status = other.status;
+        positionMs = other.positionMs;
+        startMs = other.startMs;
+        endMs = other.endMs;
+        playbackRate = other.playbackRate;
+        anchorMs = other.anchorMs;
+        nowMs = other.nowMs;
+        requestNanos = other.requestNanos;
+        receivedNanos = other.receivedNanos;
+        imageHash = other.imageHash;
+        seq = other.seq;
+        stateSeq = other.stateSeq;
+        textSeq = other.textSeq;
+        textVersion = other.textVersion;
+    }
+
+    /**
+     * Same media state, ignoring when and in which document it was sent and received. Numbered
+     * sessions compare their state numbers; only unnumbered ones compare the fields.
+     */
+    boolean sameStateAs(MediaInfo other) {
+        if (stateSeq != 0L && other.stateSeq != 0L) return stateSeq == other.stateSeq;
+        return sameTextAs(other)
+                && version == other.version
+                && positionMs == other.positionMs
+                && startMs == other.startMs
+                && endMs == other.endMs
+                && playbackRate == other.playbackRate
+                && anchorMs == other.anchorMs
+                && Objects.equals(status, other.status)
+                && Objects.equals(imageHash, other.imageHash);
+    }
+
+    /**
+     * Same title, artist and app; by number where both sides have one.
+     */
+    boolean sameTextAs(MediaInfo other) {
+        if (textSeq != 0L && other.textSeq != 0L) return textSeq == other.textSeq;
+        return Objects.equals(title, other.title)
+                && Objects.equals(artist, other.artist)
+                && Objects.equals(app, other.app);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams a media state object into a reusable {@link MediaInfo}, without a DOM or reflection.
+ *
+ * Understands both protocol versions: v2 numeric fields ({@code positionMs}, {@code startMs},
+ * {@code endMs}, {@code playbackRate}, {@code anchorMs}, {@code nowMs}) and the v1 {@code position}/{@code start}/{@code end}
+ * strings. If a companion sends both, the numeric value wins. Unknown fields are skipped.
+ *
+ * With {@code sessions=1} the companion answers with every media session at once instead
+ * ({@link #readSessions}). Each document has a sequence number; sent back as {@code since}, the
+ * companion answers with what changed since then, or a full document if it no longer knows:
+ * <pre>
+ * full       { "version": 2, "seq": 7, "nowMs": ..., "current": "&lt;id&gt;", "sessions": [ { "id": "&lt;id&gt;", ...state }, ... ] }
+ * unchanged  { "version": 2, "seq": 7, "nowMs": ..., "unchanged": true }
+ * patch      { "version": 2, "seq": 9, "base": 7, "nowMs": ..., "current": "&lt;id&gt;",
+ *              "patch": [ { "id": "&lt;id&gt;", ...changed fields }, { "id": "&lt;id&gt;", "removed": true }, ... ] }
+ * </pre>
+ * A patch entry starts with the id and lists only the fields that changed, null for cleared ones;
+ * for a new session that is all of them. Each session also carries {@code stateSeq} and
+ * {@code textSeq}, the sequence numbers in which its state and its text last changed, so a full
+ * document is diffed by number instead of field by field.
+ */
+final class MediaInfoReader {
+
+    private MediaInfoReader() {}
+
+    /**
+     * Takes over fields the state reader doesn't know.
+     */
+    private interface ExtraField {
+        /**
+         * @return whether the value was consumed
+         */
+        boolean read(String name, JsonReader json) throws IOException;
+    }
+
+    // Per-thread state of readSessions, so a poll allocates no holders
+    private static final class SessionsScratch {
+        final MediaInfo session = new MediaInfo();
+        String id;
+        String current;
+        long base;
+        boolean batched;
+        boolean patched;
+        boolean unchanged;
+        boolean removed;
+
+        boolean readId(String name, JsonReader json) throws IOException {
+            if (!name.equals("id")) return false;
+            id = json.nextString();
+            return true;
+        }
+
+        boolean readRemoved(String name, JsonReader json) throws IOException {
+            if (!name.equals("removed")) return false;
+            removed = json.nextBoolean();
+            return true;
+        }
+    }
+
+    private static final ThreadLocal<SessionsScratch> SCRATCH = ThreadLocal.withInitial(SessionsScratch::new);
+
+    /**
+     * Resets {@code into} and fills it from one JSON object.
+     *
+     * @throws IOException on malformed JSON; {@code into} is then partially filled
+     */
+    static void read(Reader in, MediaInfo into) throws IOException {
+        readObject(new JsonReader(in), into, null);
+    }
+
+    /**
+     * Reads a sessions document into {@code table}: copies only sessions whose state changed, or
+     * applies a patch to the fields it names. A single state object (from a companion without
+     * sessions support) becomes one session with an empty id. Top-level fields such as
+     * {@code nowMs} and {@code seq} end up in {@code document}.
+     *
+     * @throws IOException on malformed JSON, or a patch or "unchanged" against another sequence
+     *         number than the table's; sessions read up to there are updated, none are removed, and
+     *         the table asks for a full document next
+     */
+    static void readSessions(Reader in, SessionTable table, MediaInfo document) throws IOException {
+        SessionsScratch scratch = SCRATCH.get();
+        scratch.current = null;
+        scratch.base = -1L;
+        scratch.batched = false;
+        scratch.patched = false;
+        scratch.unchanged = false;
+
+        table.beginUpdate();
+        try {
+            readObject(new JsonReader(in), document, (name, json) -> switch (name) {
+                case "current" -> {
+                    scratch.current = json.nextString();
+                    yield true;
+                }
+                case "base" -> {
+                    scratch.base = json.nextLong();
+                    yield true;
+                }
+                case "unchanged" -> {
+                    scratch.unchanged = json.nextBoolean();
+                    yield true;
+                }
+                case "sessions" -> {
+                    scratch.batched = true;
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        scratch.id = "";
+                        readObject(json, scratch.session, scratch::readId);
+                        table.put(scratch.id, scratch.session);
+                    }
+                    json.endArray();
+                    yield true;
+                }
+                case "patch" -> {
+                    // The companion writes the base first; without it there is nothing to patch
+                    if (scratch.base != table.seq()) {
+                        throw new IOException("Patch against " + scratch.base + ", but have " + table.seq());
+                    }
+                    scratch.patched = true;
+                    json.beginArray();
+                    while (json.hasNext()) readPatchEntry(json, table, scratch);
+                    json.endArray();
+                    yield true;
+                }
+                default -> false;
+            });
+
+            if (scratch.unchanged) {
+                if (document.seq != table.seq()) {
+                    throw new IOException("Unchanged since " + document.seq + ", but have " + table.seq());
+                }
+                table.commit(null, document.seq, false);
+            } else if (scratch.patched) {
+                table.commit(scratch.current != null ? scratch.current : "", document.seq, false);
+            } else {
+                if (!scratch.batched) table.put("", document);
+                table.commit(scratch.current != null ? scratch.current : "", document.seq, true);
+            }
+        } catch (IOException | RuntimeException e) {
+            table.invalidate();
+            throw e;
+        }
+    }
+
+    private static void readPatchEntry(JsonReader json, SessionTable table, SessionsScratch scratch) throws IOException {
+        json.beginObject();
+        if (!json.hasNext() || !json.nextName().equals("id")) throw new IOException("Patch entry without a leading id");
+        String id = json.nextString();
+
+        // Written straight into the table's copy, so fields the patch doesn't name stay untouched
+        SessionTable.Session session = table.beginPatch(id);
+        scratch.removed = false;
+        boolean textChanged = readFields(json, session.info, scratch::readRemoved, true);
+
+        if (scratch.removed) {
+            table.remove(id);
+        } else {
+            table.endPatch(session, textChanged);
+        }
+    }
+
+    private static void readObject(JsonReader json, MediaInfo into, ExtraField extra) throws IOException {
+        into.reset();
+        json.beginObject();
+        readFields(json, into, extra, false);
+    }
+
+    /**
+     * Reads the rest of an object whose opening brace was consumed.
+     *
+     * @param patch whether a null clears the field (patches) or is ignored (full states)
+     * @return whether title, artist or app were among the fields
+     */
+    private static boolean readFields(JsonReader json, MediaInfo into, ExtraField extra, boolean patch) throws IOException {
+        boolean positionSet = false;
+        boolean startSet = false;
+        boolean endSet = false;
+        boolean text = false;
+
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("title") || name.equals("artist") || name.equals("app")) text = true;
+
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                if (patch) clear(into, name);
+                continue;
+            }
+
+            switch (name) {
+                case "version" -> into.version = json.nextInt();
+                case "title" -> into.title = json.nextString();
+                case "artist" -> into.artist = json.nextString();
+                case "app" -> into.app = json.nextString();
+                case "status" -> into.status = json.nextString();
+                case "imageHash" -> into.imageHash = json.nextString();
+                case "playbackRate" -> into.playbackRate = json.nextDouble();
+                case "anchorMs" -> into.anchorMs = json.nextLong();
+                case "nowMs" -> into.nowMs = json.nextLong();
+                case "seq" -> into.seq = json.nextLong();
+                case "stateSeq" -> into.stateSeq = json.nextLong();
+                case "textSeq" -> into.textSeq = json.nextLong();
+
+                case "positionMs" -> { into.positionMs = json.nextLong(); positionSet = true; }
+                case "startMs" -> { into.startMs = json.nextLong(); startSet = true; }
+                case "endMs" -> { into.endMs = json.nextLong(); endSet = true; }
+
+                // Protocol v1
+                case "position" -> {
+                    long ms = TimestampFormatter.parseMillis(json.nextString());
+                    if (!positionSet) into.positionMs = ms;
+                }
+                case "start" -> {
+                    long ms = TimestampFormatter.parseMillis(json.nextString());
+                    if (!startSet) into.startMs = ms;
+                }
+                case "end" -> {
+                    long ms = TimestampFormatter.parseMillis(json.nextString());
+                    if (!endSet) into.endMs = ms;
+                }
+
+                default -> {
+                    if (extra == null || !extra.read(name, json)) json.skipValue();
+                }
+            }
+        }
+        json.endObject();
+
+        if (!(into.playbackRate > 0.0) || Double.isInfinite(into.playbackRate)) into.playbackRate = 1.0;
+        return text;
+    }
+
+    private static void clear(MediaInfo into, String name) {
+        switch (name) {
+            case "title" -> into.title = null;
+            case "artist" -> into.artist = null;
+            case "app" -> into.app = null;
+            case "status" -> into.status = null;
+            case "imageHash" -> into.imageHash = null;
+            default -> {
+                // Numbers are never cleared
+            }
+        }
+    }
+}
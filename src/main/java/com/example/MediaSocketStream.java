@@ -0,0 +1,176 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Media state over a Unix domain socket ({@code AF_UNIX}, Linux and Windows 10+), using the
+ * binary frames of {@link StateFrameCodec} instead of HTTP and JSON.
+ *
+ * The companion writes one frame per state change (and one right after connecting). Artwork rides
+ * along in the frame whenever its hash changes, so the cover never needs a separate request.
+ * Lost connections are retried with a capped backoff, like {@link MediaEventStream}.
+ */
+final class MediaSocketStream implements MediaStateStream {
+
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private static final long MIN_RECONNECT_DELAY_MS = 500;
+    private static final long MAX_RECONNECT_DELAY_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final Path socketPath;
+    private final Consumer<MediaInfo> listener;
+    private final BiConsumer<String, byte[]> artworkListener;
+
+    // Socket thread only
+    private final MediaInfo info = new MediaInfo();
+    private final StateFrameCodec.Decoder decoder = new StateFrameCodec.Decoder();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile SocketChannel activeChannel;
+    private Thread thread;
+
+    /**
+     * @param artworkListener receives (hash, encoded bytes) for attached artwork, before the state
+     *                        that references it is delivered to {@code listener}
+     */
+    MediaSocketStream(Path socketPath, Consumer<MediaInfo> listener, BiConsumer<String, byte[]> artworkListener) {
+        this.socketPath = socketPath;
+        this.listener = listener;
+        this.artworkListener = artworkListener;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        thread = new Thread(this::runLoop, "NowPlaying-Socket");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        connected = false;
+
+        // Closing the channel unblocks the pending read
+        SocketChannel channel = activeChannel;
+        if (channel != null) {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void runLoop() {
+        long delayMs = MIN_RECONNECT_DELAY_MS;
+
+        while (running) {
+            try {
+                if (readFrames()) {
+                    delayMs = MIN_RECONNECT_DELAY_MS;
+                }
+            } catch (Exception e) {
+                // Only report lost connections; a missing socket just means the companion doesn't offer it
+                if (running && connected) {
+                    System.err.println("[NowPlayingMod] Socket stream disconnected: " + e.getMessage());
+                }
+            } finally {
+                connected = false;
+            }
+
+            if (!running) break;
+
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            delayMs = Math.min(delayMs * 2, MAX_RECONNECT_DELAY_MS);
+        }
+    }
+
+    /**
+     * Connects once and dispatches frames until the connection ends.
+     *
+     * @return whether any frame was received on this connection
+     */
+    private boolean readFrames() throws IOException {
+        boolean receivedAny = false;
+
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            activeChannel = channel;
+            if (!running) return false;
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            buffer.clear();
+            while (running && channel.read(buffer) >= 0) {
+                buffer.flip();
+
+                while (buffer.remaining() >= StateFrameCodec.HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = StateFrameCodec.frameLength(buffer, start);
+                    if (buffer.remaining() < length) {
+                        // Big frames (artwork) may not fit the current buffer at all
+                        if (length > buffer.capacity()) grow(length);
+                        break;
+                    }
+
+                    ByteBuffer frame = buffer.slice(start, length);
+                    if (decoder.decode(frame, info)) {
+                        dispatchArtwork(decoder.artwork());
+                    }
+                    buffer.position(start + length);
+                    NowPlayingMetrics.BYTES_FETCHED.add(length);
+
+                    info.receivedNanos = System.nanoTime();
+                    info.requestNanos = info.receivedNanos;
+
+                    receivedAny = true;
+                    connected = true;
+                    listener.accept(info);
+                }
+
+                buffer.compact();
+            }
+        } finally {
+            activeChannel = null;
+        }
+
+        return receivedAny;
+    }
+
+    private void grow(int frameLength) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(frameLength, buffer.capacity() * 2));
+        larger.put(buffer);
+        larger.flip();
+        buffer = larger;
+    }
+
+    private void dispatchArtwork(ByteBuffer artwork) {
+        if (info.imageHash == null) return;
+
+        byte[] bytes = new byte[artwork.remaining()];
+        artwork.get(bytes);
+        artworkListener.accept(info.imageHash, bytes);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+/**
+ * A push subscription to the companion's media state. While connected, the poller stands down.
+ */
+interface MediaStateStream {
+
+    void start();
+
+    void stop();
+
+    /**
+     * True while a subscription is open and delivering state.
+     */
+    boolean isConnected();
+}
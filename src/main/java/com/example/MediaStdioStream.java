@@ -0,0 +1,131 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Media state read from the companion's stdout, for companions started with {@code --stdio}.
+ * No listener, port or polling is involved; the pipe we already read the companion's log from
+ * carries the state too.
+ *
+ * State and log lines share the stream. A state line is {@link #LINE_PREFIX} followed by one
+ * {@link StateFrameCodec} frame in Base64, written with a single console write so it never
+ * interleaves with a log line; anything else is a log line. Artwork rides along whenever its hash
+ * changes, like on the socket transport.
+ *
+ * There is no thread of its own: the process output reader hands every line to {@link #accept}.
+ *
+ * Companions built before this transport ignore {@code --stdio}, print no state and listen on their
+ * fixed HTTP port instead; {@link #ignoredByCompanion} tells when to poll that instead.
+ */
+final class MediaStdioStream implements MediaStateStream {
+
+    /** ASCII record separator plus a tag; no log line starts with a control character. */
+    static final String LINE_PREFIX = "\u001ENP1 ";
+
+    // A companion that knows --stdio prints its first state line well within this
+    static final long LEGACY_GRACE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Consumer<MediaInfo> listener;
+    private final BiConsumer<String, byte[]> artworkListener;
+
+    // Output reader thread only
+    private final MediaInfo info = new MediaInfo();
+    private final StateFrameCodec.Decoder decoder = new StateFrameCodec.Decoder();
+
+    private volatile boolean running;
+    private volatile boolean connected;
+
+    /**
+     * @param artworkListener receives (hash, encoded bytes) for attached artwork, before the state
+     *                        that references it is delivered to {@code listener}
+     */
+    MediaStdioStream(Consumer<MediaInfo> listener, BiConsumer<String, byte[]> artworkListener) {
+        this.listener = listener;
+        this.artworkListener = artworkListener;
+    }
+
+    static boolean isStateLine(String line) {
+        return line.startsWith(LINE_PREFIX);
+    }
+
+    /**
+     * Formats an encoded frame (as returned by {@link StateFrameCodec#encode}) as a state line.
+     */
+    static String stateLine(ByteBuffer frame) {
+        ByteBuffer base64 = Base64.getEncoder().encode(frame);
+        byte[] chars = new byte[base64.remaining()];
+        base64.get(chars);
+        return LINE_PREFIX + new String(chars, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        connected = false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Whether the companion launched at {@code launchNanos} ignored {@code --stdio}: no state line
+     * within {@link #LEGACY_GRACE_NANOS}, but {@code answersHttp} says its HTTP endpoint responds.
+     */
+    boolean ignoredByCompanion(long launchNanos, BooleanSupplier answersHttp) {
+        return !connected && System.nanoTime() - launchNanos >= LEGACY_GRACE_NANOS && answersHttp.getAsBoolean();
+    }
+
+    /**
+     * Output reader thread. Decodes one state line (see {@link #isStateLine}) and delivers it.
+     */
+    void accept(String line) {
+        if (!running) return;
+
+        try {
+            byte[] frame = Base64.getDecoder().decode(line.substring(LINE_PREFIX.length()));
+            NowPlayingMetrics.BYTES_FETCHED.add(frame.length);
+            if (decoder.decode(ByteBuffer.wrap(frame), info)) {
+                dispatchArtwork(decoder.artwork());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // A broken line costs one update; the next change brings the full state again
+            System.err.println("[NowPlayingMod] Bad state line from companion: " + e.getMessage());
+            return;
+        }
+
+        info.receivedNanos = System.nanoTime();
+        info.requestNanos = info.receivedNanos;
+
+        connected = true;
+        listener.accept(info);
+    }
+
+    /**
+     * Output reader thread, when the companion's stdout closed (it exited or is being replaced).
+     */
+    void endOfStream() {
+        connected = false;
+    }
+
+    private void dispatchArtwork(ByteBuffer artwork) {
+        if (info.imageHash == null) return;
+
+        byte[] bytes = new byte[artwork.remaining()];
+        artwork.get(bytes);
+        artworkListener.accept(info.imageHash, bytes);
+    }
+}
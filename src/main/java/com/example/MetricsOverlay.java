@@ -0,0 +1,86 @@
+package com.example;
+
+import net.minecraft.client.font.TextRenderer;
+import net.minecraft.client.gui.DrawContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug overlay listing {@link NowPlayingMetrics}, drawn beside the HUD panel.
+ *
+ * The text is rebuilt a couple of times per second rather than every frame, so the overlay itself
+ * barely shows up in the numbers it displays. Render thread only.
+ */
+final class MetricsOverlay {
+
+    private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final int PADDING = 4;
+    private static final int GAP = 4;
+    private static final int BACKGROUND_COLOR = 0xA0000000;
+    private static final int HEADER_COLOR = 0xFFFFFF55;
+    private static final int TEXT_COLOR = 0xFFE0E0E0;
+
+    private static final String HEADER = "Now Playing metrics";
+
+    private final List<String> lines = new ArrayList<>();
+    private int textWidth;
+    private long lastRefreshNanos;
+    private boolean stale = true;
+
+    /**
+     * @param panel the current panel layout, or null when no panel is shown; the overlay then takes
+     *              the panel's place at the configured side and height
+     */
+    void draw(DrawContext drawContext, TextRenderer textRenderer, HudLayout panel,
+              NowPlayingConfig config, int screenWidth, int screenHeight) {
+        long now = System.nanoTime();
+        if (stale || now - lastRefreshNanos >= REFRESH_NANOS) {
+            refresh(textRenderer);
+            lastRefreshNanos = now;
+            stale = false;
+        }
+
+        int width = textWidth + PADDING * 2;
+        int height = (lines.size() + 1) * HudLayout.LINE_HEIGHT + PADDING * 2;
+        boolean left = config.sidePosition == NowPlayingConfig.Side.LEFT;
+
+        int x;
+        int y;
+        if (panel != null) {
+            x = left ? panel.panelX + panel.panelWidth + GAP : panel.panelX - GAP - width;
+            y = panel.panelY;
+        } else {
+            x = left ? 0 : screenWidth - width;
+            y = (int) ((screenHeight - height) * (config.yPosition / 100.0));
+        }
+        y = Math.max(0, Math.min(y, screenHeight - height));
+
+        drawContext.fill(x, y, x + width, y + height, BACKGROUND_COLOR);
+
+        int lineY = y + PADDING;
+        drawContext.drawTextWithShadow(textRenderer, HEADER, x + PADDING, lineY, HEADER_COLOR);
+        for (int i = 0; i < lines.size(); i++) {
+            lineY += HudLayout.LINE_HEIGHT;
+            drawContext.drawTextWithShadow(textRenderer, lines.get(i), x + PADDING, lineY, TEXT_COLOR);
+        }
+    }
+
+    /**
+     * Forces new text on the next frame, e.g. right after a reset.
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    private void refresh(TextRenderer textRenderer) {
+        NowPlayingMetrics.describe(lines);
+
+        textWidth = textRenderer.getWidth(HEADER);
+        for (String line : lines) {
+            textWidth = Math.max(textWidth, textRenderer.getWidth(line));
+        }
+    }
+}
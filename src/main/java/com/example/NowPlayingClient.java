@@ -1,6 +1,5 @@
 package com.example;
 
-import com.google.gson.Gson;
 import com.terraformersmc.modmenu.api.ConfigScreenFactory;
 import com.terraformersmc.modmenu.api.ModMenuApi;
 import me.shedaniel.autoconfig.AutoConfig;
@@ -9,34 +8,30 @@ import me.shedaniel.autoconfig.serializer.JanksonConfigSerializer;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
+import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.gl.RenderPipelines;
-import net.minecraft.client.texture.NativeImage;
-import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.client.gui.DrawContext;
 import net.minecraft.text.Text;
-import net.minecraft.util.Identifier;
+import net.minecraft.util.ActionResult;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.CRC32;
 
 public class NowPlayingClient implements ClientModInitializer, ModMenuApi {
 
@@ -44,147 +39,169 @@ public class NowPlayingClient implements ClientModInitializer, ModMenuApi {
     public static NowPlayingConfig config;
 
     // --- Companion process ---
-    private static volatile Process csharpProcess;
-
-    // --- Networking constants ---
-    private static final String BASE_URL = "http://localhost:58888";
-    private static final String INFO_ENDPOINT = BASE_URL + "/media_info";
-    private static final String IMAGE_ENDPOINT = BASE_URL + "/media_image.jpg";
-
-    private static final int CONNECT_TIMEOUT_MS = 1000;
-    private static final int READ_TIMEOUT_MS = 1000;
-
-    // --- Texture ---
-    private static final Identifier NOW_PLAYING_IMAGE_ID = Identifier.of("nowplaying", "media");
-
-    // --- JSON ---
-    private static final Gson GSON = new Gson();
-
-    private static class MediaInfo {
-        String title;
-        String artist;
-        String app;
-        String status;
-        String position;
-        String start;
-        String end;
-    }
-
-    // --- Render/State snapshot (single source of truth) ---
-    private static final class Snapshot {
-        final String title;
-        final String artist;
-        final boolean isSpotify;
-        final boolean isMediaActive;
-        final boolean isPlaying;
-
-        final double targetProgress;     // 0..1
-        final double targetPositionSec;  // seconds
-        final double targetEndSec;       // seconds
-
-        final boolean imageLoaded;
-        final int coverTexW;
-        final int coverTexH;
-
-        Snapshot(
-                String title,
-                String artist,
-                boolean isSpotify,
-                boolean isMediaActive,
-                boolean isPlaying,
-                double targetProgress,
-                double targetPositionSec,
-                double targetEndSec,
-                boolean imageLoaded,
-                int coverTexW,
-                int coverTexH
-        ) {
-            this.title = title;
-            this.artist = artist;
-            this.isSpotify = isSpotify;
-            this.isMediaActive = isMediaActive;
-            this.isPlaying = isPlaying;
-            this.targetProgress = targetProgress;
-            this.targetPositionSec = targetPositionSec;
-            this.targetEndSec = targetEndSec;
-            this.imageLoaded = imageLoaded;
-            this.coverTexW = coverTexW;
-            this.coverTexH = coverTexH;
-        }
+    private static volatile CompanionSupervisor supervisor;
+    // Polls only run while the companion has passed its readiness probe
+    private static volatile boolean companionUp;
+    // When the current companion process was started, to give a stdio one time for its first state line
+    private static volatile long companionLaunchNanos;
+
+    // One companion per user, shared by every instance using the same directory (null for stdio,
+    // where the pipe has a single reader, and for an external companion)
+    private static volatile SharedCompanion sharedCompanion;
+
+    // Lock, port and lease files of the shared companion; config/nowplaying/companion by default.
+    // Point several game directories at one with -Dnowplaying.companionDir=<path> to share across them.
+    private static final String COMPANION_DIR_PROPERTY = "nowplaying.companionDir";
+
+    // --- Networking ---
+    // The shared companion picks a free port and publishes it; an external one is expected on
+    // -Dnowplaying.port (58888 by default)
+    private static final String PORT_PROPERTY = "nowplaying.port";
+    private static final int DEFAULT_PORT = 58888;
+
+    // sessions=1 asks for every media session at once; companions without it answer with their own
+    // pick, which the session table takes as a single session
+    private static final String INFO_PATH = "/media_info?v=2&sessions=1";
+    // Companions before sessions only answer this exact path; newer ones also take /media_image.jpg
+    private static final String IMAGE_PATH = "/media_image";
+    private static final String EVENTS_PATH = "/media_events?v=2&sessions=1";
+
+    // Replaced together whenever the companion comes up on another port
+    private static volatile String baseUrl = "http://localhost:" + Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+    private static volatile URI infoEndpoint = URI.create(baseUrl + INFO_PATH);
+    private static volatile URI imageEndpoint = URI.create(baseUrl + IMAGE_PATH);
+
+    // Unix domain socket of the binary transport; the companion creates it next to its executable.
+    // Override with -Dnowplaying.socket=<path> (e.g. for the Java reference server).
+    private static final String SOCKET_PATH_PROPERTY = "nowplaying.socket";
+
+    // Set -Dnowplaying.externalCompanion=true to use an already running companion (e.g. the Java stand-in on Linux)
+    private static final boolean EXTERNAL_COMPANION = Boolean.getBoolean("nowplaying.externalCompanion");
+
+    // --- Media sessions (polled or pushed sessions documents, under the class lock) ---
+    private static final SessionTable SESSIONS = new SessionTable();
+    // Top-level fields of the last document (nowMs), and the shown session's state with them
+    private static final MediaInfo SESSIONS_DOCUMENT = new MediaInfo();
+    private static final MediaInfo SHOWN_INFO = new MediaInfo();
+    private static SessionTable.Session shownSession;
+    // Read by the artwork thread to ask for the right session's cover
+    private static volatile String shownSessionId;
+    private static volatile int sessionCount;
+    // Sequence number of the last document, sent back as ?since= so an unchanged poll is a few bytes
+    private static volatile long sessionsSeq;
+
+    private static List<String> appPriority = List.of();
+    private static int appPriorityVersion = -1;
+
+    // --- Render/State snapshot (single source of truth; every change is a transition, see registerStateListeners) ---
+    private static final SnapshotStore STATE = new SnapshotStore(Snapshot.loading());
 
-        static Snapshot loading() {
-            return new Snapshot(
-                    "Loading Now Playing...",
-                    "Loading Artist...",
-                    false,
-                    false,
-                    false,
-                    0.0,
-                    0.0,
-                    0.0,
-                    false,
-                    0,
-                    0
-            );
+    // --- Polling scheduler ---
+    private static volatile PollScheduler scheduler;
+
+    // Inputs of the poll mode, sampled on the client thread every tick
+    private static volatile boolean hudVisible = true;
+    private static volatile boolean windowFocused = true;
+    private static int lastPollWakeKey = -1;
+
+    private static final long RECENT_CHANGE_NANOS = TimeUnit.SECONDS.toNanos(3);
+    private static final double TRACK_END_WINDOW_SEC = 5.0;
+    // Set by a state listener whenever the text, play state or presence of media changes
+    private static volatile long lastMediaChangeNanos = System.nanoTime() - RECENT_CHANGE_NANOS;
+
+    // --- Push updates (null when the polling transport is configured) ---
+    private static volatile MediaStateStream eventStream;
+
+    // --- Artwork (fetch + decode on its own thread) ---
+    // Companions that advertise an artwork hash get conditional fetches; older ones fall back to CRC + cooldown.
+    private static final ArtworkCache ARTWORK_CACHE = new ArtworkCache(
+            FabricLoader.getInstance().getConfigDir().resolve("nowplaying").resolve("artCache"),
+            () -> config != null ? config.artCacheMemoryMb : 0,
+            () -> config != null ? config.artCacheDiskMb : 0
+    );
+    private static final CoverTextureManager COVER_TEXTURES = new CoverTextureManager();
+    private static final ArtworkPipeline ARTWORK = new ArtworkPipeline(NowPlayingClient::artworkEndpoint, ARTWORK_CACHE, COVER_TEXTURES, new ArtworkPipeline.Listener() {
+        @Override
+        public void onArtworkShown(int width, int height, long palette) {
+            STATE.update(s -> s.withImage(true, width, height, palette));
         }
 
-        Snapshot withImage(boolean loaded, int w, int h) {
-            return new Snapshot(
-                    title, artist, isSpotify, isMediaActive, isPlaying,
-                    targetProgress, targetPositionSec, targetEndSec,
-                    loaded, w, h
-            );
+        @Override
+        public void onArtworkMissing() {
+            clearTextureOnly();
         }
+    });
+    // Under the class lock, like everything applyMediaInfo decides
+    private static long lastImageFetchNanos;
+    private static final long IMAGE_FETCH_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
 
-        Snapshot withTextAndPlayback(
-                String title,
-                String artist,
-                boolean isSpotify,
-                boolean isMediaActive,
-                boolean isPlaying,
-                double targetProgress,
-                double targetPositionSec,
-                double targetEndSec
-        ) {
-            return new Snapshot(
-                    title, artist, isSpotify, isMediaActive, isPlaying,
-                    targetProgress, targetPositionSec, targetEndSec,
-                    imageLoaded, coverTexW, coverTexH
-            );
-        }
-    }
+    // --- Playback extrapolation (render thread) ---
+    private static final PlaybackClock PLAYBACK_CLOCK = new PlaybackClock();
 
-    private static final AtomicReference<Snapshot> SNAPSHOT = new AtomicReference<>(Snapshot.loading());
+    private static double currentProgress = 0.0;
+    private static double currentPositionSec = 0.0;
+    private static double currentEndSec = 0.0;
 
-    // --- Polling scheduler ---
-    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
-    private static ScheduledExecutorService scheduler;
+    private static long lastRenderUpdateNanos = System.nanoTime();
+    private static long lastAnchorNanos;
+    private static double positionCorrectionSec;
 
-    // --- Image change detection ---
-    private static final AtomicLong lastImageCrc = new AtomicLong(0L);
-    private static final AtomicLong lastImageFetchNanos = new AtomicLong(0L);
-    private static final long IMAGE_FETCH_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // Disagreements below this are slewed out over ~SLEW_TIME_SEC; larger ones (seeks) snap
+    private static final double SNAP_THRESHOLD_SEC = 1.0;
+    private static final double SLEW_TIME_SEC = 0.15;
 
-    // --- Cached text/app to decide if we should fetch image more eagerly ---
-    private static volatile String lastTitleRaw = "";
-    private static volatile String lastArtistRaw = "";
-    private static volatile boolean lastIsSpotify = false;
+    // --- Debug metrics overlay (render thread) ---
+    private static final MetricsOverlay METRICS_OVERLAY = new MetricsOverlay();
 
-    // --- Smoothing (render thread) ---
-    private static volatile double currentProgress = 0.0;
-    private static volatile double currentPositionSec = 0.0;
-    private static volatile double currentEndSec = 0.0;
+    // --- HUD layout cache (render thread) ---
+    private static final HudLayout HUD_LAYOUT = new HudLayout();
+    private static final HudLayout.TextMeasurer HUD_TEXT_MEASURER = new HudLayout.TextMeasurer() {
+        @Override
+        public int width(String text) {
+            return MinecraftClient.getInstance().textRenderer.getWidth(text);
+        }
 
-    private static volatile long lastRenderUpdateNanos = System.nanoTime();
-    private static final double PROGRESS_SMOOTHING_FACTOR = 0.15;
-    private static final double TIME_SMOOTHING_FACTOR = 0.10;
+        @Override
+        public float advance(String text) {
+            return MinecraftClient.getInstance().textRenderer.getTextHandler().getWidth(text);
+        }
+    };
+    // Marquees start over whenever the text changes
+    private static long marqueeTextVersion = -1L;
+    private static long marqueeStartNanos;
+    private static final HudPanelRenderer HUD_PANEL = new HudPanelRenderer();
+
+    // --- Startup ---
+    // -Dnowplaying.blockingStartup=true prepares the companion inside onInitializeClient like older
+    // versions did, to compare launch times
+    private static final boolean BLOCKING_STARTUP = Boolean.getBoolean("nowplaying.blockingStartup");
+
+    // Held while the companion, stream and poller are started or torn down, so shutdown can't interleave with the bootstrap
+    private static final Object LIFECYCLE_LOCK = new Object();
+    private static volatile boolean shutdownRequested;
+
+    private static long initStartNanos;
+    // Milliseconds, -1 until known
+    private static volatile long initMillis = -1;
+    private static volatile long extractMillis = -1;
+    private static volatile long readyMillis = -1;
+
+    // The config object is mutated in place by the config screen, so saves bump a version instead
+    private static volatile int configVersion = 0;
 
     @Override
     @Environment(EnvType.CLIENT)
     public void onInitializeClient() {
+        long initStart = System.nanoTime();
+        initStartNanos = initStart;
+
         // --- AutoConfig ---
         AutoConfig.register(NowPlayingConfig.class, JanksonConfigSerializer::new);
         config = AutoConfig.getConfigHolder(NowPlayingConfig.class).getConfig();
+        AutoConfig.getConfigHolder(NowPlayingConfig.class).registerSaveListener((holder, saved) -> {
+            configVersion++;
+            return ActionResult.PASS;
+        });
 
         GuiRegistry registry = AutoConfig.getGuiRegistry(NowPlayingConfig.class);
         registry.registerPredicateProvider(
@@ -193,27 +210,16 @@ public class NowPlayingClient implements ClientModInitializer, ModMenuApi {
                 field -> field.getType().equals(NowPlayingConfig.Side.class)
         );
 
-        // --- Ensure companion is ready ---
-        if (!NowPlayingFileManager.ensureExecutableReady()) {
-            System.err.println("[NowPlayingMod] Failed to prepare C# executable. Mod functionality might be limited.");
-            SNAPSHOT.set(new Snapshot(
-                    "Error: C# server not found/extracted.",
-                    "Check logs for details.",
-                    false,
-                    false,
-                    false,
-                    0.0, 0.0, 0.0,
-                    false, 0, 0
-            ));
-            return;
-        }
-
-        // --- Start companion and polling ---
-        launchCSharpScript();
-        startPolling();
-
         // Client stop: stop polling + kill companion + free texture
         ClientLifecycleEvents.CLIENT_STOPPING.register(client -> shutdownEverything());
+        // Once for the whole session, however often the companion is restarted
+        Runtime.getRuntime().addShutdownHook(new Thread(NowPlayingClient::shutdownEverything, "NowPlaying-ShutdownHook"));
+
+        // Poll rate follows HUD visibility, focus and push state
+        ClientTickEvents.END_CLIENT_TICK.register(NowPlayingClient::samplePollInputs);
+
+        registerMetricGauges();
+        registerStateListeners();
 
         ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
             System.out.println("[NowPlayingMod] Integrated server stopped. Stopping C# server and polling.");
@@ -225,532 +231,752 @@ public class NowPlayingClient implements ClientModInitializer, ModMenuApi {
             MinecraftClient client = MinecraftClient.getInstance();
             if (client.player == null) return;
 
-            Snapshot s = SNAPSHOT.get();
-            if (!s.isMediaActive) return;
+            long renderStart = System.nanoTime();
+            boolean drawn = renderHud(drawContext, client);
+            if (drawn) NowPlayingMetrics.HUD_RENDER.recordSince(renderStart);
 
-            // Smooth timing
-            long now = System.nanoTime();
-            double dt = (now - lastRenderUpdateNanos) / 1_000_000_000.0;
-            lastRenderUpdateNanos = now;
+            if (config.showDebugOverlay) {
+                METRICS_OVERLAY.draw(drawContext, client.textRenderer, drawn ? HUD_LAYOUT : null, config,
+                        client.getWindow().getScaledWidth(), client.getWindow().getScaledHeight());
+            }
+        });
 
-            // Clamp to avoid massive jumps after a freeze
-            double smoothFactor = Math.min(dt * 60.0, 5.0);
+        // /nowplaying metrics [dump|reset]
+        ClientCommandRegistrationCallback.EVENT.register((dispatcher, registryAccess) -> dispatcher.register(
+                ClientCommandManager.literal("nowplaying").then(ClientCommandManager.literal("metrics")
+                        .executes(context -> dumpMetrics(context.getSource()))
+                        .then(ClientCommandManager.literal("dump")
+                                .executes(context -> dumpMetrics(context.getSource())))
+                        .then(ClientCommandManager.literal("reset")
+                                .executes(context -> {
+                                    NowPlayingMetrics.reset();
+                                    METRICS_OVERLAY.invalidate();
+                                    context.getSource().sendFeedback(Text.literal("Now Playing metrics reset."));
+                                    return 1;
+                                })))
+        ));
+
+        // --- Prepare and start the companion ---
+        // Extraction and launch stay off the game's startup path; the HUD shows a starting panel meanwhile
+        STATE.set(Snapshot.starting());
+        if (BLOCKING_STARTUP) {
+            bootstrapCompanion();
+        } else {
+            Thread t = new Thread(NowPlayingClient::bootstrapCompanion, "NowPlaying-Bootstrap");
+            t.setDaemon(true);
+            t.start();
+        }
 
-            // Smooth progress
-            currentProgress += (s.targetProgress - currentProgress) * PROGRESS_SMOOTHING_FACTOR * smoothFactor;
-            currentProgress = clamp01(currentProgress);
+        initMillis = millisSince(initStart);
+        System.out.println("[NowPlayingMod] onInitializeClient took " + initMillis + " ms"
+                + (BLOCKING_STARTUP ? " (blocking startup)." : "; companion is prepared in the background."));
+    }
 
-            // Smooth time (only advance locally when playing)
-            if (isDisplayableMedia(s)) {
-                if (s.isPlaying) {
-                    currentPositionSec += dt;
-                }
-                currentPositionSec += (s.targetPositionSec - currentPositionSec) * TIME_SMOOTHING_FACTOR * smoothFactor;
-                currentPositionSec = Math.min(currentPositionSec, s.targetEndSec);
+    // -------------------------
+    // Startup
+    // -------------------------
 
-                currentEndSec += (s.targetEndSec - currentEndSec) * TIME_SMOOTHING_FACTOR * smoothFactor;
-            } else {
-                currentPositionSec += (0.0 - currentPositionSec) * TIME_SMOOTHING_FACTOR * smoothFactor;
-                currentEndSec += (0.0 - currentEndSec) * TIME_SMOOTHING_FACTOR * smoothFactor;
-            }
+    /**
+     * Extracts the companion, then starts the transport, the supervised companion and the poller,
+     * which stays suspended until the companion is ready. Runs on the bootstrap thread, or inline
+     * with {@code -Dnowplaying.blockingStartup=true}.
+     */
+    private static void bootstrapCompanion() {
+        long extractStart = System.nanoTime();
+        boolean extracted = NowPlayingFileManager.ensureExecutableReady();
+        extractMillis = millisSince(extractStart);
+        System.out.println("[NowPlayingMod] Startup: extraction took " + extractMillis + " ms.");
+
+        if (!extracted) {
+            System.err.println("[NowPlayingMod] Failed to prepare C# executable. Mod functionality might be limited.");
+            setErrorSnapshot("Error: C# server not found/extracted.", "Check logs for details.");
+            return;
+        }
 
-            // Layout constants
-            int textPadding = 6;
-            int lineHeight = 10;
+        synchronized (LIFECYCLE_LOCK) {
+            if (shutdownRequested) return;
 
-            int baseCoverSize = 32;
-            int maxCoverSize = 64;
+            // The stream goes first: in stdio mode the companion's first output line is already state
+            startEventStream();
+            if (EXTERNAL_COMPANION) {
+                // Not ours to supervise; failed polls show when it's missing
+                onCompanionReady();
+            } else {
+                if (!(eventStream instanceof MediaStdioStream)) {
+                    SharedCompanion shared = new SharedCompanion(companionDir());
+                    try {
+                        shared.join();
+                    } catch (IOException e) {
+                        System.err.println("[NowPlayingMod ERROR] Could not register with the shared C# server: " + e.getMessage());
+                        setErrorSnapshot("Error: C# server could not be shared.", "Check logs for details.");
+                        return;
+                    }
+                    sharedCompanion = shared;
+                }
 
-            int barHeight = 2;
-            int barPadding = 2;
-            int imageTextSpacing = 10;
-            int timelineGap = 4;
-            int minTimelineWidth = 80;
+                CompanionSupervisor companion = new CompanionSupervisor(
+                        NowPlayingClient::startCompanionProcess,
+                        NowPlayingClient::companionAnswers,
+                        COMPANION_LISTENER,
+                        CompanionSupervisor.Policy.DEFAULT
+                );
+                supervisor = companion;
+                companion.start();
+            }
+            startPolling();
+        }
+    }
 
-            Text mediaTitle = Text.literal(s.title);
-            Text artistName = Text.literal(s.artist);
-            int mediaTitleWidth = client.textRenderer.getWidth(mediaTitle);
-            int artistNameWidth = client.textRenderer.getWidth(artistName);
+    /**
+     * Supervisor thread. Readiness probe: the push stream is connected (for stdio, a state line
+     * arrived from the new process) or the HTTP endpoint responds.
+     */
+    private static boolean companionAnswers() {
+        MediaStateStream stream = eventStream;
+        if (stream != null && stream.isConnected()) return true;
+        if (!(stream instanceof MediaStdioStream stdio)) return CompanionHttp.get(infoEndpoint) != null;
+
+        // A stdio companion has no HTTP listener, unless it predates --stdio and ignored it
+        if (!stdio.ignoredByCompanion(companionLaunchNanos, () -> CompanionHttp.get(infoEndpoint) != null)) return false;
+        System.err.println("[NowPlayingMod] C# server doesn't support --stdio. Falling back to polling.");
+        stdio.stop();
+        eventStream = null;
+        return true;
+    }
 
-            int textBlockHeight = 0;
-            if (config.showMediaTitle) textBlockHeight += lineHeight;
-            if (config.showArtistName) textBlockHeight += lineHeight;
+    private static void onCompanionReady() {
+        companionUp = true;
+        if (readyMillis < 0) {
+            readyMillis = millisSince(initStartNanos);
+            System.out.println("[NowPlayingMod] Startup: companion ready " + readyMillis + " ms after init.");
+        }
 
-            int contentHeight = textBlockHeight;
+        PollScheduler poller = scheduler;
+        if (poller != null) poller.wake();
+    }
 
-            if (config.showTimeline) {
-                if (textBlockHeight > 0) contentHeight += timelineGap;
-                contentHeight += barHeight + barPadding + lineHeight;
+    private static final CompanionSupervisor.Listener COMPANION_LISTENER = new CompanionSupervisor.Listener() {
+        @Override
+        public void onOutputLine(String line) {
+            if (MediaStdioStream.isStateLine(line)) {
+                if (eventStream instanceof MediaStdioStream stdio) stdio.accept(line);
+                return;
             }
+            System.out.println("[C# Server] " + line);
+        }
 
-            int coverSize = (s.imageLoaded && config.showCoverArt) ? Math.max(baseCoverSize, contentHeight) : 0;
-            coverSize = Math.min(coverSize, maxCoverSize);
+        @Override
+        public void onOutputClosed() {
+            if (eventStream instanceof MediaStdioStream stdio) stdio.endOfStream();
+        }
 
-            int unifiedContentHeight = Math.max(contentHeight, coverSize);
-            int panelHeight = unifiedContentHeight + (textPadding * 2);
+        @Override
+        public void onReady(Process process) {
+            onCompanionReady();
+        }
 
-            int textBlockWidth = 0;
-            if (config.showMediaTitle) textBlockWidth = Math.max(textBlockWidth, mediaTitleWidth);
-            if (config.showArtistName) textBlockWidth = Math.max(textBlockWidth, artistNameWidth);
-            if (config.showTimeline && textBlockWidth < minTimelineWidth) textBlockWidth = minTimelineWidth;
+        @Override
+        public void onDown(int exitCode, long retryInMillis) {
+            companionUp = false;
+            System.err.println("[NowPlayingMod] C# server is down (exit code " + exitCode + "). Restarting in " + retryInMillis + " ms.");
+            setErrorSnapshot("C# Server Not Running", "Restarting...");
+        }
 
-            int panelWidth = 0;
-            if (textBlockWidth > 0) panelWidth = textBlockWidth;
+        @Override
+        public void onGaveUp(String reason) {
+            companionUp = false;
+            System.err.println("[NowPlayingMod ERROR] Giving up on the C# server: " + reason + ". Restart the game to try again.");
+            setErrorSnapshot("C# server keeps crashing.", "Check logs for details.");
+        }
+    };
 
-            if (s.imageLoaded && config.showCoverArt) {
-                panelWidth += coverSize;
-                if (textBlockWidth > 0) panelWidth += imageTextSpacing;
-            }
-            panelWidth += (textPadding * 2);
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
 
-            if (panelWidth < 100 && !(s.imageLoaded && config.showCoverArt && textBlockWidth == 0)) {
-                panelWidth = 100;
-            } else if (textBlockWidth == 0 && s.imageLoaded && config.showCoverArt) {
-                panelWidth = coverSize + (textPadding * 2);
+    /**
+     * Render thread. Draws the panel for the current snapshot.
+     *
+     * @return whether anything was drawn (no media means no panel)
+     */
+    private static boolean renderHud(DrawContext drawContext, MinecraftClient client) {
+        Snapshot s = STATE.get();
+        if (!s.isMediaActive) return false;
+
+        long now = System.nanoTime();
+        double dt = (now - lastRenderUpdateNanos) / 1_000_000_000.0;
+        lastRenderUpdateNanos = now;
+
+        // Extrapolate from the anchor every frame; accuracy doesn't depend on how often we poll
+        if (isDisplayableMedia(s)) {
+            double extrapolated = s.positionAt(now);
+
+            if (s.anchorNanos != lastAnchorNanos) {
+                // New anchor: hide small disagreements with what is on screen, jump on seeks
+                lastAnchorNanos = s.anchorNanos;
+                double error = currentPositionSec - extrapolated;
+                positionCorrectionSec = Math.abs(error) < SNAP_THRESHOLD_SEC ? error : 0.0;
+            } else {
+                positionCorrectionSec *= Math.exp(-dt / SLEW_TIME_SEC);
             }
 
-            int screenWidth = client.getWindow().getScaledWidth();
-            int screenHeight = client.getWindow().getScaledHeight();
+            currentPositionSec = Math.max(0.0, Math.min(extrapolated + positionCorrectionSec, s.targetEndSec));
+            currentEndSec = s.targetEndSec;
+            currentProgress = clamp01((currentPositionSec - s.targetStartSec) / (s.targetEndSec - s.targetStartSec));
+        } else {
+            currentPositionSec = 0.0;
+            currentEndSec = 0.0;
+            currentProgress = 0.0;
+            positionCorrectionSec = 0.0;
+        }
 
-            int panelX = (config.sidePosition == NowPlayingConfig.Side.LEFT) ? 0 : screenWidth - panelWidth;
-            int panelY = (int) ((screenHeight - panelHeight) * (config.yPosition / 100.0));
+        // Geometry only changes with the text, cover, play state, config or window; everything else is reused
+        boolean layoutChanged = HUD_LAYOUT.update(
+                s,
+                config,
+                configVersion,
+                client.getWindow().getScaledWidth(),
+                client.getWindow().getScaledHeight(),
+                client.textRenderer.fontHeight,
+                HUD_TEXT_MEASURER
+        );
+        if (s.textVersion != marqueeTextVersion) {
+            marqueeTextVersion = s.textVersion;
+            marqueeStartNanos = now;
+        }
 
-            int contentStartY = panelY + (panelHeight - unifiedContentHeight) / 2;
+        // Cover colours when themed; 0 without a cover
+        boolean themed = config.themeFromCover;
+        HUD_PANEL.draw(drawContext, client.textRenderer, HUD_LAYOUT, layoutChanged, COVER_TEXTURES,
+                themed ? s.coverBackgroundColor : 0, themed ? s.coverAccentColor : 0,
+                currentProgress, currentPositionSec, currentEndSec, now - marqueeStartNanos);
+        return true;
+    }
 
-            // Background
-            if (shouldDrawPanel()) {
-                int bgColor = ((int) (config.backgroundOpacity * 2.55) << 24) | 0x000000;
-                drawContext.fill(panelX, panelY, panelX + panelWidth, panelY + panelHeight, bgColor);
-            }
+    private static int dumpMetrics(FabricClientCommandSource source) {
+        try {
+            Path file = NowPlayingMetrics.dump(FabricLoader.getInstance().getConfigDir().resolve("nowplaying").resolve("metrics"));
+            source.sendFeedback(Text.literal("Now Playing metrics written to " + file.toAbsolutePath()));
+            return 1;
+        } catch (IOException e) {
+            source.sendError(Text.literal("Could not write Now Playing metrics: " + e.getMessage()));
+            return 0;
+        }
+    }
 
-            int imageStartX = panelX + textPadding;
-            int textStartX = panelX + textPadding;
-            if (s.imageLoaded && config.showCoverArt) {
-                textStartX += coverSize + imageTextSpacing;
-            }
+    private static void registerMetricGauges() {
+        NowPlayingMetrics.gauge("pollIntervalMs", "Poll every", NowPlayingMetrics.Unit.MILLIS, () -> {
+            PollScheduler poller = scheduler;
+            return poller != null ? poller.intervalMillis() : -1;
+        });
+        NowPlayingMetrics.gauge("clockRoundTripNanos", "Clock RTT", NowPlayingMetrics.Unit.NANOS,
+                () -> PLAYBACK_CLOCK.isSynced() ? PLAYBACK_CLOCK.roundTripNanos() : -1);
+        NowPlayingMetrics.gauge("startupInitMs", "Init blocked", NowPlayingMetrics.Unit.MILLIS, () -> initMillis);
+        NowPlayingMetrics.gauge("startupExtractMs", "Extraction", NowPlayingMetrics.Unit.MILLIS, () -> extractMillis);
+        NowPlayingMetrics.gauge("companionFailuresInARow", "Crash streak", NowPlayingMetrics.Unit.COUNT, () -> {
+            CompanionSupervisor companion = supervisor;
+            return companion != null ? companion.failuresInARow() : -1;
+        });
+        NowPlayingMetrics.gauge("startupReadyMs", "Ready after", NowPlayingMetrics.Unit.MILLIS, () -> readyMillis);
+        NowPlayingMetrics.gauge("pushConnected", "Pushed", NowPlayingMetrics.Unit.COUNT, () -> {
+            MediaStateStream stream = eventStream;
+            return stream == null ? -1 : stream.isConnected() ? 1 : 0;
+        });
+        NowPlayingMetrics.gauge("mediaSessions", "Sessions", NowPlayingMetrics.Unit.COUNT, () -> sessionCount);
+        NowPlayingMetrics.gauge("hudElements", "HUD elements", NowPlayingMetrics.Unit.COUNT, HUD_PANEL::elements);
+        NowPlayingMetrics.gauge("stateVersion", "State ver", NowPlayingMetrics.Unit.COUNT, () -> STATE.get().version);
+        NowPlayingMetrics.gauge("artCacheMemoryHits", "Art mem hits", NowPlayingMetrics.Unit.COUNT, ARTWORK_CACHE::memoryHits);
+        NowPlayingMetrics.gauge("artCacheDiskHits", "Art disk hits", NowPlayingMetrics.Unit.COUNT, ARTWORK_CACHE::diskHits);
+        NowPlayingMetrics.gauge("artCacheMisses", "Art misses", NowPlayingMetrics.Unit.COUNT, ARTWORK_CACHE::misses);
+        NowPlayingMetrics.gauge("artCacheEvictions", "Art evictions", NowPlayingMetrics.Unit.COUNT, ARTWORK_CACHE::evictions);
+    }
 
-            // Cover art (center-cropped)
-            if (s.imageLoaded && config.showCoverArt && s.coverTexW > 0 && s.coverTexH > 0) {
-                int srcSize = Math.min(s.coverTexW, s.coverTexH);
-                int srcU = (s.coverTexW - srcSize) / 2;
-                int srcV = (s.coverTexH - srcSize) / 2;
-
-                drawContext.drawTexture(
-                        RenderPipelines.GUI_TEXTURED,
-                        NOW_PLAYING_IMAGE_ID,
-                        imageStartX,
-                        contentStartY,
-                        srcU, srcV,
-                        coverSize, coverSize,
-                        srcSize, srcSize,
-                        s.coverTexW, s.coverTexH
-                );
-            }
+    // -------------------------
+    // Polling + Image handling
+    // -------------------------
 
-            // Text
-            int currentY = contentStartY;
+    private static void startPolling() {
+        if (scheduler != null) return;
 
-            if (config.showMediaTitle) {
-                drawContext.drawTextWithShadow(client.textRenderer, mediaTitle, textStartX, currentY, 0xFFFFFFFF);
-                currentY += lineHeight;
-            }
-            if (config.showArtistName) {
-                drawContext.drawTextWithShadow(client.textRenderer, artistName, textStartX, currentY, 0xFFAAAAAA);
-                currentY += lineHeight;
+        PollScheduler poller = new PollScheduler(() -> {
+            try {
+                pollOnce();
+            } catch (Throwable t) {
+                // Don’t crash the scheduler thread; show a stable error state.
+                System.err.println("[NowPlayingMod] Poll error: " + t.getMessage());
+                setErrorSnapshot("An error occurred.", "");
             }
+        }, NowPlayingClient::choosePollMode);
+        scheduler = poller;
+        poller.start();
+    }
 
-            // Timeline
-            if (config.showTimeline && s.targetEndSec > 0) {
-                if (config.showMediaTitle || config.showArtistName) currentY += timelineGap;
+    /**
+     * Poller thread, after every poll. Picks how soon the next one should run.
+     */
+    private static PollScheduler.Mode choosePollMode() {
+        // Woken again once the companion passes its readiness probe
+        if (!hudVisible || !companionUp) return PollScheduler.Mode.SUSPENDED;
 
-                int barY = currentY;
-                int barX = textStartX;
+        // State is pushed; polls only keep an eye on the companion process
+        MediaStateStream stream = eventStream;
+        if (stream != null && (stream.isConnected() || stream instanceof MediaStdioStream)) return PollScheduler.Mode.SLOW;
 
-                if (config.showPlayStatusIcon) {
-                    String playPauseSymbol = s.isPlaying ? "❚❚" : "▶";
-                    int iconWidth = client.textRenderer.getWidth(playPauseSymbol);
-                    int iconHeight = client.textRenderer.fontHeight;
-                    int iconY = barY - (iconHeight / 2) + (barHeight / 2);
+        if (!windowFocused) return PollScheduler.Mode.SLOW;
+        if (System.nanoTime() - lastMediaChangeNanos < RECENT_CHANGE_NANOS) return PollScheduler.Mode.FAST;
 
-                    drawContext.drawTextWithShadow(
-                            client.textRenderer,
-                            Text.literal(playPauseSymbol),
-                            textStartX,
-                            iconY,
-                            0xFFFFFFFF
-                    );
+        Snapshot s = STATE.get();
+        if (!s.isMediaActive || !s.isPlaying) return PollScheduler.Mode.SLOW;
 
-                    barX += iconWidth + 6;
-                }
+        double remainingSec = (s.targetEndSec - s.positionAt(System.nanoTime())) / s.playbackRate;
+        if (s.targetEndSec > 0 && remainingSec <= TRACK_END_WINDOW_SEC) return PollScheduler.Mode.FAST;
 
-                int barWidth = (panelX + panelWidth - textPadding) - barX;
+        return PollScheduler.Mode.NORMAL;
+    }
 
-                drawContext.fill(barX, barY, barX + barWidth, barY + barHeight, 0xFF222222);
-                drawContext.fill(barX, barY, barX + (int) (barWidth * currentProgress), barY + barHeight, 0xFFD3D3D3);
+    /**
+     * Client thread, every tick. Wakes the poller when anything its mode depends on flips.
+     */
+    private static void samplePollInputs(MinecraftClient client) {
+        boolean visible = client.player != null
+                && !client.options.hudHidden
+                && config != null
+                && HudLayout.anyElementEnabled(config);
+        boolean focused = client.isWindowFocused();
 
-                currentY += barHeight + barPadding;
+        MediaStateStream stream = eventStream;
+        boolean pushed = stream != null && stream.isConnected();
 
-                String currentPosString = parseSecondsToTimeStamp(currentPositionSec);
-                String endPosString = parseSecondsToTimeStamp(currentEndSec);
+        hudVisible = visible;
+        windowFocused = focused;
 
-                drawContext.drawTextWithShadow(client.textRenderer, Text.literal(currentPosString), barX, currentY, 0xFFAAAAAA);
+        int key = (visible ? 1 : 0) | (focused ? 2 : 0) | (pushed ? 4 : 0);
+        if (key == lastPollWakeKey) return;
+        lastPollWakeKey = key;
 
-                int endPosWidth = client.textRenderer.getWidth(endPosString);
-                int endPosTextX = barX + barWidth - endPosWidth;
+        PollScheduler poller = scheduler;
+        if (poller != null) poller.wake();
+    }
 
-                drawContext.drawTextWithShadow(client.textRenderer, Text.literal(endPosString), endPosTextX, currentY, 0xFFAAAAAA);
+    private static void startEventStream() {
+        if (eventStream != null) return;
+
+        MediaStateStream stream = switch (config.transport) {
+            case EVENT_STREAM -> new MediaEventStream(() -> baseUrl + EVENTS_PATH,
+                    (json, receivedNanos) -> applySessions(json, receivedNanos, receivedNanos));
+            // Pushed artwork goes straight to the pipeline, which decodes it when the state asks for its hash
+            case UNIX_SOCKET -> new MediaSocketStream(socketPath(), NowPlayingClient::applyMediaInfo, ARTWORK::offer);
+            case STDIO -> {
+                if (EXTERNAL_COMPANION) {
+                    // We don't own the process, so there is no pipe to read
+                    System.err.println("[NowPlayingMod] Stdio transport needs a companion launched by the mod. Falling back to polling.");
+                    yield null;
+                }
+                yield new MediaStdioStream(NowPlayingClient::applyMediaInfo, ARTWORK::offer);
             }
-        });
+            case POLLING -> null;
+        };
+        if (stream == null) return;
+
+        eventStream = stream;
+        stream.start();
     }
 
-    // -------------------------
-    // Polling + Image handling
-    // -------------------------
+    private static Path companionDir() {
+        String override = System.getProperty(COMPANION_DIR_PROPERTY);
+        if (override != null && !override.isEmpty()) return Path.of(override);
 
-    private static void startPolling() {
-        if (RUNNING.getAndSet(true)) return;
+        return FabricLoader.getInstance().getConfigDir().resolve("nowplaying").resolve("companion");
+    }
 
-        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "NowPlaying-Poller");
-            t.setDaemon(true);
-            return t;
-        });
+    private static void useCompanionPort(int port) {
+        String base = "http://localhost:" + port;
+        if (base.equals(baseUrl)) return;
+
+        infoEndpoint = URI.create(base + INFO_PATH);
+        imageEndpoint = URI.create(base + IMAGE_PATH);
+        baseUrl = base;
+    }
+
+    /**
+     * Cover of the shown session. A companion without sessions reports one with an empty id, and
+     * the socket and stdio transports only ever carry the companion's own pick.
+     */
+    private static URI artworkEndpoint() {
+        String session = shownSessionId;
+        MediaStateStream stream = eventStream;
+        if (session == null || session.isEmpty() || stream instanceof MediaSocketStream || stream instanceof MediaStdioStream) {
+            return imageEndpoint;
+        }
+        return URI.create(baseUrl + IMAGE_PATH + "?session=" + URLEncoder.encode(session, StandardCharsets.UTF_8));
+    }
+
+    private static Path socketPath() {
+        String override = System.getProperty(SOCKET_PATH_PROPERTY);
+        if (override != null && !override.isEmpty()) return Path.of(override);
+
+        return FabricLoader.getInstance().getConfigDir()
+                .resolve("nowplaying")
+                .resolve("nowPlayingServer")
+                .resolve("nowplaying.sock");
+    }
+
+    private static void pollOnce() {
+        // The supervisor restarts a dead companion; nothing to ask until it's ready again
+        if (!companionUp) return;
+
+        // While subscribed, state arrives through applyMediaInfo on the event thread.
+        // A stdio companion has no HTTP listener at all; its state only ever arrives on the pipe.
+        MediaStateStream stream = eventStream;
+        if (stream != null && (stream.isConnected() || stream instanceof MediaStdioStream)) return;
+
+        // A patch that doesn't apply (the event stream got in between) is asked for again in full
+        for (int attempt = 0; ; attempt++) {
+            long since = sessionsSeq;
+            URI endpoint = since != 0L ? URI.create(infoEndpoint + "&since=" + since) : infoEndpoint;
+
+            long requestNanos = System.nanoTime();
+            CompanionHttp.ResponseBuffer body = CompanionHttp.get(endpoint);
+            long receivedNanos = System.nanoTime();
+            if (body == null) {
+                clearSnapshotAndTexture();
+                return;
+            }
+            NowPlayingMetrics.POLL_LATENCY.record(receivedNanos - requestNanos);
 
-        scheduler.scheduleAtFixedRate(() -> {
             try {
-                pollOnce();
-            } catch (Throwable t) {
-                // Don’t crash the scheduler thread; show a stable error state.
-                System.err.println("[NowPlayingMod] Poll error: " + t.getMessage());
-                setErrorSnapshot("An error occurred.", "");
+                // Stream straight from the pooled buffer into the session table, no intermediate String
+                applySessions(body.reader(), requestNanos, receivedNanos);
+                return;
+            } catch (Exception e) {
+                if (since == 0L || attempt > 0) {
+                    clearSnapshotAndTexture();
+                    return;
+                }
             }
-        }, 0, 1, TimeUnit.SECONDS);
+        }
     }
 
-    private static void pollOnce() {
-        // Ensure server running
-        if (csharpProcess == null || !csharpProcess.isAlive()) {
-            SNAPSHOT.set(new Snapshot(
-                    "C# Server Not Running",
-                    "Please check logs.",
-                    false,
-                    false,
-                    false,
-                    0.0, 0.0, 0.0,
-                    false, 0, 0
-            ));
-
-            // Try to relaunch (lightly)
-            launchCSharpScript();
-            return;
+    /**
+     * Merges a sessions document, polled or pushed, into the session table and shows the session
+     * the configured rule picks. The snapshot is only rebuilt when that pick or its state changed,
+     * or its artwork is still outstanding; otherwise the document just feeds the clock.
+     */
+    private static synchronized void applySessions(Reader json, long requestNanos, long receivedNanos) throws IOException {
+        try {
+            MediaInfoReader.readSessions(json, SESSIONS, SESSIONS_DOCUMENT);
+        } finally {
+            sessionsSeq = SESSIONS.seq();
         }
+        sessionCount = SESSIONS.size();
 
-        MediaInfo info = fetchMediaInfo();
-        if (info == null) {
+        SessionTable.Session selected = SESSIONS.select(config.sessionRule, appPriority());
+        if (selected == null) {
+            shownSession = null;
+            shownSessionId = null;
             clearSnapshotAndTexture();
             return;
         }
 
-        String title = ellipsizeText(info.title != null ? info.title : "");
-        String artist = ellipsizeText(info.artist != null ? info.artist : "");
+        boolean unchanged = selected == shownSession && !SESSIONS.changedInLastUpdate(selected);
+        // An unchanged session still needs a pass for a cover that is on its way: one being fetched,
+        // or an unhashed one due for its periodic re-check
+        boolean artworkPending = config != null && config.showCoverArt
+                && (ARTWORK.fetching() || (selected.info.imageHash == null && imageCooldownPassed()));
+        if (unchanged && !artworkPending) {
+            PLAYBACK_CLOCK.observe(requestNanos, receivedNanos, SESSIONS_DOCUMENT.nowMs);
+            return;
+        }
+
+        shownSession = selected;
+        shownSessionId = selected.id;
+        SHOWN_INFO.copyFrom(selected.info);
+        SHOWN_INFO.nowMs = SESSIONS_DOCUMENT.nowMs;
+        SHOWN_INFO.requestNanos = requestNanos;
+        SHOWN_INFO.receivedNanos = receivedNanos;
+        applyMediaInfo(SHOWN_INFO);
+    }
 
-        String appName = info.app != null ? info.app : "";
-        boolean isSpotify = appName.toLowerCase(Locale.ROOT).contains("spotify");
+    /**
+     * {@link NowPlayingConfig#sessionAppPriority} as lower-case parts, parsed again only after a config change.
+     */
+    private static List<String> appPriority() {
+        int version = configVersion;
+        if (version != appPriorityVersion) {
+            List<String> parts = new ArrayList<>();
+            String raw = config.sessionAppPriority != null ? config.sessionAppPriority : "";
+            for (String part : raw.split(",")) {
+                String app = part.trim().toLowerCase(Locale.ROOT);
+                if (!app.isEmpty()) parts.add(app);
+            }
+            appPriority = List.copyOf(parts);
+            appPriorityVersion = version;
+        }
+        return appPriority;
+    }
 
+    /**
+     * Rebuilds the snapshot from a companion state, whether it was polled or pushed.
+     * Synchronized because the poller and the event stream can both deliver state.
+     */
+    private static synchronized void applyMediaInfo(MediaInfo info) {
         String status = info.status != null ? info.status : "";
         boolean isPlaying = "Playing".equalsIgnoreCase(status);
-
         boolean isActiveStatus = "Playing".equalsIgnoreCase(status) || "Paused".equalsIgnoreCase(status);
-        boolean isMediaActive =
-                isActiveStatus
-                        && !title.isEmpty()
-                        && !"(none)".equalsIgnoreCase(title)
-                        && !"(unknown)".equalsIgnoreCase(title);
 
-        double positionSec = parseTimeToSeconds(info.position);
-        double startSec = parseTimeToSeconds(info.start);
-        double endSec = parseTimeToSeconds(info.end);
+        double positionSec = info.positionMs / 1000.0;
+        double startSec = info.startMs / 1000.0;
+        double endSec = info.endMs / 1000.0;
 
         double targetProgress;
+        double targetStartSec;
         double targetPositionSec;
         double targetEndSec;
 
         if (endSec > startSec) {
+            targetStartSec = startSec;
             targetPositionSec = positionSec;
             targetEndSec = endSec;
 
-            targetProgress = (positionSec - startSec) / (endSec - startSec);
-            targetProgress = clamp01(targetProgress);
+            targetProgress = clamp01((positionSec - startSec) / (endSec - startSec));
         } else {
             targetProgress = 0.0;
+            targetStartSec = 0.0;
             targetPositionSec = 0.0;
             targetEndSec = 0.0;
         }
 
-        Snapshot prev = SNAPSHOT.get();
+        // Where the position was captured, in local monotonic time (arrival time for v1 companions)
+        PLAYBACK_CLOCK.observe(info.requestNanos, info.receivedNanos, info.nowMs);
+        long receivedNanos = info.receivedNanos != 0L ? info.receivedNanos : System.nanoTime();
+        long anchorNanos = PLAYBACK_CLOCK.toLocalNanos(info.anchorMs, receivedNanos);
+
+        // Text + playback targets; the cover stays whatever the artwork thread made it
+        int changes = STATE.update(prev -> {
+            // Versioned state says whether title, artist or app changed; pushed frames need the text derived again.
+            // The text stays whole; the HUD layout fits it into the panel.
+            String title;
+            String artist;
+            boolean isSpotify;
+            if (info.textVersion != 0L && info.textVersion == prev.textSource) {
+                title = prev.title;
+                artist = prev.artist;
+                isSpotify = prev.isSpotify;
+            } else {
+                title = info.title != null ? info.title : "";
+                artist = info.artist != null ? info.artist : "";
+                String appName = info.app != null ? info.app : "";
+                isSpotify = appName.toLowerCase(Locale.ROOT).contains("spotify");
+            }
 
-        // Update snapshot (text + playback targets)
-        Snapshot updated = prev.withTextAndPlayback(
-                title,
-                artist,
-                isSpotify,
-                isMediaActive,
-                isPlaying,
-                targetProgress,
-                targetPositionSec,
-                targetEndSec
-        );
-        SNAPSHOT.set(updated);
+            boolean isMediaActive =
+                    isActiveStatus
+                            && !title.isEmpty()
+                            && !"(none)".equalsIgnoreCase(title)
+                            && !"(unknown)".equalsIgnoreCase(title);
+
+            return prev.withTextAndPlayback(
+                    info.textVersion,
+                    title,
+                    artist,
+                    isSpotify,
+                    isMediaActive,
+                    isPlaying,
+                    targetProgress,
+                    targetStartSec,
+                    targetPositionSec,
+                    targetEndSec,
+                    info.playbackRate,
+                    anchorNanos
+            );
+        });
+        Snapshot s = STATE.get();
 
         // Decide if we should fetch image
-        boolean textChanged = !Objects.equals(title, lastTitleRaw) || !Objects.equals(artist, lastArtistRaw);
-        boolean appChanged = (isSpotify != lastIsSpotify);
+        boolean textChanged = SnapshotStore.Change.TEXT.in(changes);
 
-        lastTitleRaw = title;
-        lastArtistRaw = artist;
-        lastIsSpotify = isSpotify;
+        // With an advertised hash we know exactly when the art changed; otherwise re-check periodically
+        String imageHash = info.imageHash;
+        boolean artMayHaveChanged = imageHash != null
+                ? !imageHash.equals(ARTWORK.currentHash())
+                : (textChanged || imageCooldownPassed());
 
         boolean shouldTryImage =
-                isMediaActive
+                s.isMediaActive
                         && config != null
                         && config.showCoverArt
-                        && (textChanged || appChanged || !prev.imageLoaded || imageCooldownPassed());
+                        && (artMayHaveChanged || !s.imageLoaded);
 
         if (shouldTryImage) {
-            fetchAndMaybeUpdateTexture(textChanged || appChanged);
+            String trackKey = s.title + '\n' + s.artist + '\n' + s.isSpotify;
+            fetchAndMaybeUpdateTexture(imageHash, trackKey, textChanged);
         }
+    }
 
-        // If media not active, clear texture 
-        if (!isMediaActive) {
-            clearTextureOnly();
-        }
+    /**
+     * Consumers of snapshot changes that live outside the render thread. The render thread needs no
+     * listener: it reads the stamped versions of each snapshot it draws.
+     */
+    private static void registerStateListeners() {
+        // Fast polling for a while after anything the user would notice
+        STATE.subscribe((previous, current, changes) -> {
+            boolean noticed = SnapshotStore.Change.TEXT.in(changes) || SnapshotStore.Change.ACTIVE.in(changes);
+            if (noticed || previous.isPlaying != current.isPlaying) {
+                lastMediaChangeNanos = System.nanoTime();
+            }
+        }, SnapshotStore.Change.TEXT, SnapshotStore.Change.PLAYBACK, SnapshotStore.Change.ACTIVE);
+
+        // No media, no cover: drop it when media goes away, and any that lands after that
+        STATE.subscribe((previous, current, changes) -> {
+            if (current.isMediaActive) return;
+            if (SnapshotStore.Change.ACTIVE.in(changes) || current.imageLoaded) {
+                ARTWORK.cancel();
+                clearTextureOnly();
+            }
+        }, SnapshotStore.Change.ACTIVE, SnapshotStore.Change.ARTWORK);
     }
 
     private static boolean imageCooldownPassed() {
-        long last = lastImageFetchNanos.get();
-        long now = System.nanoTime();
-        return (now - last) >= IMAGE_FETCH_COOLDOWN_NANOS;
+        return (System.nanoTime() - lastImageFetchNanos) >= IMAGE_FETCH_COOLDOWN_NANOS;
     }
 
-    private static void fetchAndMaybeUpdateTexture(boolean eager) {
-        lastImageFetchNanos.set(System.nanoTime());
-
-        byte[] bytes = fetchBytes(IMAGE_ENDPOINT);
-        if (bytes == null || bytes.length == 0) {
-            clearTextureOnly();
-            return;
-        }
-
-        long crc = crc32(bytes);
-        long prevCrc = lastImageCrc.get();
-
-        // If not eager and same image, do nothing
-        if (!eager && prevCrc == crc) {
-            return;
-        }
-
-        // Decode image
-        NativeImage img;
-        try {
-            img = NativeImage.read(bytes);
-        } catch (Exception e) {
-            System.err.println("[NowPlayingMod] Failed to decode album art: " + e.getMessage());
-            clearTextureOnly();
-            return;
-        }
-
-        int w = img.getWidth();
-        int h = img.getHeight();
-
-        // Register texture on MC thread
-        NativeImage finalImg = img;
-        MinecraftClient.getInstance().execute(() -> {
-            try {
-                MinecraftClient.getInstance().getTextureManager().destroyTexture(NOW_PLAYING_IMAGE_ID);
-                NativeImageBackedTexture texture = new NativeImageBackedTexture(() -> "nowplaying_media", finalImg);
-                MinecraftClient.getInstance().getTextureManager().registerTexture(NOW_PLAYING_IMAGE_ID, texture);
+    private static void fetchAndMaybeUpdateTexture(String imageHash, String trackKey, boolean eager) {
+        lastImageFetchNanos = System.nanoTime();
 
-                lastImageCrc.set(crc);
+        // Only ask for a conditional response if the art we'd keep is actually on screen
+        String knownHash = STATE.get().imageLoaded ? ARTWORK.currentHash() : null;
 
-                // Update snapshot with image info
-                Snapshot s = SNAPSHOT.get();
-                SNAPSHOT.set(s.withImage(true, w, h));
-            } catch (Exception ex) {
-                System.err.println("[NowPlayingMod] Failed to register texture: " + ex.getMessage());
-
-                // Make sure we free the NativeImage if registration failed
-                try { finalImg.close(); } catch (Exception ignored) {}
-
-                Snapshot s = SNAPSHOT.get();
-                SNAPSHOT.set(s.withImage(false, 0, 0));
-            }
-        });
-    }
-
-    private static MediaInfo fetchMediaInfo() {
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(INFO_ENDPOINT);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(READ_TIMEOUT_MS);
-
-            int status = conn.getResponseCode();
-            if (status != 200) return null;
-
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                StringBuilder content = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) content.append(line);
-                return GSON.fromJson(content.toString(), MediaInfo.class);
-            }
-        } catch (Exception e) {
-            return null;
-        } finally {
-            if (conn != null) conn.disconnect();
-        }
-    }
-
-    private static byte[] fetchBytes(String urlStr) {
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(READ_TIMEOUT_MS);
-            conn.setRequestMethod("GET");
-
-            if (conn.getResponseCode() != 200) return null;
-
-            try (InputStream in = conn.getInputStream();
-                 ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                byte[] buf = new byte[8192];
-                int n;
-                while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
-                return out.toByteArray();
-            }
-        } catch (Exception e) {
-            return null;
-        } finally {
-            if (conn != null) conn.disconnect();
-        }
+        ARTWORK.request(imageHash, trackKey, eager, knownHash);
     }
 
+    /**
+     * The texture follows through the state listener, which clears it when media goes away.
+     */
     private static void clearSnapshotAndTexture() {
-        SNAPSHOT.set(new Snapshot(
+        STATE.set(new Snapshot(
                 "",
                 "",
                 false,
                 false,
                 false,
-                0.0, 0.0, 0.0,
+                0.0, 0.0, 0.0, 0.0, 1.0, 0L,
                 false, 0, 0
         ));
-        clearTextureOnly();
     }
 
     private static void clearTextureOnly() {
-        Snapshot s = SNAPSHOT.get();
-        if (s.imageLoaded || s.coverTexW != 0 || s.coverTexH != 0) {
-            SNAPSHOT.set(s.withImage(false, 0, 0));
-        }
-        MinecraftClient.getInstance().execute(() ->
-                MinecraftClient.getInstance().getTextureManager().destroyTexture(NOW_PLAYING_IMAGE_ID)
-        );
+        // Whatever comes next must be registered again, even if it is the same art
+        ARTWORK.forgetCurrent();
+
+        STATE.update(s -> s.withImage(false, 0, 0));
+
+        // No-op (no client-thread task) unless a cover is actually shown or pending
+        COVER_TEXTURES.clear();
     }
 
     private static void setErrorSnapshot(String title, String artist) {
-        SNAPSHOT.set(new Snapshot(
+        STATE.set(new Snapshot(
                 title,
                 artist,
                 false,
                 false,
                 false,
-                0.0, 0.0, 0.0,
+                0.0, 0.0, 0.0, 0.0, 1.0, 0L,
                 false, 0, 0
         ));
-        clearTextureOnly();
     }
 
     // -------------------------
     // Process management
     // -------------------------
 
-    private static void launchCSharpScript() {
-        if (csharpProcess != null && csharpProcess.isAlive()) {
-            return;
-        }
-
-        try {
-            Path configDir = FabricLoader.getInstance().getConfigDir();
-            Path modConfigDir = configDir.resolve("nowplaying");
-            Path csharpExeFolder = modConfigDir.resolve("nowPlayingServer");
-            File csharpExeFile = csharpExeFolder.resolve("ConsoleApp6.exe").toFile();
-
-            if (!csharpExeFile.exists()) {
-                System.err.println("[NowPlayingMod ERROR] C# server executable not found at: " + csharpExeFile.getAbsolutePath());
-                System.err.println("[NowPlayingMod INFO] Ensure the published server folder exists inside: " + modConfigDir.toAbsolutePath());
-                return;
-            }
+    /**
+     * Supervisor thread. Attaches to the shared companion, launching it if no instance has yet;
+     * for stdio, starts a child of our own whose output the supervisor reads.
+     */
+    private static Process startCompanionProcess() throws IOException {
+        SharedCompanion shared = sharedCompanion;
+        if (shared == null) return launchCompanion(null, null);
+
+        Process p = shared.acquire(NowPlayingClient::launchCompanion,
+                endpoint -> CompanionHttp.get(endpoint.uri(INFO_PATH)) != null);
+        useCompanionPort(shared.endpoint().port());
+        return p;
+    }
 
-            ProcessBuilder pb = new ProcessBuilder(csharpExeFile.getAbsolutePath());
-            pb.directory(csharpExeFile.getParentFile());
-            pb.redirectErrorStream(true);
+    /**
+     * @param portFile where a shared companion publishes the port it picked, or null for a stdio child
+     * @param logFile  output of a shared companion
+     */
+    private static Process launchCompanion(Path portFile, Path logFile) throws IOException {
+        File csharpExeFile = NowPlayingFileManager.getExecutablePath().toFile();
 
-            csharpProcess = pb.start();
-            System.out.println("[NowPlayingMod] C# server launched. PID: " + csharpProcess.pid());
+        if (!csharpExeFile.exists()) {
+            System.err.println("[NowPlayingMod INFO] Ensure the published server folder exists inside: " + NowPlayingFileManager.getTargetDirectory().toAbsolutePath());
+            throw new IOException("C# server executable not found at: " + csharpExeFile.getAbsolutePath());
+        }
 
-            Thread logThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(csharpProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("[C# Server] " + line);
-                    }
-                } catch (Exception e) {
-                    System.err.println("[NowPlayingMod] Error reading C# server output: " + e.getMessage());
-                }
-            }, "NowPlaying-CSharp-Log");
-            logThread.setDaemon(true);
-            logThread.start();
-
-            Runtime.getRuntime().addShutdownHook(new Thread(NowPlayingClient::shutdownEverything, "NowPlaying-ShutdownHook"));
-        } catch (Exception e) {
-            System.err.println("[NowPlayingMod ERROR] Failed to launch C# server: " + e.getMessage());
-            e.printStackTrace();
+        ProcessBuilder pb = new ProcessBuilder(csharpExeFile.getAbsolutePath());
+        if (portFile == null) {
+            pb.command().add("--stdio");
+        } else {
+            pb.command().addAll(List.of("--port", "0", "--port-file", portFile.toAbsolutePath().toString()));
+            // It outlives us while other instances use it, so it can't write into our pipe
+            pb.redirectOutput(logFile.toFile());
         }
+        pb.directory(csharpExeFile.getParentFile());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        companionLaunchNanos = System.nanoTime();
+        return p;
     }
 
-    private static void stopCSharpScript() {
-        Process p = csharpProcess;
-        if (p == null) return;
-
-        try {
-            if (p.isAlive()) {
-                p.destroy();
-                boolean terminated = p.waitFor(10, TimeUnit.SECONDS);
-                if (!terminated) p.destroyForcibly();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            try { p.destroyForcibly(); } catch (Exception ignored) {}
-        } finally {
-            csharpProcess = null;
+    private static void shutdownEverything() {
+        synchronized (LIFECYCLE_LOCK) {
+            shutdownRequested = true;
+            shutdownLocked();
         }
     }
 
-    private static void shutdownEverything() {
+    private static void shutdownLocked() {
+        // A bootstrap still extracting sees shutdownRequested and starts nothing more
+        // Stop push updates
+        MediaStateStream stream = eventStream;
+        if (stream != null) {
+            stream.stop();
+            eventStream = null;
+        }
+
         // Stop polling
-        RUNNING.set(false);
-        if (scheduler != null) {
+        PollScheduler poller = scheduler;
+        if (poller != null) {
             try {
-                scheduler.shutdownNow();
+                poller.stop();
             } catch (Exception ignored) {}
             scheduler = null;
         }
 
-        // Stop companion
-        stopCSharpScript();
+        // Stop companion; a shared one only when this is the last instance using it
+        CompanionSupervisor companion = supervisor;
+        SharedCompanion shared = sharedCompanion;
+        if (companion != null && shared == null) {
+            companion.stop();
+        } else if (shared != null) {
+            if (companion != null) companion.detach();
+            if (shared.leave()) {
+                System.out.println("[NowPlayingMod] Last instance out: shared C# server stopped.");
+            } else {
+                System.out.println("[NowPlayingMod] Shared C# server is still in use by other instances; leaving it running.");
+            }
+        }
+        supervisor = null;
+        sharedCompanion = null;
+        companionUp = false;
+
+        // Stop the artwork thread and drop decoded cache entries
+        ARTWORK.shutdown();
+        System.out.println("[NowPlayingMod] Album art cache: " + ARTWORK_CACHE);
+        ARTWORK_CACHE.clearMemory();
 
         // Clear texture
         clearTextureOnly();
@@ -768,65 +994,10 @@ public class NowPlayingClient implements ClientModInitializer, ModMenuApi {
                 && s.targetEndSec > 0.0;
     }
 
-    private static boolean shouldDrawPanel() {
-        return config.showArtistName
-                || config.showTimeline
-                || config.showCoverArt
-                || config.showMediaTitle
-                || config.showPlayStatusIcon;
-    }
-
-    private static String parseSecondsToTimeStamp(double seconds) {
-        if (Double.isNaN(seconds) || seconds < 0) return "0:00";
-
-        int totalSeconds = (int) Math.round(seconds);
-
-        int hours = totalSeconds / 3600;
-        int minutes = (totalSeconds % 3600) / 60;
-        int remainingSeconds = totalSeconds % 60;
-
-        if (hours > 0) {
-            return String.format("%d:%02d:%02d", hours, minutes, remainingSeconds);
-        }
-        return String.format("%d:%02d", minutes, remainingSeconds);
-    }
-
-    private static double parseTimeToSeconds(String time) {
-        if (time == null || time.isEmpty() || "(unknown)".equalsIgnoreCase(time)) return 0.0;
-        try {
-            String[] parts = time.split(":");
-            if (parts.length == 3) {
-                int hours = Integer.parseInt(parts[0]);
-                int minutes = Integer.parseInt(parts[1]);
-                double seconds = Double.parseDouble(parts[2]);
-                return hours * 3600.0 + minutes * 60.0 + seconds;
-            } else if (parts.length == 2) {
-                int minutes = Integer.parseInt(parts[0]);
-                double seconds = Double.parseDouble(parts[1]);
-                return minutes * 60.0 + seconds;
-            }
-            return 0.0;
-        } catch (Exception e) {
-            return 0.0;
-        }
-    }
-
-    private static String ellipsizeText(String text) {
-        if (text == null) return "";
-        if (text.length() > 25) return text.substring(0, 25) + "...";
-        return text;
-    }
-
     private static double clamp01(double v) {
         return Math.max(0.0, Math.min(1.0, v));
     }
 
-    private static long crc32(byte[] bytes) {
-        CRC32 crc = new CRC32();
-        crc.update(bytes);
-        return crc.getValue();
-    }
-
     @Override
     public ConfigScreenFactory<?> getModConfigScreenFactory() {
         return parent -> AutoConfig.getConfigScreen(NowPlayingConfig.class, parent).get();
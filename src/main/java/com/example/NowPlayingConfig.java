@@ -13,6 +13,21 @@ public class NowPlayingConfig implements ConfigData {
         RIGHT
     }
 
+    // How the mod receives media state from the companion
+    public enum Transport {
+        POLLING,
+        EVENT_STREAM,
+        UNIX_SOCKET,
+        STDIO
+    }
+
+    // Which media session the HUD shows when several apps have one
+    public enum SessionRule {
+        MOST_RECENTLY_PLAYING,
+        APP_PRIORITY,
+        COMPANION
+    }
+
     // ─────────────────────────────
     // Layout
     // ─────────────────────────────
@@ -24,6 +39,16 @@ public class NowPlayingConfig implements ConfigData {
     @ConfigEntry.BoundedDiscrete(min = 0, max = 100)
     public int yPosition = 10;
 
+    /**
+     * Widest the panel gets; titles and artists that don't fit are cut with an ellipsis, or scrolled
+     */
+    @ConfigEntry.Gui.Tooltip
+    @ConfigEntry.BoundedDiscrete(min = 120, max = 600)
+    public int maxPanelWidth = 240;
+
+    @ConfigEntry.Gui.Tooltip
+    public boolean scrollLongText = false;
+
     /**
      * Background opacity (0 = fully transparent, 100 = fully opaque)
      */
@@ -31,6 +56,12 @@ public class NowPlayingConfig implements ConfigData {
     @ConfigEntry.BoundedDiscrete(min = 0, max = 100)
     public int backgroundOpacity = 55;
 
+    /**
+     * Panel background and progress bar take their colours from the cover art
+     */
+    @ConfigEntry.Gui.Tooltip
+    public boolean themeFromCover = false;
+
     // ─────────────────────────────
     // Visibility toggles
     // ─────────────────────────────
@@ -49,4 +80,58 @@ public class NowPlayingConfig implements ConfigData {
 
     @ConfigEntry.Gui.Tooltip
     public boolean showPlayStatusIcon = true;
+
+    // ─────────────────────────────
+    // Companion
+    // ─────────────────────────────
+
+    /**
+     * EVENT_STREAM subscribes to pushed updates and only polls while the stream is down.
+     * UNIX_SOCKET does the same over binary frames on a local socket, with artwork pushed inline.
+     * STDIO reads those frames from the companion's output instead; it has no listener to poll.
+     */
+    @ConfigEntry.Gui.Tooltip
+    public Transport transport = Transport.EVENT_STREAM;
+
+    /**
+     * Playing sessions always win over paused ones. MOST_RECENTLY_PLAYING then shows the one that
+     * started last; APP_PRIORITY first goes by sessionAppPriority; COMPANION keeps the companion's
+     * own pick. The socket and stdio transports only carry the companion's pick.
+     */
+    @ConfigEntry.Gui.Tooltip
+    public SessionRule sessionRule = SessionRule.MOST_RECENTLY_PLAYING;
+
+    /**
+     * Comma-separated app names, or parts of them, highest priority first
+     */
+    @ConfigEntry.Gui.Tooltip
+    public String sessionAppPriority = "spotify, music, vlc, foobar2000";
+
+    // ─────────────────────────────
+    // Album art cache
+    // ─────────────────────────────
+
+    /**
+     * Budget for decoded covers kept in memory (0 disables the memory tier)
+     */
+    @ConfigEntry.Gui.Tooltip
+    @ConfigEntry.BoundedDiscrete(min = 0, max = 256)
+    public int artCacheMemoryMb = 32;
+
+    /**
+     * Budget for encoded covers kept under config/nowplaying/artCache (0 disables the disk tier)
+     */
+    @ConfigEntry.Gui.Tooltip
+    @ConfigEntry.BoundedDiscrete(min = 0, max = 1024)
+    public int artCacheDiskMb = 64;
+
+    // ─────────────────────────────
+    // Debug
+    // ─────────────────────────────
+
+    /**
+     * Shows pipeline metrics (latencies, bytes, restarts) beside the panel; /nowplaying metrics dump writes them as JSON
+     */
+    @ConfigEntry.Gui.Tooltip
+    public boolean showDebugOverlay = false;
 }
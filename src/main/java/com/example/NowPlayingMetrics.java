@@ -0,0 +1,324 @@
+package com.example;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms for the whole pipeline, from the companion request to
+ * the HUD frame.
+ *
+ * Cheap enough to leave on: recording is a few atomic adds into arrays allocated up front, never an
+ * allocation or a lock. Histograms use fixed log-linear buckets (four per power of two, so any
+ * value lands in a bucket at most 25% wide) instead of keeping samples. Text is only produced when
+ * the debug overlay refreshes or the metrics are dumped.
+ */
+final class NowPlayingMetrics {
+
+    private NowPlayingMetrics() {}
+
+    enum Unit {
+        NANOS,
+        MILLIS,
+        BYTES,
+        COUNT
+    }
+
+    // Registration order is display order
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Gauge> GAUGES = new CopyOnWriteArrayList<>();
+
+    static final Histogram POLL_LATENCY = histogram("pollLatency", "Poll RTT");
+    static final Histogram ARTWORK_DECODE = histogram("artworkDecode", "Art decode");
+    static final Histogram TEXTURE_UPLOAD = histogram("textureUpload", "Tex upload");
+    static final Histogram HUD_RENDER = histogram("hudRender", "HUD frame");
+
+    static final Counter BYTES_FETCHED = counter("bytesFetched", "Bytes in", Unit.BYTES);
+    static final Counter MAIN_THREAD_TASKS = counter("mainThreadTasks", "Main tasks", Unit.COUNT);
+    static final Counter COMPANION_RESTARTS = counter("companionRestarts", "Restarts", Unit.COUNT);
+
+    private static volatile long resetAtMillis = System.currentTimeMillis();
+
+    private static Histogram histogram(String name, String label) {
+        Histogram h = new Histogram(name, label);
+        HISTOGRAMS.add(h);
+        return h;
+    }
+
+    private static Counter counter(String name, String label, Unit unit) {
+        Counter c = new Counter(name, label, unit);
+        COUNTERS.add(c);
+        return c;
+    }
+
+    /**
+     * Registers a value that is read when displayed or dumped; negative values show as "off".
+     */
+    static void gauge(String name, String label, Unit unit, LongSupplier value) {
+        GAUGES.add(new Gauge(name, label, unit, value));
+    }
+
+    /**
+     * Zeroes every histogram and counter, e.g. before reproducing a stutter.
+     */
+    static void reset() {
+        for (Histogram h : HISTOGRAMS) h.reset();
+        for (Counter c : COUNTERS) c.reset();
+        resetAtMillis = System.currentTimeMillis();
+    }
+
+    // -------------------------
+    // Series
+    // -------------------------
+
+    /**
+     * Distribution of durations in nanoseconds.
+     */
+    static final class Histogram {
+        // Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS buckets per power of two
+        private static final int SUB_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        final String name;
+        final String label;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+                // Lost a race with another maximum; retry against it
+            }
+        }
+
+        /**
+         * Records the time elapsed since {@code startNanos} ({@link System#nanoTime()}).
+         */
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        long mean() {
+            long n = count.get();
+            return n == 0 ? 0 : sum.get() / n;
+        }
+
+        /**
+         * Upper bound of the bucket holding the {@code q}-quantile, or 0 without samples.
+         */
+        long percentile(double q) {
+            long n = count.get();
+            if (n == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        }
+
+        /**
+         * Exclusive upper bound of {@code bucket}.
+         */
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket + 1;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long upper = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift;
+            return upper > 0 ? upper : Long.MAX_VALUE;
+        }
+    }
+
+    static final class Counter {
+        final String name;
+        final String label;
+        final Unit unit;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name, String label, Unit unit) {
+            this.name = name;
+            this.label = label;
+            this.unit = unit;
+        }
+
+        void increment() {
+            value.incrementAndGet();
+        }
+
+        void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        long get() {
+            return value.get();
+        }
+
+        private void reset() {
+            value.set(0);
+        }
+    }
+
+    private record Gauge(String name, String label, Unit unit, LongSupplier value) {
+        long read() {
+            try {
+                return value.getAsLong();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+    }
+
+    // -------------------------
+    // Output
+    // -------------------------
+
+    /**
+     * Replaces the contents of {@code out} with one human-readable line per series.
+     */
+    static void describe(List<String> out) {
+        out.clear();
+        for (Histogram h : HISTOGRAMS) {
+            if (h.count() == 0) {
+                out.add(h.label + ": -");
+                continue;
+            }
+            out.add(h.label + ": p50 " + format(h.percentile(0.50), Unit.NANOS)
+                    + "  p99 " + format(h.percentile(0.99), Unit.NANOS)
+                    + "  max " + format(h.max(), Unit.NANOS)
+                    + "  (" + h.count() + ")");
+        }
+        for (Counter c : COUNTERS) {
+            out.add(c.label + ": " + format(c.get(), c.unit));
+        }
+        for (Gauge g : GAUGES) {
+            long v = g.read();
+            out.add(g.label() + ": " + (v < 0 ? "off" : format(v, g.unit())));
+        }
+    }
+
+    static String format(long value, Unit unit) {
+        return switch (unit) {
+            case NANOS -> value < 1_000_000
+                    ? String.format(Locale.ROOT, "%.0fµs", value / 1_000.0)
+                    : String.format(Locale.ROOT, "%.1fms", value / 1_000_000.0);
+            case MILLIS -> value + "ms";
+            case BYTES -> value < 1024 * 1024
+                    ? String.format(Locale.ROOT, "%.1fKB", value / 1024.0)
+                    : String.format(Locale.ROOT, "%.1fMB", value / (1024.0 * 1024.0));
+            case COUNT -> Long.toString(value);
+        };
+    }
+
+    /**
+     * Writes every series as JSON to a new timestamped file in {@code dir}.
+     *
+     * @return the written file
+     */
+    static Path dump(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve("metrics-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("dumpedAtMillis").value(System.currentTimeMillis());
+            json.name("sinceMillis").value(resetAtMillis);
+
+            json.name("histograms").beginObject();
+            for (Histogram h : HISTOGRAMS) {
+                json.name(h.name).beginObject();
+                json.name("unit").value("ns");
+                json.name("count").value(h.count());
+                json.name("mean").value(h.mean());
+                json.name("p50").value(h.percentile(0.50));
+                json.name("p90").value(h.percentile(0.90));
+                json.name("p99").value(h.percentile(0.99));
+                json.name("max").value(h.max());
+
+                // Only occupied buckets; bounds are [lower, upper)
+                json.name("buckets").beginArray();
+                for (int i = 0; i < Histogram.BUCKETS; i++) {
+                    long n = h.buckets.get(i);
+                    if (n == 0) continue;
+                    json.beginObject();
+                    json.name("lower").value(Histogram.lowerBound(i));
+                    json.name("upper").value(Histogram.upperBound(i));
+                    json.name("count").value(n);
+                    json.endObject();
+                }
+                json.endArray();
+                json.endObject();
+            }
+            json.endObject();
+
+            json.name("counters").beginObject();
+            for (Counter c : COUNTERS) json.name(c.name).value(c.get());
+            json.endObject();
+
+            json.name("gauges").beginObject();
+            for (Gauge g : GAUGES) json.name(g.name()).value(g.read());
+            json.endObject();
+
+            json.endObject();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example;
+
+/**
+ * Maps the companion's wall clock onto this JVM's monotonic clock, so a playback anchor
+ * ("position P at companion time T, moving at rate R") can be extrapolated locally every frame.
+ *
+ * Offsets are estimated like NTP: the companion's {@code nowMs} is assumed to be taken halfway
+ * through the request. Of the last few samples the one with the shortest round trip wins, since
+ * queueing delay only ever makes a sample worse. Pushed state has no round trip; over a local
+ * connection its one-way delay is negligible, so it counts as a zero-RTT sample.
+ */
+final class PlaybackClock {
+
+    private static final int WINDOW = 8;
+
+    // Ring buffer of (offset, rtt) samples; offset = companion time - local monotonic time, in nanos
+    private final long[] offsets = new long[WINDOW];
+    private final long[] roundTrips = new long[WINDOW];
+    private int count;
+    private int next;
+
+    private volatile boolean synced;
+    private volatile long offsetNanos;
+    private volatile long roundTripNanos;
+
+    /**
+     * Records one exchange.
+     *
+     * @param requestNanos  local {@link System#nanoTime()} before sending (equal to {@code responseNanos} for pushes)
+     * @param responseNanos local {@link System#nanoTime()} after receiving
+     * @param serverNowMs   companion wall clock when it wrote the response, 0 if unknown
+     */
+    synchronized void observe(long requestNanos, long responseNanos, long serverNowMs) {
+        long rtt = responseNanos - requestNanos;
+        if (serverNowMs <= 0 || rtt < 0) return;
+
+        offsets[next] = serverNowMs * 1_000_000L - (requestNanos + rtt / 2);
+        roundTrips[next] = rtt;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) count++;
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (roundTrips[i] < roundTrips[best]) best = i;
+        }
+        offsetNanos = offsets[best];
+        roundTripNanos = roundTrips[best];
+        synced = true;
+    }
+
+    /**
+     * Converts a companion timestamp into local monotonic time.
+     *
+     * @param serverMs      companion wall clock, 0 if the companion didn't send an anchor
+     * @param receivedNanos when the state arrived; used when there is no anchor or no clock sync
+     *                      yet, and as an upper bound since nothing can be captured after it arrived
+     */
+    long toLocalNanos(long serverMs, long receivedNanos) {
+        if (serverMs <= 0 || !synced) return receivedNanos;
+        return Math.min(serverMs * 1_000_000L - offsetNanos, receivedNanos);
+    }
+
+    boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Round trip of the sample the offset currently comes from.
+     */
+    long roundTripNanos() {
+        return roundTripNanos;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the poll task at an interval picked from the current playback and game state.
+ *
+ * Every run is scheduled one-shot after the previous one finished (fixed delay), so a stall or a
+ * slow companion never produces a burst of catch-up polls like {@code scheduleAtFixedRate} does.
+ * The mode is re-evaluated after each poll; {@link #wake()} polls right away when the inputs to
+ * that decision changed, e.g. the HUD became visible again while {@link Mode#SUSPENDED}.
+ */
+final class PollScheduler {
+
+    enum Mode {
+        /** Near a track end or right after a change, where a late update is most visible. */
+        FAST(250),
+        /** Playing. */
+        NORMAL(1000),
+        /** Paused, idle, unfocused, or state is already pushed and only the companion is checked. */
+        SLOW(5000),
+        /** Nothing would be rendered, or the companion is down; no polls until {@link #wake()}. */
+        SUSPENDED(-1);
+
+        final long intervalMs;
+
+        Mode(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    private final Runnable task;
+    private final Supplier<Mode> modeSupplier;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "NowPlaying-Poller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by "this"
+    private boolean running;
+    private ScheduledFuture<?> pending;
+
+    private volatile Mode mode = Mode.NORMAL;
+
+    /**
+     * @param task         the poll; exceptions are the task's own business and must not escape
+     * @param modeSupplier picks the mode for the next interval; called on the poller thread
+     */
+    PollScheduler(Runnable task, Supplier<Mode> modeSupplier) {
+        this.task = task;
+        this.modeSupplier = modeSupplier;
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        pending = executor.schedule(this::runOnce, 0, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (pending != null) pending.cancel(false);
+        pending = null;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Any thread. Polls as soon as possible, unless a poll is already due or running
+     * (that one re-evaluates the mode when it finishes anyway).
+     */
+    synchronized void wake() {
+        if (!running) return;
+        if (pending != null) {
+            if (pending.getDelay(TimeUnit.MILLISECONDS) <= 0 && !pending.isDone()) return;
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::runOnce, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Current poll interval in milliseconds, or -1 while suspended; each {@link Mode} has its own,
+     * so this also tells the mode apart (the {@code pollIntervalMs} metric).
+     */
+    long intervalMillis() {
+        return mode.intervalMs;
+    }
+
+    private void runOnce() {
+        try {
+            task.run();
+        } finally {
+            Mode next;
+            try {
+                next = modeSupplier.get();
+            } catch (RuntimeException e) {
+                next = Mode.NORMAL;
+            }
+
+            synchronized (this) {
+                mode = next;
+                if (running) {
+                    pending = next == Mode.SUSPENDED
+                            ? null
+                            : executor.schedule(this::runOnce, next.intervalMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Every media session the companion reports, kept across polls and diffed in place: an update
+ * only copies the sessions whose state changed and drops the ones that went away, and a patch
+ * only writes the fields it names. Remembers the sequence number of the last document, which the
+ * client sends back to get the next one as a patch. Picks the session the HUD shows by the
+ * configured {@link NowPlayingConfig.SessionRule}.
+ *
+ * Not thread-safe; the client updates and selects under its own lock.
+ */
+final class SessionTable {
+
+    static final class Session {
+        final String id;
+        final MediaInfo info = new MediaInfo();
+
+        // Update in which it last started playing (0 while not playing), last seen playing (0 if
+        // never) and last changed; update numbers order events without relying on clocks
+        long playingSince;
+        long lastPlaying;
+        long changedIn;
+        private long seenIn;
+
+        Session(String id) {
+            this.id = id;
+            info.reset();
+        }
+
+        boolean isPlaying() {
+            return "Playing".equalsIgnoreCase(info.status);
+        }
+    }
+
+    private final Map<String, Session> sessions = new LinkedHashMap<>();
+    private String reportedCurrent = "";
+    private long update;
+    private long seq;
+    private long textVersions;
+
+    private int added;
+    private int changed;
+    private int removed;
+
+    void beginUpdate() {
+        update++;
+        added = 0;
+        changed = 0;
+        removed = 0;
+    }
+
+    /**
+     * Merges the state of one session from the current update; copies it only if it changed.
+     */
+    void put(String id, MediaInfo state) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            s = new Session(id);
+            sessions.put(id, s);
+            s.info.copyFrom(state);
+            s.info.textVersion = ++textVersions;
+            s.changedIn = update;
+            added++;
+        } else if (s.seenIn == update) {
+            // Listed twice; the first one counts
+            return;
+        } else if (!s.info.sameStateAs(state)) {
+            long textVersion = s.info.sameTextAs(state) ? s.info.textVersion : ++textVersions;
+            s.info.copyFrom(state);
+            s.info.textVersion = textVersion;
+            s.changedIn = update;
+            changed++;
+        }
+        s.seenIn = update;
+        trackPlaying(s);
+    }
+
+    /**
+     * Starts patching one session in place; write the patched fields into its {@link Session#info},
+     * then call {@link #endPatch}. A new session only joins the table there.
+     */
+    Session beginPatch(String id) {
+        Session s = sessions.get(id);
+        return s != null ? s : new Session(id);
+    }
+
+    /**
+     * @param textChanged whether the patch named the title, artist or app
+     */
+    void endPatch(Session s, boolean textChanged) {
+        if (sessions.putIfAbsent(s.id, s) == null) {
+            added++;
+        } else {
+            changed++;
+        }
+        s.changedIn = update;
+        s.seenIn = update;
+        if (textChanged || s.info.textVersion == 0) s.info.textVersion = ++textVersions;
+        trackPlaying(s);
+    }
+
+    void remove(String id) {
+        if (sessions.remove(id) != null) removed++;
+    }
+
+    private void trackPlaying(Session s) {
+        if (s.isPlaying()) {
+            if (s.playingSince == 0) s.playingSince = update;
+            s.lastPlaying = update;
+        } else {
+            s.playingSince = 0;
+        }
+    }
+
+    /**
+     * Ends the update. Without a commit (malformed document) nothing is removed.
+     *
+     * @param reportedCurrent the companion's own pick, empty if it has none, null if unchanged
+     * @param seq the document's sequence number
+     * @param complete whether the update listed every session, so the ones it didn't are gone
+     */
+    void commit(String reportedCurrent, long seq, boolean complete) {
+        if (reportedCurrent != null) this.reportedCurrent = reportedCurrent;
+        this.seq = seq;
+        if (!complete) return;
+
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (it.next().seenIn != update) {
+                it.remove();
+                removed++;
+            }
+        }
+    }
+
+    /**
+     * Sequence number of the last document, 0 if there is none to build on.
+     */
+    long seq() {
+        return seq;
+    }
+
+    /**
+     * Forgets the sequence number, so the companion is asked for a full document next time.
+     */
+    void invalidate() {
+        seq = 0;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    int added() {
+        return added;
+    }
+
+    int changed() {
+        return changed;
+    }
+
+    int removed() {
+        return removed;
+    }
+
+    /**
+     * Whether {@code s} was added or changed by the last update.
+     */
+    boolean changedInLastUpdate(Session s) {
+        return s.changedIn == update;
+    }
+
+    /**
+     * The session to show, or null if there is none.
+     *
+     * Playing sessions always beat paused or stopped ones. Among those, {@code APP_PRIORITY}
+     * prefers apps earlier in {@code appPriority} (lower-case parts of the app id); then the most
+     * recently started (or, when nothing plays, most recently playing) session wins, and on a tie
+     * the companion's own pick. {@code COMPANION} takes the companion's pick as is.
+     */
+    Session select(NowPlayingConfig.SessionRule rule, List<String> appPriority) {
+        Session reported = sessions.get(reportedCurrent);
+        if (rule == NowPlayingConfig.SessionRule.COMPANION && reported != null) return reported;
+
+        Session best = null;
+        int bestRank = 0;
+        for (Session s : sessions.values()) {
+            int rank = rule == NowPlayingConfig.SessionRule.APP_PRIORITY ? rank(s, appPriority) : 0;
+            if (best == null || better(s, rank, best, bestRank, reported)) {
+                best = s;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private static boolean better(Session a, int rankA, Session b, int rankB, Session reported) {
+        boolean playingA = a.isPlaying();
+        boolean playingB = b.isPlaying();
+        if (playingA != playingB) return playingA;
+        if (rankA != rankB) return rankA < rankB;
+
+        long recentA = playingA ? a.playingSince : a.lastPlaying;
+        long recentB = playingB ? b.playingSince : b.lastPlaying;
+        if (recentA != recentB) return recentA > recentB;
+        return a == reported;
+    }
+
+    private static int rank(Session s, List<String> appPriority) {
+        if (s.info.app == null || appPriority.isEmpty()) return Integer.MAX_VALUE;
+
+        String app = s.info.app.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < appPriority.size(); i++) {
+            if (app.contains(appPriority.get(i))) return i;
+        }
+        return Integer.MAX_VALUE;
+    }
+}
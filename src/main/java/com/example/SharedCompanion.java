@@ -0,0 +1,376 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * One companion per user, shared by every game instance that uses the same directory, and shut
+ * down by the last instance to leave.
+ *
+ * <pre>
+ * companion.lock      locked while an instance decides to attach, launch or shut down
+ * companion.port      "port pid", written by the companion once its listener is up (or for it, see below)
+ * companion.log       output of the shared companion, which must not depend on any instance's pipe
+ * clients/*.lease     one per running instance, locked for as long as it runs
+ * </pre>
+ *
+ * The operating system drops the lease lock when an instance dies, so a crashed instance is no
+ * longer counted and never keeps the companion alive on its own. No Fabric dependency, so the dev
+ * tools can share the stand-in between processes.
+ *
+ * A companion built before {@code --port-file} ignores it and listens on its fixed port. When the
+ * port file doesn't show up and that port answers, the port file is written on its behalf, so the
+ * other instances still find it.
+ */
+final class SharedCompanion {
+
+    interface Launch {
+        /**
+         * Starts a companion that picks a free port, publishes it in {@code portFile} and writes its
+         * output to {@code logFile}.
+         */
+        Process start(Path portFile, Path logFile) throws IOException;
+    }
+
+    record Endpoint(int port, long pid) {
+        URI uri(String pathAndQuery) {
+            return URI.create("http://localhost:" + port + pathAndQuery);
+        }
+    }
+
+    private static final long PORT_FILE_TIMEOUT_MILLIS = 15_000;
+    private static final long PORT_FILE_POLL_MILLIS = 50;
+
+    // Companions without --port-file; probed once the port file is this late, then this often
+    static final int LEGACY_PORT = 58888;
+    private static final long LEGACY_GRACE_MILLIS = 2_000;
+    private static final long LEGACY_PROBE_MILLIS = 500;
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    // FileChannel locks belong to the whole JVM; two threads locking the same file would throw
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path lockFile;
+    private final Path portFile;
+    private final Path logFile;
+    private final Path clientsDir;
+    private final int legacyPort;
+
+    private FileChannel leaseChannel;
+    private Path leaseFile;
+    private volatile Endpoint endpoint;
+
+    SharedCompanion(Path dir) {
+        this(dir, LEGACY_PORT);
+    }
+
+    /**
+     * @param legacyPort where a companion that ignores {@code --port-file} listens
+     */
+    SharedCompanion(Path dir, int legacyPort) {
+        this.legacyPort = legacyPort;
+        this.lockFile = dir.resolve("companion.lock");
+        this.portFile = dir.resolve("companion.port");
+        this.logFile = dir.resolve("companion.log");
+        this.clientsDir = dir.resolve("clients");
+    }
+
+    /**
+     * Registers this instance as a user of the companion until {@link #leave}.
+     */
+    synchronized void join() throws IOException {
+        if (leaseChannel != null) return;
+
+        Files.createDirectories(clientsDir);
+        Path file = clientsDir.resolve(ProcessHandle.current().pid() + "-" + UUID.randomUUID() + ".lease");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+            channel.write(StandardCharsets.UTF_8.encode(ProcessHandle.current().pid() + "\n"));
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        leaseChannel = channel;
+        leaseFile = file;
+    }
+
+    /**
+     * The companion this instance talks to, or null before the first {@link #acquire}.
+     */
+    Endpoint endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Attaches to the running companion, or launches one if there is none that answers. Launches
+     * are serialized across instances, so they never start two at once.
+     *
+     * @param answers whether a published endpoint responds; a dead or hung one is replaced
+     * @return the process to supervise; for a companion another instance launched it has no
+     *         pipes, and its exit code is not observable (-1)
+     */
+    Process acquire(Launch launch, Predicate<Endpoint> answers) throws IOException {
+        synchronized (JVM_LOCK) {
+            Files.createDirectories(clientsDir);
+            // Closing the channel releases the lock
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.lock();
+
+                Endpoint running = readPortFile();
+                if (running != null) {
+                    Optional<ProcessHandle> handle = publisher(running);
+                    if (handle.isPresent() && answers.test(running)) {
+                        endpoint = running;
+                        System.out.println("[NowPlayingMod] Attached to the shared C# server on port " + running.port()
+                                + " (PID " + running.pid() + ").");
+                        return new AttachedProcess(handle.get());
+                    }
+                    Files.deleteIfExists(portFile);
+                }
+
+                Process p = launch.start(portFile, logFile);
+                try {
+                    endpoint = awaitPortFile(p, answers);
+                } catch (IOException e) {
+                    p.destroyForcibly();
+                    throw e;
+                }
+                System.out.println("[NowPlayingMod] Launched the shared C# server on port " + endpoint.port()
+                        + ". Its output goes to " + logFile.toAbsolutePath());
+                return p;
+            }
+        }
+    }
+
+    /**
+     * Drops this instance's lease. If no other instance holds one, the published companion is shut
+     * down while the launch lock is still held, so nobody attaches to it in the meantime. Stop
+     * supervising it first, or the supervisor would relaunch it.
+     *
+     * @return whether this was the last instance
+     */
+    boolean leave() {
+        synchronized (this) {
+            if (leaseChannel == null) return false;
+        }
+
+        synchronized (JVM_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.lock();
+                releaseLease();
+                if (liveClients() > 0) return false;
+
+                Endpoint published = readPortFile();
+                if (published != null) {
+                    publisher(published).ifPresent(SharedCompanion::terminate);
+                    Files.deleteIfExists(portFile);
+                }
+                endpoint = null;
+                return true;
+            } catch (IOException e) {
+                System.err.println("[NowPlayingMod] Could not update the shared C# server leases: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Instances currently holding a lease. Removes the leases of instances that died.
+     * Only call while holding the launch lock.
+     */
+    private int liveClients() throws IOException {
+        int live = 0;
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(clientsDir, "*.lease")) {
+            for (Path lease : leases) {
+                if (isHeld(lease)) {
+                    live++;
+                } else {
+                    Files.deleteIfExists(lease);
+                }
+            }
+        }
+        return live;
+    }
+
+    private static boolean isHeld(Path lease) {
+        try (FileChannel channel = FileChannel.open(lease, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) return true;
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // Another instance inside this JVM (dev tools only)
+            return true;
+        } catch (IOException e) {
+            // Gone or unreadable; don't let it keep the companion alive
+            return false;
+        }
+    }
+
+    private synchronized void releaseLease() throws IOException {
+        FileChannel channel = leaseChannel;
+        if (channel == null) return;
+        leaseChannel = null;
+        channel.close();
+        Files.deleteIfExists(leaseFile);
+    }
+
+    /**
+     * The live process that published {@code endpoint}. A dead companion's PID may since have been
+     * reused, but that process started after the port file was written.
+     */
+    private Optional<ProcessHandle> publisher(Endpoint endpoint) {
+        Optional<ProcessHandle> handle = ProcessHandle.of(endpoint.pid()).filter(ProcessHandle::isAlive);
+        if (handle.isEmpty()) return handle;
+
+        Optional<Instant> started = handle.get().info().startInstant();
+        try {
+            Instant published = Files.getLastModifiedTime(portFile).toInstant();
+            return started.isEmpty() || !started.get().isAfter(published) ? handle : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void terminate(ProcessHandle handle) {
+        handle.destroy();
+        try {
+            handle.onExit().get(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            handle.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handle.destroyForcibly();
+        }
+    }
+
+    private Endpoint awaitPortFile(Process p, Predicate<Endpoint> answers) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(PORT_FILE_TIMEOUT_MILLIS);
+        long nextLegacyProbe = start + TimeUnit.MILLISECONDS.toNanos(LEGACY_GRACE_MILLIS);
+        while (System.nanoTime() - deadline < 0) {
+            Endpoint published = readPortFile();
+            if (published != null && published.pid() == p.pid()) return published;
+            if (!p.isAlive()) {
+                throw new IOException("C# server exited with code " + p.exitValue() + " before publishing its port");
+            }
+            if (System.nanoTime() - nextLegacyProbe >= 0) {
+                Endpoint legacy = new Endpoint(legacyPort, p.pid());
+                if (answers.test(legacy)) {
+                    Files.writeString(portFile, legacyPort + " " + p.pid() + "\n", StandardCharsets.UTF_8);
+                    System.out.println("[NowPlayingMod] The C# server doesn't publish its port; using its fixed port " + legacyPort + ".");
+                    return legacy;
+                }
+                nextLegacyProbe = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEGACY_PROBE_MILLIS);
+            }
+            try {
+                Thread.sleep(PORT_FILE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the C# server's port");
+            }
+        }
+        throw new IOException("C# server did not publish its port within " + PORT_FILE_TIMEOUT_MILLIS + " ms");
+    }
+
+    private Endpoint readPortFile() {
+        try {
+            String[] parts = Files.readString(portFile, StandardCharsets.UTF_8).trim().split("\\s+");
+            if (parts.length < 2) return null;
+            int port = Integer.parseInt(parts[0]);
+            long pid = Long.parseLong(parts[1]);
+            return port > 0 && port < 65536 ? new Endpoint(port, pid) : null;
+        } catch (IOException | NumberFormatException e) {
+            // Missing, or caught halfway through a write
+            return null;
+        }
+    }
+
+    /**
+     * A companion another instance launched: no pipes, exit observed through its process handle.
+     */
+    private static final class AttachedProcess extends Process {
+        private final ProcessHandle handle;
+
+        AttachedProcess(ProcessHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                handle.onExit().get();
+            } catch (ExecutionException ignored) {
+                // onExit never completes exceptionally
+            }
+            return -1;
+        }
+
+        @Override
+        public int exitValue() {
+            if (handle.isAlive()) throw new IllegalThreadStateException("process hasn't exited");
+            return -1;
+        }
+
+        @Override
+        public void destroy() {
+            handle.destroy();
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            handle.destroyForcibly();
+            return this;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return handle.isAlive();
+        }
+
+        @Override
+        public long pid() {
+            return handle.pid();
+        }
+
+        @Override
+        public ProcessHandle toHandle() {
+            return handle;
+        }
+    }
+}
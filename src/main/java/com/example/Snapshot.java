@@ -0,0 +1,216 @@
+package com.example;
+
+/**
+ * Immutable render/state snapshot shared between the poller and the render thread.
+ *
+ * Published through a {@link SnapshotStore}, which stamps the version fields: a snapshot built
+ * here has them all 0 until the store installs it.
+ */
+final class Snapshot {
+    final String title;
+    final String artist;
+    final boolean isSpotify;
+    final boolean isMediaActive;
+    final boolean isPlaying;
+
+    final double targetProgress;     // 0..1
+    final double targetStartSec;     // seconds
+    final double targetPositionSec;  // seconds, as of anchorNanos
+    final double targetEndSec;       // seconds
+    final double playbackRate;       // 1.0 = normal speed
+    final long anchorNanos;          // System.nanoTime() at which targetPositionSec held
+
+    final boolean imageLoaded;
+    final int coverTexW;
+    final int coverTexH;
+    // Opaque ARGB from the cover's CoverPalette, 0 without one
+    final int coverBackgroundColor;
+    final int coverAccentColor;
+
+    // MediaInfo.textVersion the text was derived from, 0 if unknown
+    final long textSource;
+
+    // This snapshot's version, and the version in which each kind of change last happened
+    final long version;
+    final long textVersion;
+    final long playbackVersion;
+    final long artworkVersion;
+    final long activeVersion;
+
+    Snapshot(
+            String title,
+            String artist,
+            boolean isSpotify,
+            boolean isMediaActive,
+            boolean isPlaying,
+            double targetProgress,
+            double targetStartSec,
+            double targetPositionSec,
+            double targetEndSec,
+            double playbackRate,
+            long anchorNanos,
+            boolean imageLoaded,
+            int coverTexW,
+            int coverTexH
+    ) {
+        this(title, artist, isSpotify, isMediaActive, isPlaying,
+                targetProgress, targetStartSec, targetPositionSec, targetEndSec, playbackRate, anchorNanos,
+                imageLoaded, coverTexW, coverTexH, 0, 0, 0L, 0L, 0L, 0L, 0L, 0L);
+    }
+
+    private Snapshot(
+            String title,
+            String artist,
+            boolean isSpotify,
+            boolean isMediaActive,
+            boolean isPlaying,
+            double targetProgress,
+            double targetStartSec,
+            double targetPositionSec,
+            double targetEndSec,
+            double playbackRate,
+            long anchorNanos,
+            boolean imageLoaded,
+            int coverTexW,
+            int coverTexH,
+            int coverBackgroundColor,
+            int coverAccentColor,
+            long textSource,
+            long version,
+            long textVersion,
+            long playbackVersion,
+            long artworkVersion,
+            long activeVersion
+    ) {
+        this.title = title;
+        this.artist = artist;
+        this.isSpotify = isSpotify;
+        this.isMediaActive = isMediaActive;
+        this.isPlaying = isPlaying;
+        this.targetProgress = targetProgress;
+        this.targetStartSec = targetStartSec;
+        this.targetPositionSec = targetPositionSec;
+        this.targetEndSec = targetEndSec;
+        this.playbackRate = playbackRate;
+        this.anchorNanos = anchorNanos;
+        this.imageLoaded = imageLoaded;
+        this.coverTexW = coverTexW;
+        this.coverTexH = coverTexH;
+        this.coverBackgroundColor = coverBackgroundColor;
+        this.coverAccentColor = coverAccentColor;
+        this.textSource = textSource;
+        this.version = version;
+        this.textVersion = textVersion;
+        this.playbackVersion = playbackVersion;
+        this.artworkVersion = artworkVersion;
+        this.activeVersion = activeVersion;
+    }
+
+    static Snapshot loading() {
+        return new Snapshot(
+                "Loading Now Playing...",
+                "Loading Artist...",
+                false,
+                false,
+                false,
+                0.0,
+                0.0,
+                0.0,
+                0.0,
+                1.0,
+                0L,
+                false,
+                0,
+                0
+        );
+    }
+
+    /**
+     * Shown while the companion is prepared in the background: a text-only panel, no timeline or cover.
+     */
+    static Snapshot starting() {
+        return new Snapshot(
+                "Starting Now Playing...",
+                "Waiting for companion",
+                false,
+                true,
+                false,
+                0.0,
+                0.0,
+                0.0,
+                0.0,
+                1.0,
+                0L,
+                false,
+                0,
+                0
+        );
+    }
+
+    Snapshot withImage(boolean loaded, int w, int h) {
+        return withImage(loaded, w, h, 0L);
+    }
+
+    /**
+     * @param palette the cover's {@link CoverPalette}, 0 without one
+     */
+    Snapshot withImage(boolean loaded, int w, int h, long palette) {
+        return new Snapshot(
+                title, artist, isSpotify, isMediaActive, isPlaying,
+                targetProgress, targetStartSec, targetPositionSec, targetEndSec, playbackRate, anchorNanos,
+                loaded, w, h, CoverPalette.background(palette), CoverPalette.accent(palette),
+                textSource, version, textVersion, playbackVersion, artworkVersion, activeVersion
+        );
+    }
+
+    /**
+     * @param textSource the {@link MediaInfo#textVersion} the text was derived from, 0 if unknown
+     */
+    Snapshot withTextAndPlayback(
+            long textSource,
+            String title,
+            String artist,
+            boolean isSpotify,
+            boolean isMediaActive,
+            boolean isPlaying,
+            double targetProgress,
+            double targetStartSec,
+            double targetPositionSec,
+            double targetEndSec,
+            double playbackRate,
+            long anchorNanos
+    ) {
+        return new Snapshot(
+                title, artist, isSpotify, isMediaActive, isPlaying,
+                targetProgress, targetStartSec, targetPositionSec, targetEndSec, playbackRate, anchorNanos,
+                imageLoaded, coverTexW, coverTexH, coverBackgroundColor, coverAccentColor,
+                textSource, version, textVersion, playbackVersion, artworkVersion, activeVersion
+        );
+    }
+
+    /**
+     * Copy as the store installs it after {@code previous}: the next version, with the version of
+     * every kind of change in {@code changes} moved up to it.
+     */
+    Snapshot stamped(Snapshot previous, int changes) {
+        long v = previous.version + 1;
+        return new Snapshot(
+                title, artist, isSpotify, isMediaActive, isPlaying,
+                targetProgress, targetStartSec, targetPositionSec, targetEndSec, playbackRate, anchorNanos,
+                imageLoaded, coverTexW, coverTexH, coverBackgroundColor, coverAccentColor, textSource, v,
+                SnapshotStore.Change.TEXT.in(changes) ? v : previous.textVersion,
+                SnapshotStore.Change.PLAYBACK.in(changes) ? v : previous.playbackVersion,
+                SnapshotStore.Change.ARTWORK.in(changes) ? v : previous.artworkVersion,
+                SnapshotStore.Change.ACTIVE.in(changes) ? v : previous.activeVersion
+        );
+    }
+
+    /**
+     * Position extrapolated from the anchor to {@code nowNanos}, clamped to the track.
+     */
+    double positionAt(long nowNanos) {
+        double position = targetPositionSec;
+        if (isPlaying) position += (nowNanos - anchorNanos) / 1_000_000_000.0 * playbackRate;
+        return Math.max(0.0, Math.min(position, targetEndSec));
+    }
+}
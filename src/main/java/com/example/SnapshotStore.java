@@ -0,0 +1,130 @@
+package com.example;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current {@link Snapshot}. Every change is a transition from the current snapshot to
+ * the next, installed with a compare-and-set and retried against whatever another thread installed
+ * meanwhile, so the poller, the event stream and the artwork thread can't overwrite each other.
+ *
+ * Each installed snapshot is stamped with the next version and, per {@link Change}, the version in
+ * which that kind of change last happened; a consumer that only cares about the text compares one
+ * number. Consumers off the render thread subscribe to the kinds they care about instead.
+ * Snapshots derived from versioned state are compared by {@link Snapshot#textSource}; the text
+ * itself is only compared when either side has none.
+ */
+final class SnapshotStore {
+
+    enum Change {
+        /** Title, artist or app */
+        TEXT,
+        /** Play state, timeline or position anchor */
+        PLAYBACK,
+        /** Whether a cover is shown, its size and colours */
+        ARTWORK,
+        /** Whether there is media to show at all */
+        ACTIVE;
+
+        final int bit = 1 << ordinal();
+
+        boolean in(int changes) {
+            return (changes & bit) != 0;
+        }
+    }
+
+    /**
+     * Called on the thread whose transition changed the snapshot, right after it was installed.
+     * Updates racing on other threads may be reported out of order; {@code current} is the snapshot
+     * this transition installed, not necessarily the newest.
+     */
+    interface Listener {
+        void onChange(Snapshot previous, Snapshot current, int changes);
+    }
+
+    private record Subscription(Listener listener, int mask) {}
+
+    private final AtomicReference<Snapshot> current;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    SnapshotStore(Snapshot initial) {
+        current = new AtomicReference<>(initial.stamped(initial, ~0));
+    }
+
+    Snapshot get() {
+        return current.get();
+    }
+
+    /**
+     * Calls {@code listener} after every transition that changes any of {@code kinds}.
+     */
+    void subscribe(Listener listener, Change... kinds) {
+        int mask = 0;
+        for (Change kind : kinds) mask |= kind.bit;
+        subscriptions.add(new Subscription(listener, mask));
+    }
+
+    /**
+     * Replaces the snapshot, whatever it is.
+     *
+     * @return the kinds of change, as {@link Change} bits
+     */
+    int set(Snapshot next) {
+        return update(previous -> next);
+    }
+
+    /**
+     * Applies {@code transition} to the current snapshot and installs the result, retrying with the
+     * newer snapshot if another thread got there first; {@code transition} must therefore be free of
+     * side effects. A result without any visible change (or the argument itself) installs nothing.
+     *
+     * @return the kinds of change, as {@link Change} bits; 0 if nothing changed
+     */
+    int update(UnaryOperator<Snapshot> transition) {
+        while (true) {
+            Snapshot previous = current.get();
+            Snapshot next = transition.apply(previous);
+            int changes = next == previous ? 0 : changes(previous, next);
+            if (changes == 0) return 0;
+
+            Snapshot stamped = next.stamped(previous, changes);
+            if (current.compareAndSet(previous, stamped)) {
+                for (Subscription s : subscriptions) {
+                    if ((s.mask & changes) != 0) s.listener.onChange(previous, stamped, changes);
+                }
+                return changes;
+            }
+        }
+    }
+
+    /**
+     * The kinds of change between two snapshots, as {@link Change} bits.
+     */
+    static int changes(Snapshot a, Snapshot b) {
+        int changes = 0;
+        if (a.textSource != 0L && b.textSource != 0L
+                ? a.textSource != b.textSource
+                : !Objects.equals(a.title, b.title) || !Objects.equals(a.artist, b.artist) || a.isSpotify != b.isSpotify) {
+            changes |= Change.TEXT.bit;
+        }
+        if (a.isPlaying != b.isPlaying
+                || a.targetProgress != b.targetProgress
+                || a.targetStartSec != b.targetStartSec
+                || a.targetPositionSec != b.targetPositionSec
+                || a.targetEndSec != b.targetEndSec
+                || a.playbackRate != b.playbackRate
+                || a.anchorNanos != b.anchorNanos) {
+            changes |= Change.PLAYBACK.bit;
+        }
+        if (a.imageLoaded != b.imageLoaded || a.coverTexW != b.coverTexW || a.coverTexH != b.coverTexH
+                || a.coverBackgroundColor != b.coverBackgroundColor || a.coverAccentColor != b.coverAccentColor) {
+            changes |= Change.ARTWORK.bit;
+        }
+        if (a.isMediaActive != b.isMediaActive) {
+            changes |= Change.ACTIVE.bit;
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary media state frames, used by the Unix domain socket transport.
+ *
+ * All integers are little-endian. A frame is an 8 byte header followed by the body:
+ * <pre>
+ *   header  u16 magic ("NP")   u8 version   u8 flags   u32 body length
+ *   body    i64 positionMs   i64 startMs   i64 endMs   f64 playbackRate   i64 anchorMs   i64 nowMs
+ *           str title   str artist   str app   str status   str imageHash (empty = none)
+ *           [varint length + artwork bytes]   only when {@link #FLAG_ARTWORK} is set
+ * </pre>
+ * {@code str} is a varint (unsigned LEB128) byte length followed by UTF-8.
+ *
+ * The {@link Decoder} keeps the last bytes and String of every text field, so a field that did
+ * not change between frames is handed out as the same String instead of being decoded again.
+ */
+final class StateFrameCodec {
+
+    private StateFrameCodec() {}
+
+    static final int MAGIC = 0x504E; // 'N' 'P' in little-endian byte order
+    // 2 added anchorMs and nowMs; a version 1 body would be read at the wrong offsets
+    static final int VERSION = 2;
+
+    static final int FLAG_ARTWORK = 0x01;
+
+    static final int HEADER_BYTES = 8;
+    static final int FIXED_BODY_BYTES = 48;
+
+    // Bounds every length read from the wire; a cover is a few hundred KB at most
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    static final int MAX_STRING_BYTES = 64 * 1024;
+
+    /**
+     * Total length (header included) of the frame starting at {@code offset}, read without moving
+     * the buffer's position. The caller must have {@link #HEADER_BYTES} available.
+     *
+     * @throws IOException if the header is not a valid frame header
+     */
+    static int frameLength(ByteBuffer buf, int offset) throws IOException {
+        ByteBuffer le = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int magic = le.getShort(offset) & 0xFFFF;
+        int version = le.get(offset + 2) & 0xFF;
+        int bodyLength = le.getInt(offset + 4);
+
+        if (magic != MAGIC) throw new IOException("Bad frame magic " + Integer.toHexString(magic));
+        if (version != VERSION) throw new IOException("Unsupported frame version " + version);
+        if (bodyLength < FIXED_BODY_BYTES || bodyLength > MAX_FRAME_BYTES - HEADER_BYTES) {
+            throw new IOException("Bad frame length " + bodyLength);
+        }
+        return HEADER_BYTES + bodyLength;
+    }
+
+    // -------------------------
+    // Encoding
+    // -------------------------
+
+    /**
+     * Encodes one frame into {@code buf}, replacing it with a larger direct buffer if it is too small.
+     *
+     * @param artwork encoded cover to attach, or null
+     * @return the buffer holding the frame, flipped and ready to be written
+     */
+    static ByteBuffer encode(MediaInfo info, byte[] artwork, ByteBuffer buf) {
+        byte[] title = utf8(info.title);
+        byte[] artist = utf8(info.artist);
+        byte[] app = utf8(info.app);
+        byte[] status = utf8(info.status);
+        byte[] hash = utf8(info.imageHash);
+
+        int body = FIXED_BODY_BYTES
+                + stringSize(title) + stringSize(artist) + stringSize(app) + stringSize(status) + stringSize(hash)
+                + (artwork != null ? stringSize(artwork) : 0);
+        if (HEADER_BYTES + body > MAX_FRAME_BYTES) throw new IllegalArgumentException("Frame too large: " + body);
+
+        if (buf == null || buf.capacity() < HEADER_BYTES + body) {
+            buf = ByteBuffer.allocateDirect(Math.max(HEADER_BYTES + body, 4096));
+        }
+        buf.clear().order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.putShort((short) MAGIC);
+        buf.put((byte) VERSION);
+        buf.put((byte) (artwork != null ? FLAG_ARTWORK : 0));
+        buf.putInt(body);
+
+        buf.putLong(info.positionMs);
+        buf.putLong(info.startMs);
+        buf.putLong(info.endMs);
+        buf.putDouble(info.playbackRate);
+        buf.putLong(info.anchorMs);
+        buf.putLong(info.nowMs);
+
+        putBytes(buf, title);
+        putBytes(buf, artist);
+        putBytes(buf, app);
+        putBytes(buf, status);
+        putBytes(buf, hash);
+        if (artwork != null) putBytes(buf, artwork);
+
+        return buf.flip();
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return varintSize(bytes.length) + bytes.length;
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] bytes) {
+        putVarint(buf, bytes.length);
+        buf.put(bytes);
+    }
+
+    static void putVarint(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    // -------------------------
+    // Decoding
+    // -------------------------
+
+    /**
+     * Decodes frames into a {@link MediaInfo}. Not thread-safe; one per connection.
+     */
+    static final class Decoder {
+        private final CachedString title = new CachedString();
+        private final CachedString artist = new CachedString();
+        private final CachedString app = new CachedString();
+        private final CachedString status = new CachedString();
+        private final CachedString imageHash = new CachedString();
+
+        private ByteBuffer artwork;
+
+        /**
+         * Decodes the frame in {@code frame} (position at the header, limit at the frame end)
+         * and advances the position past it.
+         *
+         * @return whether the frame carried artwork, see {@link #artwork()}
+         * @throws IOException on any malformed input; {@code into} is then partially filled
+         */
+        boolean decode(ByteBuffer frame, MediaInfo into) throws IOException {
+            int start = frame.position();
+            if (frame.remaining() < HEADER_BYTES) throw new IOException("Truncated frame header");
+            int length = frameLength(frame, start);
+            if (frame.remaining() < length) throw new IOException("Truncated frame body");
+
+            ByteBuffer in = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            in.limit(start + length).position(start + 3);
+            int flags = in.get() & 0xFF;
+            in.position(start + HEADER_BYTES);
+
+            into.reset();
+            into.version = 2;
+            into.positionMs = in.getLong();
+            into.startMs = in.getLong();
+            into.endMs = in.getLong();
+            into.playbackRate = in.getDouble();
+            if (!(into.playbackRate > 0.0) || Double.isInfinite(into.playbackRate)) into.playbackRate = 1.0;
+            into.anchorMs = in.getLong();
+            into.nowMs = in.getLong();
+
+            into.title = title.read(in);
+            into.artist = artist.read(in);
+            into.app = app.read(in);
+            into.status = status.read(in);
+            String hash = imageHash.read(in);
+            into.imageHash = hash.isEmpty() ? null : hash;
+
+            artwork = null;
+            if ((flags & FLAG_ARTWORK) != 0) {
+                int size = readLength(in, MAX_FRAME_BYTES);
+                artwork = in.slice(in.position(), size);
+                in.position(in.position() + size);
+            }
+
+            if (in.hasRemaining()) throw new IOException("Trailing bytes in frame");
+            frame.position(start + length);
+            return artwork != null;
+        }
+
+        /**
+         * Artwork of the last decoded frame as a view into the read buffer, valid until the next
+         * {@link #decode}; null if it had none.
+         */
+        ByteBuffer artwork() {
+            return artwork;
+        }
+    }
+
+    static int readLength(ByteBuffer in, int max) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining()) throw new IOException("Truncated varint");
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || value > max || value > in.remaining()) {
+                    throw new IOException("Bad length " + value);
+                }
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Remembers the last UTF-8 bytes of one field and the String made from them.
+     */
+    private static final class CachedString {
+        private byte[] bytes = new byte[64];
+        private int length = -1;
+        private String value = "";
+
+        String read(ByteBuffer in) throws IOException {
+            int size = readLength(in, MAX_STRING_BYTES);
+            int offset = in.position();
+            in.position(offset + size);
+
+            if (size == length && sameBytes(in, offset, size)) return value;
+
+            if (bytes.length < size) bytes = new byte[Math.max(size, bytes.length * 2)];
+            in.get(offset, bytes, 0, size);
+            length = size;
+            value = new String(bytes, 0, size, StandardCharsets.UTF_8);
+            return value;
+        }
+
+        private boolean sameBytes(ByteBuffer in, int offset, int size) {
+            for (int i = 0; i < size; i++) {
+                if (in.get(offset + i) != bytes[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+/**
+ * Parses the companion's playback timestamps and formats positions as {@code m:ss} /
+ * {@code h:mm:ss} without per-frame garbage.
+ *
+ * Strings for whole seconds are built once and kept in a table, so the HUD gets the same
+ * instance back every frame (which also lets callers cache text widths by identity).
+ */
+final class TimestampFormatter {
+
+    private TimestampFormatter() {}
+
+    // 10 hours covers every realistic track; longer media falls back to building the string
+    private static final int TABLE_SECONDS = 10 * 3600;
+
+    private static final String[] TABLE = new String[TABLE_SECONDS];
+
+    static String format(double seconds) {
+        if (Double.isNaN(seconds) || seconds < 0) return "0:00";
+
+        long rounded = Math.round(seconds);
+        if (rounded >= TABLE_SECONDS) return build(rounded);
+
+        int totalSeconds = (int) rounded;
+        String cached = TABLE[totalSeconds];
+        if (cached == null) {
+            // Benign race: two threads may build equal strings, either one is fine to keep
+            cached = build(totalSeconds);
+            TABLE[totalSeconds] = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Parses legacy (protocol v1) timestamps, {@code h:mm:ss(.fff)} or {@code m:ss(.fff)}, into
+     * milliseconds. Anything else, including {@code "(unknown)"} and empty strings, is 0.
+     *
+     * Single pass over the characters; no splitting, boxing or intermediate strings.
+     * Fraction digits past milliseconds are truncated.
+     */
+    static long parseMillis(CharSequence time) {
+        if (time == null) return 0L;
+
+        long wholeSeconds = 0;   // completed h/m fields, already scaled to the next unit
+        long current = 0;        // digits of the field being read
+        long fractionMs = 0;
+        int fractionDigits = -1; // -1 while not in the fraction
+        int colons = 0;
+        boolean fieldHasDigits = false;
+
+        for (int i = 0, n = time.length(); i < n; i++) {
+            char c = time.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (fractionDigits >= 0) {
+                    if (fractionDigits < 3) fractionMs = fractionMs * 10 + digit;
+                    fractionDigits++;
+                } else {
+                    current = current * 10 + digit;
+                    if (current > Integer.MAX_VALUE) return 0L;
+                }
+                fieldHasDigits = true;
+            } else if (c == ':') {
+                if (fractionDigits >= 0 || !fieldHasDigits || ++colons > 2) return 0L;
+                wholeSeconds = (wholeSeconds + current) * 60;
+                current = 0;
+                fieldHasDigits = false;
+            } else if (c == '.') {
+                if (fractionDigits >= 0 || !fieldHasDigits || colons == 0) return 0L;
+                fractionDigits = 0;
+            } else {
+                return 0L;
+            }
+        }
+
+        if (colons == 0 || !fieldHasDigits) return 0L;
+        for (; fractionDigits >= 0 && fractionDigits < 3; fractionDigits++) fractionMs *= 10;
+
+        return (wholeSeconds + current) * 1000L + fractionMs;
+    }
+
+    private static String build(long totalSeconds) {
+        long hours = totalSeconds / 3600;
+        int minutes = (int) ((totalSeconds % 3600) / 60);
+        int remainingSeconds = (int) (totalSeconds % 60);
+
+        char[] buf = new char[24];
+        int pos = buf.length;
+
+        pos = writeTwoDigits(buf, pos, remainingSeconds);
+        buf[--pos] = ':';
+        if (hours > 0) {
+            pos = writeTwoDigits(buf, pos, minutes);
+            buf[--pos] = ':';
+            do {
+                buf[--pos] = (char) ('0' + hours % 10);
+                hours /= 10;
+            } while (hours > 0);
+        } else if (minutes >= 10) {
+            pos = writeTwoDigits(buf, pos, minutes);
+        } else {
+            // Minutes are not zero-padded when there is no hour part ("3:07")
+            buf[--pos] = (char) ('0' + minutes);
+        }
+        return new String(buf, pos, buf.length - pos);
+    }
+
+    private static int writeTwoDigits(char[] buf, int pos, int value) {
+        buf[--pos] = (char) ('0' + value % 10);
+        buf[--pos] = (char) ('0' + value / 10);
+        return pos;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exercises {@link CompanionInstaller} against a temporary directory with an in-memory archive:
+ * fresh install, an unchanged re-run that must read no more than the index, tampered files of the
+ * same and of a different size, a touched mtime, an archive that drops a file, and corrupt,
+ * truncated or escaping archives.
+ */
+class CompanionInstallTest {
+
+    @Test
+    void install() throws Exception {
+        Random random = new Random(15);
+        Map<String, byte[]> bundle = new LinkedHashMap<>();
+        bundle.put("NowPlaying.exe", bytes(random, 150_000));
+        bundle.put("NowPlaying.dll", compressible(random, 400_000));
+        bundle.put("NowPlaying.runtimeconfig.json", "{\"runtimeOptions\":{}}".getBytes(StandardCharsets.UTF_8));
+        bundle.put("WinRT.Runtime.dll", bytes(random, 250_000));
+        bundle.put("runtimes/win-x64/native/Native Lib.dll", bytes(random, 30_000));
+
+        AtomicReference<byte[]> archive = new AtomicReference<>(archiveOf(bundle));
+        AtomicLong archiveBytesRead = new AtomicLong();
+        CompanionInstaller.Source source = () -> new FilterInputStream(new ByteArrayInputStream(archive.get())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) archiveBytesRead.addAndGet(n);
+                return n;
+            }
+        };
+
+        Path target = Files.createTempDirectory("nowplaying-install");
+        try {
+            CompanionInstaller.Result r = new CompanionInstaller(source, target).install();
+            report("fresh install", r);
+            try (CompanionArchive opened = CompanionArchive.open(source.open())) {
+                assertTrue(opened.entries().stream().anyMatch(e -> e.method() == CompanionArchive.DEFLATED),
+                        "expected at least one deflated entry");
+            }
+            assertTrue(r.written() == bundle.size(), "fresh install should write everything");
+            verifyContents(target, bundle);
+
+            archiveBytesRead.set(0);
+            r = new CompanionInstaller(source, target).install();
+            report("unchanged", r);
+            assertTrue(r.trusted() == bundle.size(), "unchanged install should trust every file");
+            assertTrue(archiveBytesRead.get() < archive.get().length / 4, "unchanged install should only read the index, read "
+                    + archiveBytesRead.get() + " of " + archive.get().length + " bytes");
+
+            // Same size, different bytes: size passes, mtime doesn't, so it gets hashed and rewritten
+            Path exe = target.resolve("NowPlaying.exe");
+            byte[] tampered = bundle.get("NowPlaying.exe").clone();
+            tampered[1234] ^= 0x5A;
+            Files.write(exe, tampered);
+            Files.setLastModifiedTime(exe, FileTime.fromMillis(Files.getLastModifiedTime(exe).toMillis() + 5_000));
+            r = new CompanionInstaller(source, target).install();
+            report("same-size tamper", r);
+            assertTrue(r.written() == 1 && r.trusted() == bundle.size() - 1, "same-size tamper should rewrite exactly one file");
+            verifyContents(target, bundle);
+
+            // Touched but intact: hashed once, then trusted again
+            Path dll = target.resolve("NowPlaying.dll");
+            Files.setLastModifiedTime(dll, FileTime.fromMillis(Files.getLastModifiedTime(dll).toMillis() - 60_000));
+            r = new CompanionInstaller(source, target).install();
+            report("touched mtime", r);
+            assertTrue(r.hashed() == 1 && r.written() == 0, "touched file should be verified by hash, not rewritten");
+            r = new CompanionInstaller(source, target).install();
+            assertTrue(r.trusted() == bundle.size(), "re-verified file should be trusted on the next run");
+
+            // Different size: rewritten without hashing
+            Files.writeString(target.resolve("NowPlaying.runtimeconfig.json"), "{}");
+            Files.delete(target.resolve("WinRT.Runtime.dll"));
+            r = new CompanionInstaller(source, target).install();
+            report("resized + deleted", r);
+            assertTrue(r.written() == 2 && r.hashed() == 0, "resized and missing files should be written without hashing");
+            verifyContents(target, bundle);
+
+            // A file dropped from the archive is removed; unrelated files are left alone
+            Path userFile = target.resolve("notes.txt");
+            Files.writeString(userFile, "keep me");
+            bundle.remove("WinRT.Runtime.dll");
+            archive.set(archiveOf(bundle));
+            r = new CompanionInstaller(source, target).install();
+            report("dropped file", r);
+            assertTrue(r.removed() == 1 && !Files.exists(target.resolve("WinRT.Runtime.dll")), "dropped file should be removed");
+            assertTrue(Files.exists(userFile), "unrecorded file must not be touched");
+
+            // A bundled copy that doesn't match its index entry must fail without replacing the file
+            String last = "runtimes/win-x64/native/Native Lib.dll";
+            byte[] corrupt = archive.get().clone();
+            corrupt[corrupt.length - 1] ^= 0x5A;
+            archive.set(corrupt);
+            Files.delete(target.resolve(last));
+            assertTrue(installFails(source, target), "corrupt bundled file should fail the install");
+            assertTrue(!Files.exists(target.resolve(last)) && !Files.exists(target.resolve(last + ".tmp")),
+                    "corrupt bundled file should leave nothing behind");
+
+            // A truncated archive fails too
+            archive.set(Arrays.copyOf(corrupt, corrupt.length - 100));
+            assertTrue(installFails(source, target), "truncated archive should fail the install");
+
+            // Paths escaping the target are refused
+            Map<String, byte[]> escaping = new LinkedHashMap<>();
+            escaping.put("../escape.dll", new byte[] {1});
+            archive.set(archiveOf(escaping));
+            assertTrue(installFails(source, target), "escaping archive path should be refused");
+            assertTrue(!Files.exists(target.resolveSibling("escape.dll")), "escaping file was written");
+
+        } finally {
+            try (var files = Files.walk(target)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static byte[] archiveOf(Map<String, byte[]> bundle) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompanionArchiveWriter.pack(bundle, out);
+        return out.toByteArray();
+    }
+
+    private static boolean installFails(CompanionInstaller.Source source, Path target) {
+        try {
+            new CompanionInstaller(source, target).install();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void verifyContents(Path target, Map<String, byte[]> bundle) throws IOException {
+        for (Map.Entry<String, byte[]> e : bundle.entrySet()) {
+            assertTrue(Arrays.equals(Files.readAllBytes(target.resolve(e.getKey())), e.getValue()),
+                    e.getKey() + " differs from the bundled copy");
+        }
+    }
+
+    private static byte[] bytes(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Bytes from a small alphabet, so the archive deflates them like real binaries.
+     */
+    private static byte[] compressible(Random random, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) random.nextInt(16);
+        return data;
+    }
+
+    private static void report(String step, CompanionInstaller.Result result) {
+        System.out.println(step + ": " + result);
+    }
+}
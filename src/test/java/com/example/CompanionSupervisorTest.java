@@ -0,0 +1,190 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives {@link CompanionSupervisor} with {@link StandInCompanionServer} {@code --stdio} children
+ * that are told to {@code crash} on their stdin, the way a broken companion would die.
+ *
+ * Checks the backoff delays (doubling, within the jitter), that readiness is probed again after
+ * every restart, that a crash loop ends with the supervisor giving up instead of relaunching, that
+ * a launch which never becomes ready is killed and counted, and that stopping leaves no process or
+ * thread behind.
+ */
+class CompanionSupervisorTest {
+
+    private static final long READY_WAIT_SECONDS = 15;
+
+    @AfterAll
+    static void noThreadsLeft() throws InterruptedException {
+        // Reader and supervisor threads must all be gone
+        Thread.sleep(500);
+        long leftover = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().startsWith("NowPlaying-"))
+                .count();
+        assertTrue(leftover == 0, leftover + " supervisor/reader threads still alive");
+    }
+
+    @Test
+    void crashLoop() throws Exception {
+        CompanionSupervisor.Policy policy = new CompanionSupervisor.Policy(200, 1_600, 0.2, 10_000, 60_000, 4, 60_000);
+        Harness h = new Harness(null);
+        CompanionSupervisor supervisor = h.supervisor(policy);
+        supervisor.start();
+
+        expect(h, "ready");
+        long expectedBase = policy.initialBackoffMillis();
+        for (int crash = 1; crash <= 3; crash++) {
+            h.command("crash " + (10 + crash));
+            String down = expect(h, "down");
+            String[] parts = down.split(":");
+            assertTrue(Integer.parseInt(parts[1]) == 10 + crash, "wrong exit code reported: " + down);
+
+            long delay = Long.parseLong(parts[2]);
+            assertTrue(delay >= expectedBase * (1 - policy.jitter()) - 1 && delay <= expectedBase * (1 + policy.jitter()) + 1,
+                    "backoff " + delay + " ms outside the jitter around " + expectedBase + " ms");
+            System.out.println("crash " + crash + ": restarting after " + delay + " ms");
+            expectedBase *= 2;
+
+            expect(h, "ready");
+        }
+        assertTrue(supervisor.restarts() == 3, "expected 3 restarts, got " + supervisor.restarts());
+
+        // Fourth crash inside the window: give up, don't launch again
+        h.command("crash 1");
+        String gaveUp = expect(h, "gaveup");
+        System.out.println("crash 4: " + gaveUp);
+        int launches = h.launches.get();
+        Thread.sleep(policy.maxBackoffMillis());
+        assertTrue(h.launches.get() == launches, "relaunched after giving up");
+        assertTrue(supervisor.state() == CompanionSupervisor.State.GAVE_UP, "state is " + supervisor.state());
+        assertTrue(h.allDead(), "a crashed child is still alive");
+        supervisor.stop();
+    }
+
+    @Test
+    void readinessTimeout() throws Exception {
+        CompanionSupervisor.Policy policy = new CompanionSupervisor.Policy(100, 1_000, 0.2, 1_500, 60_000, 2, 60_000);
+        Harness h = new Harness(() -> false);
+        CompanionSupervisor supervisor = h.supervisor(policy);
+        supervisor.start();
+
+        String down = expect(h, "down");
+        System.out.println("never ready: " + down);
+        expect(h, "gaveup");
+        assertTrue(h.launches.get() == 2, "expected 2 launches, got " + h.launches.get());
+        assertTrue(h.allDead(), "an unready child was left running");
+        supervisor.stop();
+    }
+
+    @Test
+    void stop() throws Exception {
+        Harness h = new Harness(null);
+        CompanionSupervisor supervisor = h.supervisor(CompanionSupervisor.Policy.DEFAULT);
+        supervisor.start();
+        expect(h, "ready");
+
+        supervisor.stop();
+        assertTrue(h.allDead(), "child still alive after stop()");
+        assertTrue(supervisor.state() == CompanionSupervisor.State.STOPPED, "state is " + supervisor.state());
+
+        Thread.sleep(500);
+        assertTrue(h.launches.get() == 1, "launched again after stop()");
+        assertTrue(h.events.stream().noneMatch(e -> e.startsWith("down")), "stop() was reported as a crash");
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    private static final class Harness implements CompanionSupervisor.Listener {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final AtomicInteger launches = new AtomicInteger();
+        final List<Process> processes = new CopyOnWriteArrayList<>();
+        final AtomicBoolean stateSeen = new AtomicBoolean();
+        final BooleanSupplier probe;
+
+        /**
+         * @param probe readiness probe, or null for "a state line arrived since the last launch"
+         */
+        Harness(BooleanSupplier probe) {
+            this.probe = probe != null ? probe : stateSeen::get;
+        }
+
+        CompanionSupervisor supervisor(CompanionSupervisor.Policy policy) {
+            return new CompanionSupervisor(this::launch, probe, this, policy);
+        }
+
+        private Process launch() throws IOException {
+            stateSeen.set(false);
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    StandInCompanionServer.class.getName(), "--stdio", "60");
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+            processes.add(p);
+            launches.incrementAndGet();
+            return p;
+        }
+
+        void command(String command) throws IOException {
+            OutputStream stdin = processes.get(processes.size() - 1).getOutputStream();
+            stdin.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        }
+
+        boolean allDead() throws InterruptedException {
+            for (Process p : processes) {
+                if (!p.waitFor(5, TimeUnit.SECONDS)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void onOutputLine(String line) {
+            if (MediaStdioStream.isStateLine(line)) stateSeen.set(true);
+        }
+
+        @Override
+        public void onOutputClosed() {
+        }
+
+        @Override
+        public void onReady(Process process) {
+            events.add("ready");
+        }
+
+        @Override
+        public void onDown(int exitCode, long retryInMillis) {
+            events.add("down:" + exitCode + ":" + retryInMillis);
+        }
+
+        @Override
+        public void onGaveUp(String reason) {
+            events.add("gaveup:" + reason);
+        }
+    }
+
+    private static String expect(Harness h, String kind) throws InterruptedException {
+        String event = h.events.poll(READY_WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(event != null, "no '" + kind + "' event within " + READY_WAIT_SECONDS + " s");
+        assertTrue(event.startsWith(kind), "expected '" + kind + "', got '" + event + "'");
+        return event;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validates {@link CoverPalette} on synthetic covers: the background follows the most common
+ * colour and stays dark enough for white text, the accent prefers a colourful minority over a
+ * grey majority and stays bright enough to see, transparent art has no palette, and a large cover
+ * is only sampled, not read pixel by pixel.
+ */
+class CoverPaletteTest {
+
+    @Test
+    void extract() {
+        // A solid colour is both; darkened for the panel, lightened for the bar
+        long red = CoverPalette.extract(300, 300, (x, y) -> 0xFFC02020);
+        report("solid red", red);
+        checkBounds(red);
+        assertTrue(dominantChannel(CoverPalette.background(red)) == 16, "red cover has a " + hex(CoverPalette.background(red)) + " background");
+        assertTrue(dominantChannel(CoverPalette.accent(red)) == 16, "red cover has a " + hex(CoverPalette.accent(red)) + " accent");
+
+        // Mostly grey with a blue band: grey panel, blue bar
+        long band = CoverPalette.extract(640, 640, (x, y) -> y < 160 ? 0xFF2050E0 : 0xFF808080);
+        report("grey with a blue band", band);
+        checkBounds(band);
+        int bg = CoverPalette.background(band);
+        assertTrue(dominantChannel(bg) == -1, "grey majority should make a grey background, got " + hex(bg));
+        assertTrue(dominantChannel(CoverPalette.accent(band)) == 0, "blue band should make a blue accent, got " + hex(CoverPalette.accent(band)));
+
+        // Nothing colourful: the accent falls back to the (lightened) dominant colour
+        long white = CoverPalette.extract(64, 64, (x, y) -> 0xFFF0F0F0);
+        report("white", white);
+        checkBounds(white);
+
+        // Noise still lands within bounds
+        long noise = CoverPalette.extract(500, 400, (x, y) -> 0xFF000000 | (int) (((x * 73L + y * 151L) * 2654435761L) >>> 8) & 0xFFFFFF);
+        report("noise", noise);
+        checkBounds(noise);
+
+        // Transparent or empty art has no palette
+        assertTrue(CoverPalette.extract(100, 100, (x, y) -> 0x00FF0000) == 0L, "transparent cover got a palette");
+        assertTrue(CoverPalette.extract(0, 0, (x, y) -> 0xFFFFFFFF) == 0L, "empty cover got a palette");
+        assertTrue(CoverPalette.extract(1, 1, (x, y) -> 0xFF3060C0) != 0L, "1x1 cover got no palette");
+
+        // Sampled, so a big cover costs the same as a small one
+        AtomicInteger reads = new AtomicInteger();
+        CoverPalette.extract(3000, 3000, (x, y) -> {
+            reads.incrementAndGet();
+            assertTrue(x >= 0 && x < 3000 && y >= 0 && y < 3000, "sampled outside the image at " + x + "," + y);
+            return 0xFF406080;
+        });
+        assertTrue(reads.get() <= 48 * 48, reads.get() + " pixels read from a 3000x3000 cover");
+        System.out.println("3000x3000 cover: " + reads.get() + " pixels read");
+    }
+
+    private static void checkBounds(long palette) {
+        int background = CoverPalette.background(palette);
+        int accent = CoverPalette.accent(palette);
+        assertTrue(background >>> 24 == 0xFF && accent >>> 24 == 0xFF, "palette colours not opaque");
+        assertTrue(CoverPalette.luminance(background) <= 0.17, hex(background) + " too bright for white text");
+        assertTrue(CoverPalette.luminance(accent) >= 0.49, hex(accent) + " too dark for a progress bar");
+    }
+
+    /**
+     * Shift of the clearly strongest channel (16 red, 8 green, 0 blue), or -1 if none stands out.
+     */
+    private static int dominantChannel(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        if (r > g + 20 && r > b + 20) return 16;
+        if (g > r + 20 && g > b + 20) return 8;
+        if (b > r + 20 && b > g + 20) return 0;
+        return -1;
+    }
+
+    private static void report(String name, long palette) {
+        System.out.println(name + ": background " + hex(CoverPalette.background(palette)) + ", accent " + hex(CoverPalette.accent(palette)));
+    }
+
+    private static String hex(int argb) {
+        return String.format("#%06X", argb & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validates {@link FittedText} with a made-up font (6 px per character, 9 px for CJK and emoji,
+ * nothing for combining marks):
+ *
+ * <ol>
+ *   <li>Cuts: text that fits is shown as is; otherwise the ellipsized prefix fits the width, is
+ *       the longest one that does, and never splits a surrogate pair or a base from its marks.</li>
+ *   <li>Marquee: the offset pauses at the start of every lap and runs through the lap. That computing
+ *       it allocates nothing is measured by {@code FittedTextBenchmark} and enforced by {@code ./gradlew jmh}.</li>
+ *   <li>Layout: the panel stops growing at the configured maximum width.</li>
+ * </ol>
+ */
+class FittedTextTest {
+
+    private static final HudLayout.TextMeasurer FONT = new HudLayout.TextMeasurer() {
+        @Override
+        public int width(String text) {
+            return (int) Math.ceil(advance(text));
+        }
+
+        @Override
+        public float advance(String text) {
+            float width = 0f;
+            for (int i = 0; i < text.length(); ) {
+                int cp = text.codePointAt(i);
+                i += Character.charCount(cp);
+                int type = Character.getType(cp);
+                if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK) continue;
+                width += Character.isSupplementaryCodePoint(cp) || Character.isIdeographic(cp) ? 9f : 6f;
+            }
+            return width;
+        }
+    };
+
+    // -------------------------
+    // Cuts
+    // -------------------------
+
+    @Test
+    void cuts() {
+        FittedText line = new FittedText();
+
+        line.measure("Windowlicker", FONT);
+        assertTrue(line.width() == 72, "width " + line.width());
+        assertTrue(line.fit(72, FONT) == 72 && !line.overflows() && line.shown().equals("Windowlicker"), "fitting text was cut");
+
+        line.fit(50, FONT);
+        assertTrue(line.overflows() && line.shown().equals("Windo" + FittedText.ELLIPSIS), "cut to " + line.shown());
+
+        // Trailing spaces go before the ellipsis
+        line.measure("Everything In Its Right Place", FONT);
+        line.fit(84, FONT);
+        assertTrue(line.shown().equals("Everything" + FittedText.ELLIPSIS), "cut to '" + line.shown() + "'");
+
+        String[] texts = {
+                "夜に駆ける 〜 YOASOBI ライブ・オン・ユーチューブ",
+                "🎵 Mood 🎶 Playlist 🎧🎧",
+                "Sigur Rós - Hoppípolla (Ágætis byrjun)",
+                "Everything In Its Right Place",
+        };
+        for (String text : texts) {
+            line.measure(text, FONT);
+            for (int max = 0; max <= line.width() + 10; max++) {
+                int width = line.fit(max, FONT);
+                String shown = line.shown();
+                if (!line.overflows()) {
+                    assertTrue(shown.equals(text) && width == line.width(), "fitting text changed at " + max);
+                    continue;
+                }
+                assertTrue(FONT.width(shown) <= Math.max(max, FONT.width(FittedText.ELLIPSIS)), "'" + shown + "' wider than " + max);
+                String prefix = shown.substring(0, shown.length() - FittedText.ELLIPSIS.length());
+                assertTrue(text.startsWith(prefix), "'" + shown + "' isn't a prefix of the text");
+                if (!prefix.isEmpty()) {
+                    char last = prefix.charAt(prefix.length() - 1);
+                    assertTrue(!Character.isHighSurrogate(last), "surrogate pair split in '" + shown + "'");
+                    if (prefix.length() < text.length()) {
+                        int next = text.codePointAt(prefix.length());
+                        assertTrue(Character.getType(next) != Character.NON_SPACING_MARK, "mark cut off its base in '" + shown + "'");
+                        assertTrue(!Character.isLowSurrogate(text.charAt(prefix.length())), "surrogate pair split in '" + shown + "'");
+                    }
+                }
+                assertTrue(longestFit(text, max).equals(prefix), "'" + shown + "' isn't the longest fit for " + max
+                        + ", expected '" + longestFit(text, max) + "'");
+            }
+        }
+    }
+
+    /**
+     * The same cut by trying every code point boundary, widest first.
+     */
+    private static String longestFit(String text, int max) {
+        int budget = max - FONT.width(FittedText.ELLIPSIS);
+        for (int end = text.length(); end > 0; end--) {
+            if (end < text.length() && (Character.isLowSurrogate(text.charAt(end))
+                    || Character.getType(text.codePointAt(end)) == Character.NON_SPACING_MARK)) {
+                continue;
+            }
+            if (FONT.advance(text.substring(0, end)) <= budget) return text.substring(0, end).stripTrailing();
+        }
+        return "";
+    }
+
+    // -------------------------
+    // Marquee
+    // -------------------------
+
+    @Test
+    void marquee() {
+        FittedText line = new FittedText();
+        line.measure("Everything In Its Right Place", FONT);
+        int lap = line.width() + FittedText.MARQUEE_GAP;
+
+        assertTrue(line.marqueeOffset(0) == 0, "scrolled without a pause");
+        assertTrue(line.marqueeOffset(1_999_000_000L) == 0, "pause cut short");
+        assertTrue(line.marqueeOffset(3_000_000_000L) == 30, "offset after a second of scrolling: " + line.marqueeOffset(3_000_000_000L));
+
+        int last = -1;
+        long lapNanos = 2_000_000_000L + lap * 1_000_000_000L / 30;
+        for (long t = 2_000_000_000L; t < lapNanos; t += 16_000_000L) {
+            int offset = line.marqueeOffset(t);
+            assertTrue(offset >= last && offset < lap, "offset " + offset + " at " + t);
+            last = offset;
+        }
+        assertTrue(line.marqueeOffset(lapNanos) == 0, "second lap didn't start over");
+    }
+
+    // -------------------------
+    // Layout
+    // -------------------------
+
+    @Test
+    void layout() {
+        NowPlayingConfig config = new NowPlayingConfig();
+        config.showCoverArt = false;
+        HudLayout layout = new HudLayout();
+        Snapshot s = new Snapshot("Everything In Its Right Place (Live at the Royal Albert Hall)", "Radiohead",
+                false, true, true, 0.5, 0.0, 100.0, 251.0, 1.0, 0L, false, 0, 0);
+
+        layout.update(s, config, 0, 854, 480, 9, FONT);
+        assertTrue(layout.panelWidth <= config.maxPanelWidth, "panel " + layout.panelWidth + " wider than " + config.maxPanelWidth);
+        assertTrue(layout.title.overflows() && !layout.scrollTitle, "long title not cut");
+        assertTrue(!layout.artist.overflows() && layout.artist.shown().equals("Radiohead"), "short artist changed");
+
+        config.scrollLongText = true;
+        layout.update(s, config, 1, 854, 480, 9, FONT);
+        assertTrue(layout.scrollTitle && !layout.scrollArtist, "only the long title should scroll");
+        assertTrue(layout.panelWidth == config.maxPanelWidth, "scrolling panel isn't at the maximum width: " + layout.panelWidth);
+        assertTrue(layout.textWidth == config.maxPanelWidth - HudLayout.TEXT_PADDING * 2, "clip width " + layout.textWidth);
+    }
+}
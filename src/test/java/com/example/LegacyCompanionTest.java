@@ -0,0 +1,154 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every transport against {@link StandInCompanionServer} {@code --legacy}, which answers like
+ * the companion binaries built before any of them: v1 {@code /media_info} and {@code /media_image}
+ * on exact paths, nothing else.
+ *
+ * Checks that the client's own requests still get a single session and its cover from it, and that
+ * the event stream, the socket and the stdio transport each stay disconnected (stdio: recognises
+ * the companion as one that ignored {@code --stdio}) so the client keeps polling.
+ */
+class LegacyCompanionTest {
+
+    // The paths NowPlayingClient asks for
+    private static final String INFO_PATH = "/media_info?v=2&sessions=1";
+    private static final String IMAGE_PATH = "/media_image";
+    private static final String EVENTS_PATH = "/media_events?v=2&sessions=1";
+
+    // Long enough for a transport that is going to connect to have done so
+    private static final long SETTLE_MILLIS = 1_500;
+
+    private StandInCompanionServer server;
+    private String base;
+
+    @BeforeEach
+    void startLegacyCompanion() throws IOException {
+        server = new StandInCompanionServer(0, TimeUnit.SECONDS.toMillis(60));
+        server.startLegacy();
+        base = "http://localhost:" + server.port();
+    }
+
+    @AfterEach
+    void stopLegacyCompanion() {
+        server.stop();
+    }
+
+    @Test
+    void polling() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+        CompanionHttp.ResponseBuffer body = CompanionHttp.get(URI.create(base + INFO_PATH));
+        assertTrue(body != null, "no answer to the client's poll");
+        MediaInfoReader.readSessions(body.reader(), table, document);
+
+        SessionTable.Session only = table.select(NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING, List.of());
+        assertTrue(table.size() == 1 && only != null && only.id.isEmpty(), "v1 state not taken as one session");
+        assertTrue("Stand-In Overture".equals(only.info.title) && "Playing".equals(only.info.status), "v1 fields lost");
+        assertTrue(only.info.endMs == 60_000 && only.info.imageHash == null, "v1 timeline not read: " + only.info.endMs);
+        assertTrue(table.seq() == 0, "unnumbered document gave a sequence number, so the next poll would send since=");
+
+        // An empty session id makes the client ask the plain image path
+        assertTrue(CompanionHttp.get(URI.create(base + IMAGE_PATH)) != null, "no cover on " + IMAGE_PATH);
+        assertTrue(CompanionHttp.get(URI.create(base + "/media_image.jpg")) == null, "legacy stand-in answered a path the binaries don't");
+    }
+
+    @Test
+    void eventStream() throws Exception {
+        AtomicInteger events = new AtomicInteger();
+        MediaEventStream stream = new MediaEventStream(() -> base + EVENTS_PATH, (json, receivedNanos) -> events.incrementAndGet());
+        stream.start();
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+            assertTrue(!stream.isConnected() && events.get() == 0, "event stream connected to a companion without /media_events");
+        } finally {
+            stream.stop();
+        }
+        assertTrue(CompanionHttp.get(URI.create(base + INFO_PATH)) != null, "polling stopped answering");
+    }
+
+    @Test
+    void socket() throws Exception {
+        Path socket = Files.createTempDirectory("nowplaying").resolve("np.sock");
+        AtomicInteger frames = new AtomicInteger();
+        MediaSocketStream stream = new MediaSocketStream(socket, info -> frames.incrementAndGet(), (hash, bytes) -> { });
+        stream.start();
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+            assertTrue(!stream.isConnected() && frames.get() == 0, "socket stream connected without a socket server");
+        } finally {
+            stream.stop();
+        }
+        assertTrue(CompanionHttp.get(URI.create(base + INFO_PATH)) != null, "polling stopped answering");
+    }
+
+    @Test
+    void stdio() throws Exception {
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        URI info = URI.create("http://localhost:" + port + INFO_PATH);
+
+        // Launched the way the client launches a stdio companion
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StandInCompanionServer.class.getName(), "--legacy", "--stdio", String.valueOf(port), "60");
+        pb.redirectErrorStream(true);
+
+        AtomicInteger states = new AtomicInteger();
+        MediaStdioStream stream = new MediaStdioStream(i -> states.incrementAndGet(), (hash, bytes) -> { });
+        stream.start();
+        Process process = pb.start();
+        long launchNanos = System.nanoTime();
+
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (MediaStdioStream.isStateLine(line)) stream.accept(line);
+                }
+            } catch (IOException ignored) {
+                // Child killed
+            } finally {
+                stream.endOfStream();
+            }
+        }, "LegacyTest-Reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            // The client's readiness probe, as the supervisor calls it
+            long deadline = launchNanos + TimeUnit.SECONDS.toNanos(10);
+            boolean ignored = false;
+            while (!ignored && System.nanoTime() - deadline < 0) {
+                ignored = stream.ignoredByCompanion(launchNanos, () -> CompanionHttp.get(info) != null);
+                if (!ignored) Thread.sleep(100);
+            }
+            assertTrue(ignored, "companion that ignored --stdio wasn't recognised");
+            assertTrue(System.nanoTime() - launchNanos >= MediaStdioStream.LEGACY_GRACE_NANOS, "gave up on the pipe before the grace period");
+            assertTrue(states.get() == 0 && !stream.isConnected(), "state lines from a companion without --stdio");
+            assertTrue(CompanionHttp.get(info) != null, "companion doesn't answer the polls the client falls back to");
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
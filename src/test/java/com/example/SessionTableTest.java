@@ -0,0 +1,323 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Validates {@link SessionTable} and {@link MediaInfoReader#readSessions}:
+ *
+ * <ol>
+ *   <li>Diffing: repeated documents copy nothing, and only changed, new or vanished sessions count.</li>
+ *   <li>Selection: a playing session beats a paused one whatever the companion picked, the most
+ *       recently started one wins among several, and the app priority list overrides recency.</li>
+ *   <li>Compatibility: a single state from an older companion becomes one session.</li>
+ *   <li>Sequence numbers: "unchanged" and patches touch only what they name, and one against a
+ *       document the table doesn't have is rejected and makes it ask for a full one.</li>
+ *   <li>State numbers: numbered sessions are diffed by their state and text numbers, unnumbered
+ *       ones by their fields.</li>
+ *   <li>End to end: polling the stand-in with {@code since}, subscribing to its patches, and
+ *       fetching a session's own cover.</li>
+ * </ol>
+ */
+class SessionTableTest {
+
+    private static final List<String> PRIORITY = List.of("spotify", "vlc");
+
+    @Test
+    void diffing() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+
+        read(table, document, doc(1_000, "a",
+                session("a", "Spotify.exe", "Playing", "Song"),
+                session("b", "MSEdge", "Paused", "Video"),
+                session("c", "vlc.exe", "Stopped", "Movie")));
+        assertTrue(table.size() == 3 && table.added() == 3, "first document should add three sessions");
+        SessionTable.Session a = table.select(NowPlayingConfig.SessionRule.COMPANION, PRIORITY);
+        assertTrue(a != null && a.id.equals("a") && table.changedInLastUpdate(a), "companion pick 'a' not found as new");
+        assertTrue(document.nowMs == 1_000, "top-level nowMs not read into the document");
+
+        // Only the clock moved: nothing to copy
+        read(table, document, doc(2_000, "a",
+                session("a", "Spotify.exe", "Playing", "Song"),
+                session("b", "MSEdge", "Paused", "Video"),
+                session("c", "vlc.exe", "Stopped", "Movie")));
+        assertTrue(table.added() == 0 && table.changed() == 0 && table.removed() == 0,
+                "unchanged document reported " + table.added() + "/" + table.changed() + "/" + table.removed());
+        assertTrue(!table.changedInLastUpdate(a), "unchanged session marked as changed");
+        assertTrue(table.select(NowPlayingConfig.SessionRule.COMPANION, PRIORITY) == a, "session object replaced without a change");
+
+        read(table, document, doc(3_000, "a",
+                session("a", "Spotify.exe", "Playing", "Next Song"),
+                session("b", "MSEdge", "Paused", "Video")));
+        assertTrue(table.changed() == 1 && table.removed() == 1 && table.size() == 2, "expected one change and one removal");
+        assertTrue(table.changedInLastUpdate(a) && a.info.title.equals("Next Song"), "changed session not updated in place");
+
+        // A broken document updates what it got through, but removes nothing
+        try {
+            MediaInfoReader.readSessions(new StringReader("{\"version\":2,\"sessions\":[{\"id\":\"x\"},"), table, document);
+            fail("truncated document was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+        assertTrue(table.size() == 3, "truncated document removed sessions or lost the one it listed");
+    }
+
+    @Test
+    void selection() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+
+        // The companion picked the paused browser video; the playing player still wins
+        read(table, document, doc(0, "b",
+                session("a", "Spotify.exe", "Playing", "Song"),
+                session("b", "MSEdge", "Paused", "Video")));
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING).equals("a"), "paused session beat a playing one");
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.APP_PRIORITY).equals("a"), "paused session beat a playing one by priority");
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.COMPANION).equals("b"), "companion rule ignored the companion's pick");
+
+        // Both play; the one that started last is the one the user just pressed play on
+        read(table, document, doc(0, "b",
+                session("a", "Spotify.exe", "Playing", "Song"),
+                session("b", "MSEdge", "Playing", "Video")));
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING).equals("b"), "most recently started session not picked");
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.APP_PRIORITY).equals("a"), "app priority didn't override recency");
+
+        // Nothing plays any more: the last one seen playing stays
+        read(table, document, doc(0, "",
+                session("a", "Spotify.exe", "Paused", "Song"),
+                session("b", "MSEdge", "Playing", "Video")));
+        read(table, document, doc(0, "",
+                session("a", "Spotify.exe", "Paused", "Song"),
+                session("b", "MSEdge", "Paused", "Video")));
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING).equals("b"), "last playing session not kept");
+
+        // Unlisted apps rank after listed ones
+        read(table, document, doc(0, "",
+                session("c", "Foo.exe", "Playing", "Other"),
+                session("d", "org.videolan.vlc", "Playing", "Movie")));
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.APP_PRIORITY).equals("d"), "listed app didn't beat an unlisted one");
+
+        // Without a pick of its own, the companion rule falls back to the playing session
+        read(table, document, doc(0, "",
+                session("c", "Foo.exe", "Paused", "Other"),
+                session("d", "org.videolan.vlc", "Playing", "Movie")));
+        assertTrue(pick(table, NowPlayingConfig.SessionRule.COMPANION).equals("d"), "companion rule without a pick didn't fall back");
+    }
+
+    @Test
+    void compatibility() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+
+        read(table, document, "{\"version\":2,\"title\":\"Solo\",\"app\":\"Spotify.exe\",\"status\":\"Playing\",\"nowMs\":5}");
+        SessionTable.Session only = table.select(NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING, PRIORITY);
+        assertTrue(table.size() == 1 && only != null && only.id.isEmpty(), "single state not taken as one session");
+        assertTrue("Solo".equals(only.info.title) && document.nowMs == 5, "single state fields lost");
+
+        read(table, document, "{\"version\":2,\"title\":\"Solo\",\"app\":\"Spotify.exe\",\"status\":\"Playing\",\"nowMs\":6}");
+        assertTrue(table.changed() == 0, "repeated single state counted as a change");
+    }
+
+    @Test
+    void sequenceNumbers() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+
+        read(table, document, doc(10, "a",
+                session("a", "Spotify.exe", "Playing", "Song"),
+                session("b", "MSEdge", "Paused", "Video")));
+        assertTrue(table.seq() == 10, "sequence number not taken from the document");
+        SessionTable.Session a = table.select(NowPlayingConfig.SessionRule.COMPANION, PRIORITY);
+        long text = a.info.textVersion;
+        assertTrue(text != 0, "no text version for a new session");
+
+        read(table, document, "{\"version\":2,\"seq\":10,\"nowMs\":11,\"unchanged\":true}");
+        assertTrue(table.changed() == 0 && table.size() == 2 && document.nowMs == 11, "unchanged document changed the table");
+
+        // Only the named fields move; the title stays, and with it the text version
+        read(table, document, "{\"version\":2,\"seq\":12,\"base\":10,\"nowMs\":12,\"current\":\"a\","
+                + "\"patch\":[{\"id\":\"a\",\"status\":\"Paused\",\"positionMs\":5000,\"imageHash\":\"AB\"}]}");
+        assertTrue(table.seq() == 12 && table.changed() == 1 && table.size() == 2, "patch not applied as one change");
+        assertTrue(table.select(NowPlayingConfig.SessionRule.COMPANION, PRIORITY) == a, "patched session replaced");
+        assertTrue("Song".equals(a.info.title) && "Paused".equals(a.info.status) && a.info.positionMs == 5000
+                && a.info.endMs == 180_000 && "AB".equals(a.info.imageHash), "patch didn't touch exactly its fields");
+        assertTrue(a.info.textVersion == text, "text version moved without a text change");
+
+        // Null clears, new sessions come in whole, removed ones go
+        read(table, document, "{\"version\":2,\"seq\":13,\"base\":12,\"nowMs\":13,\"current\":\"a\",\"patch\":["
+                + "{\"id\":\"a\",\"title\":\"Other\",\"imageHash\":null},"
+                + "{\"id\":\"c\",\"title\":\"New\",\"app\":\"vlc.exe\",\"status\":\"Playing\"},"
+                + "{\"id\":\"b\",\"removed\":true}]}");
+        assertTrue(table.added() == 1 && table.changed() == 1 && table.removed() == 1 && table.size() == 2,
+                "expected one session added, one changed and one removed");
+        assertTrue(a.info.imageHash == null && "Other".equals(a.info.title) && a.info.textVersion != text, "clearing patch not applied");
+        SessionTable.Session c = table.select(NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING, PRIORITY);
+        assertTrue(c.id.equals("c") && c.info.playbackRate == 1.0 && c.info.textVersion != 0, "new session from a patch incomplete");
+
+        // A patch against a document we never saw is rejected before it touches anything
+        try {
+            read(table, document, "{\"version\":2,\"seq\":16,\"base\":15,\"nowMs\":16,"
+                    + "\"patch\":[{\"id\":\"a\",\"status\":\"Playing\"}]}");
+            fail("patch against another base was applied");
+        } catch (IOException expected) {
+            // Expected
+        }
+        assertTrue("Paused".equals(a.info.status), "rejected patch still changed a session");
+        assertTrue(table.seq() == 0, "table didn't ask for a full document after a rejected patch");
+
+        read(table, document, doc(20, "a", session("a", "Spotify.exe", "Paused", "Other")));
+        try {
+            read(table, document, "{\"version\":2,\"seq\":19,\"nowMs\":21,\"unchanged\":true}");
+            fail("unchanged against another sequence number was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+        assertTrue(table.seq() == 0, "table didn't ask for a full document after a stray unchanged");
+    }
+
+    @Test
+    void stateNumbers() throws IOException {
+        SessionTable table = new SessionTable();
+        MediaInfo document = new MediaInfo();
+
+        read(table, document, doc(10, "a", numbered(session("a", "Spotify.exe", "Playing", "Song"), 5, 5)));
+        SessionTable.Session a = table.select(NowPlayingConfig.SessionRule.COMPANION, PRIORITY);
+        long text = a.info.textVersion;
+
+        // Same state number: nothing to copy, whatever the fields say
+        read(table, document, doc(11, "a", numbered(session("a", "Spotify.exe", "Playing", "Song (Live)"), 5, 5)));
+        assertTrue(table.changed() == 0 && "Song".equals(a.info.title), "session with the same state number was diffed by its fields");
+
+        // New state, same text number: the text version stays
+        read(table, document, doc(12, "a", numbered(session("a", "Spotify.exe", "Paused", "Song"), 12, 5)));
+        assertTrue(table.changed() == 1 && "Paused".equals(a.info.status), "new state number not taken as a change");
+        assertTrue(a.info.textVersion == text, "text version moved with the text number unchanged");
+
+        read(table, document, doc(13, "a", numbered(session("a", "Spotify.exe", "Paused", "Song"), 13, 13)));
+        assertTrue(table.changed() == 1 && a.info.textVersion != text, "new text number didn't move the text version");
+
+        // Without numbers the fields decide again
+        read(table, document, doc(14, "a", session("a", "Spotify.exe", "Playing", "Song")));
+        assertTrue(table.changed() == 1 && "Playing".equals(a.info.status), "unnumbered session not diffed by its fields");
+        read(table, document, doc(15, "a", session("a", "Spotify.exe", "Playing", "Song")));
+        assertTrue(table.changed() == 0, "repeated unnumbered session counted as a change");
+    }
+
+    @Test
+    void endToEnd() throws Exception {
+        StandInCompanionServer server = new StandInCompanionServer(0, 60_000);
+        server.start();
+        try {
+            String base = "http://localhost:" + server.port();
+            URI info = URI.create(base + "/media_info?v=2&sessions=1");
+            SessionTable table = new SessionTable();
+            MediaInfo document = new MediaInfo();
+
+            assertTrue(poll(info, table, document).contains("\"sessions\""), "first poll wasn't a full document");
+            assertTrue(table.size() == 2, "stand-in should report two sessions, got " + table.size());
+            assertTrue(pick(table, NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING).equals(StandInCompanionServer.PLAYER_SESSION),
+                    "paused browser video shown instead of the player");
+
+            String unchanged = poll(info, table, document);
+            assertTrue(unchanged.contains("\"unchanged\":true") && table.changed() == 0, "repeated poll wasn't answered with unchanged");
+
+            // Playing the video makes it the most recently started session
+            server.setBrowserPlaying(true);
+            String patch = poll(info, table, document);
+            assertTrue(patch.contains("\"patch\"") && !patch.contains("\"id\":\"" + StandInCompanionServer.PLAYER_SESSION),
+                    "change wasn't sent as a patch of the browser session alone: " + patch);
+            assertTrue(table.changed() == 1, "expected exactly the browser session to change");
+            SessionTable.Session browser = table.select(NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING, PRIORITY);
+            assertTrue(browser.id.equals(StandInCompanionServer.BROWSER_SESSION), "browser video not picked after it started playing");
+            assertTrue(browser.info.stateSeq == table.seq(), "patched session's state number isn't the patch's");
+
+            // Each session's cover is served on its own
+            CompanionHttp.ResponseBuffer cover = CompanionHttp.get(URI.create(base + "/media_image.jpg?session=" + browser.id));
+            assertTrue(cover != null, "no cover for the browser session");
+            String hash = HexFormat.of().withUpperCase().formatHex(MessageDigest.getInstance("SHA-1").digest(cover.toByteArray()));
+            assertTrue(hash.equals(browser.info.imageHash), "cover doesn't match the browser session's image hash");
+            assertTrue(CompanionHttp.get(URI.create(base + "/media_image.jpg?session=nope")) == null, "unknown session got a cover");
+
+            // The event stream delivers the same documents, patches after the first
+            SessionTable pushed = new SessionTable();
+            MediaInfo pushedDocument = new MediaInfo();
+            CountDownLatch received = new CountDownLatch(1);
+            CountDownLatch patched = new CountDownLatch(1);
+            MediaEventStream stream = new MediaEventStream(() -> base + "/media_events?v=2&sessions=1", (json, receivedNanos) -> {
+                String text = new BufferedReader(json).lines().collect(Collectors.joining("\n"));
+                MediaInfoReader.readSessions(new StringReader(text), pushed, pushedDocument);
+                if (pushed.size() == 2) received.countDown();
+                if (text.contains("\"patch\"") && pushed.changed() == 1) patched.countDown();
+            });
+            stream.start();
+            try {
+                assertTrue(received.await(10, TimeUnit.SECONDS), "no sessions document pushed");
+                server.setBrowserPlaying(false);
+                assertTrue(patched.await(10, TimeUnit.SECONDS), "change not pushed as a patch");
+                assertTrue(pick(pushed, NowPlayingConfig.SessionRule.MOST_RECENTLY_PLAYING).equals(StandInCompanionServer.PLAYER_SESSION),
+                        "pushed patch didn't pause the browser session");
+            } finally {
+                stream.stop();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    /**
+     * Polls like the client, with the table's sequence number once it has one.
+     *
+     * @return the response
+     */
+    private static String poll(URI info, SessionTable table, MediaInfo document) throws IOException {
+        URI uri = table.seq() != 0 ? URI.create(info + "&since=" + table.seq()) : info;
+        CompanionHttp.ResponseBuffer body = CompanionHttp.get(uri);
+        assertTrue(body != null, "no answer from " + uri);
+        String text = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        MediaInfoReader.readSessions(new StringReader(text), table, document);
+        return text;
+    }
+
+    private static void read(SessionTable table, MediaInfo document, String json) throws IOException {
+        MediaInfoReader.readSessions(new StringReader(json), table, document);
+    }
+
+    private static String pick(SessionTable table, NowPlayingConfig.SessionRule rule) {
+        SessionTable.Session s = table.select(rule, PRIORITY);
+        return s != null ? s.id : "(none)";
+    }
+
+    // Numbered by its clock, which is all these checks need
+    private static String doc(long nowMs, String current, String... sessions) {
+        return "{\"version\":2,\"seq\":" + nowMs + ",\"nowMs\":" + nowMs + ",\"current\":\"" + current
+                + "\",\"sessions\":[" + String.join(",", sessions) + "]}";
+    }
+
+    private static String numbered(String session, long stateSeq, long textSeq) {
+        return session.substring(0, session.length() - 1) + ",\"stateSeq\":" + stateSeq + ",\"textSeq\":" + textSeq + "}";
+    }
+
+    private static String session(String id, String app, String status, String title) {
+        return "{\"id\":\"" + id + "\",\"title\":\"" + title + "\",\"artist\":\"Someone\",\"app\":\"" + app
+                + "\",\"status\":\"" + status + "\",\"positionMs\":1000,\"endMs\":180000,\"anchorMs\":42}";
+    }
+}
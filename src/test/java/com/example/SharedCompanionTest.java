@@ -0,0 +1,274 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several simulated game instances as separate JVMs against one {@link SharedCompanion}
+ * directory, each supervising the shared {@link StandInCompanionServer} the way the client does.
+ *
+ * Checks that concurrently starting instances end up on a single companion and port, that leaving
+ * or crashing instances keep it running for the others, that a companion killed under them is
+ * relaunched once and found again by all of them, and that the last instance to leave shuts it
+ * down and cleans up. A companion that ignores {@code --port-file} is found on its fixed port and
+ * published for the others.
+ */
+class SharedCompanionTest {
+
+    private static final long EVENT_WAIT_SECONDS = 30;
+    private static final String INFO_PATH = "/media_info?v=2";
+
+    @Test
+    void shared() throws Exception {
+        Path dir = Files.createTempDirectory("nowplaying-shared");
+        List<Instance> instances = new ArrayList<>();
+        try {
+            // Three instances starting at once race for the launch
+            Instance a = Instance.start(dir);
+            Instance b = Instance.start(dir);
+            Instance c = Instance.start(dir);
+            instances.addAll(List.of(a, b, c));
+
+            String[] ready = {a.expect("ready"), b.expect("ready"), c.expect("ready")};
+            System.out.println("three instances: " + String.join(", ", ready));
+            assertTrue(ready[0].equals(ready[1]) && ready[1].equals(ready[2]), "instances ended up on different companions");
+            long firstPid = pidOf(ready[0]);
+            assertTrue(standIns(dir).count() == 1, "expected one companion, found " + standIns(dir).count());
+
+            // Leaving and crashing instances don't take it down for the rest
+            assertTrue(a.leave().equals("left"), "first instance to leave was treated as the last");
+            b.process.destroyForcibly().waitFor();
+            assertTrue(alive(firstPid), "companion stopped while instances still use it");
+            System.out.println("after one leave and one crash: companion still running");
+
+            // A companion killed under them is relaunched once, and everyone finds the new one
+            Instance d = Instance.start(dir);
+            instances.add(d);
+            assertTrue(d.expect("ready").equals(ready[0]), "late instance didn't attach to the running companion");
+            ProcessHandle.of(firstPid).orElseThrow().destroyForcibly();
+
+            c.expect("down");
+            d.expect("down");
+            String cReady = c.expect("ready");
+            String dReady = d.expect("ready");
+            System.out.println("after the companion was killed: " + cReady + ", " + dReady);
+            assertTrue(cReady.equals(dReady), "instances relaunched separate companions");
+            assertTrue(pidOf(cReady) != firstPid, "companion was not relaunched");
+            assertTrue(standIns(dir).count() == 1, "expected one companion after the relaunch, found " + standIns(dir).count());
+
+            // The last one out shuts it down and leaves no files behind
+            long secondPid = pidOf(cReady);
+            assertTrue(c.leave().equals("left"), "second-to-last instance was treated as the last");
+            assertTrue(alive(secondPid), "companion stopped before the last instance left");
+            assertTrue(d.leave().equals("last"), "last instance to leave didn't shut the companion down");
+            assertTrue(!alive(secondPid), "companion still running after the last instance left");
+            assertTrue(!Files.exists(dir.resolve("companion.port")), "port file left behind");
+            try (Stream<Path> leases = Files.list(dir.resolve("clients"))) {
+                assertTrue(leases.findAny().isEmpty(), "leases left behind (the crashed instance's should be cleaned up)");
+            }
+            assertTrue(standIns(dir).findAny().isEmpty(), "a companion process is still running");
+        } finally {
+            for (Instance instance : instances) instance.process.destroyForcibly();
+            standIns(dir).forEach(ProcessHandle::destroyForcibly);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void companionWithoutPortFile() throws Exception {
+        Path dir = Files.createTempDirectory("nowplaying-legacy");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Predicate<SharedCompanion.Endpoint> answers = endpoint -> CompanionHttp.get(endpoint.uri(INFO_PATH)) != null;
+
+        SharedCompanion first = new SharedCompanion(dir, port);
+        SharedCompanion second = new SharedCompanion(dir, port);
+        Process companion = null;
+        try {
+            first.join();
+            // Like a companion built before --port-file: told nothing about the port file, fixed port
+            companion = first.acquire((portFile, logFile) -> launchStandIn(logFile, String.valueOf(port), "60"), answers);
+            assertTrue(first.endpoint().port() == port, "fixed port not used: " + first.endpoint());
+            assertTrue(first.endpoint().pid() == companion.pid(), "endpoint names another process");
+
+            second.join();
+            Process attached = second.acquire((portFile, logFile) -> {
+                throw new IOException("launched a second companion");
+            }, answers);
+            assertTrue(attached.pid() == companion.pid(), "second instance didn't attach through the written port file");
+
+            assertTrue(!second.leave(), "second instance was treated as the last");
+            assertTrue(first.leave(), "first instance wasn't the last");
+            assertTrue(companion.waitFor(10, TimeUnit.SECONDS), "companion still running after the last instance left");
+        } finally {
+            if (companion != null) companion.destroyForcibly();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    // -------------------------
+    // Simulated game instance
+    // -------------------------
+
+    /**
+     * One game instance, run in its own JVM: joins, supervises the shared companion and reports on
+     * stdout, then leaves when told to on stdin.
+     *
+     * Usage: {@code SharedCompanionTest <dir>}.
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(args[0]);
+        SharedCompanion shared = new SharedCompanion(dir);
+        shared.join();
+
+        CompanionSupervisor supervisor = new CompanionSupervisor(
+                () -> shared.acquire((portFile, logFile) ->
+                                launchStandIn(logFile, "--port-file", portFile.toString(), "0", "60"),
+                        endpoint -> CompanionHttp.get(endpoint.uri(INFO_PATH)) != null),
+                () -> {
+                    SharedCompanion.Endpoint endpoint = shared.endpoint();
+                    return endpoint != null && CompanionHttp.get(endpoint.uri(INFO_PATH)) != null;
+                },
+                new CompanionSupervisor.Listener() {
+                    @Override
+                    public void onOutputLine(String line) {
+                    }
+
+                    @Override
+                    public void onOutputClosed() {
+                    }
+
+                    @Override
+                    public void onReady(Process process) {
+                        SharedCompanion.Endpoint endpoint = shared.endpoint();
+                        System.out.println("ready port " + endpoint.port() + " pid " + endpoint.pid());
+                    }
+
+                    @Override
+                    public void onDown(int exitCode, long retryInMillis) {
+                        System.out.println("down");
+                    }
+
+                    @Override
+                    public void onGaveUp(String reason) {
+                        System.out.println("gaveup " + reason);
+                    }
+                },
+                new CompanionSupervisor.Policy(200, 1_000, 0.2, 15_000, 60_000, 10, 60_000));
+        supervisor.start();
+
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = stdin.readLine()) != null && !line.equals("leave")) {
+            // Nothing else to do
+        }
+        supervisor.detach();
+        System.out.println(shared.leave() ? "last" : "left");
+    }
+
+    private static Process launchStandIn(Path logFile, String... args) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StandInCompanionServer.class.getName());
+        pb.command().addAll(List.of(args));
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(logFile.toFile());
+        return pb.start();
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    private static final class Instance {
+        final Process process;
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        private Instance(Process process) {
+            this.process = process;
+            Thread reader = new Thread(this::read, "SharedTest-Reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        static Instance start(Path dir) throws IOException {
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    SharedCompanionTest.class.getName(), dir.toString());
+            pb.redirectErrorStream(true);
+            return new Instance(pb.start());
+        }
+
+        private void read() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // The supervisor's own log lines are just noise here
+                    if (!line.startsWith("[NowPlayingMod")) events.add(line);
+                }
+            } catch (IOException ignored) {
+                // Instance killed
+            }
+        }
+
+        String expect(String kind) throws InterruptedException {
+            String event = events.poll(EVENT_WAIT_SECONDS, TimeUnit.SECONDS);
+            assertTrue(event != null, "no '" + kind + "' event within " + EVENT_WAIT_SECONDS + " s");
+            assertTrue(event.startsWith(kind), "expected '" + kind + "', got '" + event + "'");
+            return event;
+        }
+
+        String leave() throws IOException, InterruptedException {
+            OutputStream stdin = process.getOutputStream();
+            stdin.write("leave\n".getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+            String result = events.poll(EVENT_WAIT_SECONDS, TimeUnit.SECONDS);
+            assertTrue(result != null, "instance didn't report leaving");
+            assertTrue(process.waitFor(EVENT_WAIT_SECONDS, TimeUnit.SECONDS), "instance didn't exit after leaving");
+            return result;
+        }
+    }
+
+    private static long pidOf(String ready) {
+        return Long.parseLong(ready.substring(ready.lastIndexOf(' ') + 1));
+    }
+
+    private static boolean alive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    /**
+     * Stand-ins publishing into {@code dir}. Not just our descendants: a companion outlives the
+     * instance that launched it.
+     */
+    private static Stream<ProcessHandle> standIns(Path dir) {
+        String portFile = dir.resolve("companion.port").toString();
+        return ProcessHandle.allProcesses()
+                .filter(p -> p.info().arguments().map(a -> List.of(a).contains(portFile)).orElse(false))
+                .filter(ProcessHandle::isAlive);
+    }
+}
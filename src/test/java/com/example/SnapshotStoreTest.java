@@ -0,0 +1,188 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validates {@link SnapshotStore}:
+ *
+ * <ol>
+ *   <li>Change kinds: each transition reports and stamps exactly the kinds it changed, reaches only
+ *       the listeners subscribed to them, and one without a visible change installs nothing.
+ *       Versioned text is told apart by its source number, not its strings.</li>
+ *   <li>Races: a poller rewriting text and playback while an artwork thread sets the cover loses
+ *       neither side's update, and every installed snapshot gets its own version. The same
+ *       interleaving through a plain get/set is run alongside for comparison.</li>
+ *   <li>Layout: {@link HudLayout} recomputes for new text or cover, not for a new position anchor.</li>
+ * </ol>
+ */
+class SnapshotStoreTest {
+
+    private static final int ROUNDS = 200_000;
+
+    // -------------------------
+    // Change kinds
+    // -------------------------
+
+    @Test
+    void changeKinds() {
+        SnapshotStore store = new SnapshotStore(Snapshot.loading());
+        List<String> seen = new ArrayList<>();
+        store.subscribe((previous, current, changes) -> seen.add("text"), SnapshotStore.Change.TEXT);
+        store.subscribe((previous, current, changes) -> seen.add("cover"), SnapshotStore.Change.ARTWORK);
+
+        long start = store.get().version;
+        int changes = store.set(track("Windowlicker", true, 10.0, 1L));
+        assertTrue(changes == (SnapshotStore.Change.TEXT.bit | SnapshotStore.Change.PLAYBACK.bit | SnapshotStore.Change.ACTIVE.bit),
+                "new track reported as " + changes);
+        Snapshot s = store.get();
+        assertTrue(s.version == start + 1, "version didn't advance by one");
+        assertTrue(s.textVersion == s.version && s.playbackVersion == s.version && s.activeVersion == s.version,
+                "changed kinds weren't stamped with the new version");
+        assertTrue(s.artworkVersion == start, "unchanged cover was stamped");
+        assertTrue(seen.equals(List.of("text")), "listeners for a new track: " + seen);
+
+        seen.clear();
+        changes = store.update(prev -> prev.withImage(true, 300, 300));
+        assertTrue(changes == SnapshotStore.Change.ARTWORK.bit, "cover reported as " + changes);
+        assertTrue(store.get().textVersion == s.textVersion, "cover moved the text version");
+        assertTrue(seen.equals(List.of("cover")), "listeners for a cover: " + seen);
+
+        // Same values in a new object: nothing to install, nobody to tell
+        seen.clear();
+        Snapshot before = store.get();
+        changes = store.update(prev -> prev.withImage(true, 300, 300));
+        assertTrue(changes == 0 && store.get() == before, "an identical snapshot was installed");
+        assertTrue(seen.isEmpty(), "listeners called without a change: " + seen);
+
+        // A new anchor is playback only
+        changes = store.update(prev -> track(prev.title, true, 11.0, 2L).withImage(prev.imageLoaded, prev.coverTexW, prev.coverTexH));
+        assertTrue(changes == SnapshotStore.Change.PLAYBACK.bit, "new anchor reported as " + changes);
+        assertTrue(seen.isEmpty(), "text or cover listeners called for a new anchor: " + seen);
+
+        // Versioned text: the source number decides, the strings aren't compared
+        store.update(prev -> withTextSource(prev, 7L, "Come to Daddy"));
+        changes = store.update(prev -> withTextSource(prev, 7L, "Come to Daddy (edit)"));
+        assertTrue(!SnapshotStore.Change.TEXT.in(changes), "same text source reported as a text change");
+        changes = store.update(prev -> withTextSource(prev, 8L, prev.title));
+        assertTrue(changes == SnapshotStore.Change.TEXT.bit, "new text source reported as " + changes);
+    }
+
+    // -------------------------
+    // Races
+    // -------------------------
+
+    @Test
+    void races() throws InterruptedException {
+        SnapshotStore store = new SnapshotStore(Snapshot.loading());
+        AtomicInteger notified = new AtomicInteger();
+        store.subscribe((previous, current, changes) -> notified.incrementAndGet(),
+                SnapshotStore.Change.TEXT, SnapshotStore.Change.PLAYBACK, SnapshotStore.Change.ARTWORK, SnapshotStore.Change.ACTIVE);
+        long start = store.get().version;
+
+        AtomicInteger installed = new AtomicInteger();
+        run(i -> {
+            // Poller: keeps whatever cover is there
+            if (store.update(prev -> track("Track " + i, true, i, i)
+                    .withImage(prev.imageLoaded, prev.coverTexW, prev.coverTexH)) != 0) {
+                installed.incrementAndGet();
+            }
+        }, i -> {
+            // Artwork thread: keeps whatever track is there
+            if (store.update(prev -> prev.withImage(true, i + 1, i + 1)) != 0) installed.incrementAndGet();
+        });
+
+        Snapshot last = store.get();
+        assertTrue(last.title.equals("Track " + (ROUNDS - 1)), "poller's last update was lost: " + last.title);
+        assertTrue(last.coverTexW == ROUNDS && last.coverTexH == ROUNDS, "artwork thread's last update was lost: " + last.coverTexW);
+        assertTrue(last.version - start == installed.get(), "versions: " + (last.version - start) + " for " + installed.get() + " updates");
+        assertTrue(notified.get() == installed.get(), "listener saw " + notified.get() + " of " + installed.get() + " updates");
+        System.out.println("  store: " + installed.get() + " updates, none lost");
+
+        // The same through get/set, as the client used to do it
+        AtomicReference<Snapshot> plain = new AtomicReference<>(Snapshot.loading());
+        run(i -> {
+            Snapshot prev = plain.get();
+            plain.set(track("Track " + i, true, i, i).withImage(prev.imageLoaded, prev.coverTexW, prev.coverTexH));
+        }, i -> {
+            Snapshot prev = plain.get();
+            plain.set(prev.withImage(true, i + 1, i + 1));
+        });
+        Snapshot racy = plain.get();
+        System.out.println("  get/set: ended on " + racy.title + " with cover " + racy.coverTexW + " of " + ROUNDS);
+    }
+
+    private interface Step {
+        void run(int i);
+    }
+
+    private static void run(Step poller, Step artwork) throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (Step step : List.of(poller, artwork)) {
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < ROUNDS; i++) step.run(i);
+            });
+            t.start();
+            threads.add(t);
+        }
+        go.countDown();
+        for (Thread t : threads) t.join();
+    }
+
+    // -------------------------
+    // Layout
+    // -------------------------
+
+    @Test
+    void layout() {
+        SnapshotStore store = new SnapshotStore(Snapshot.loading());
+        NowPlayingConfig config = new NowPlayingConfig();
+        HudLayout layout = new HudLayout();
+        HudLayout.TextMeasurer measurer = text -> text.length() * 6;
+
+        store.set(track("Windowlicker", true, 10.0, 1L));
+        assertTrue(layout.update(store.get(), config, 0, 854, 480, 9, measurer), "first layout not computed");
+        assertTrue(!layout.update(store.get(), config, 0, 854, 480, 9, measurer), "same snapshot recomputed");
+
+        store.update(prev -> track(prev.title, true, 42.0, 2L));
+        assertTrue(!layout.update(store.get(), config, 0, 854, 480, 9, measurer), "a new anchor recomputed the layout");
+
+        store.update(prev -> prev.withImage(true, 300, 300));
+        assertTrue(layout.update(store.get(), config, 0, 854, 480, 9, measurer), "a new cover didn't recompute the layout");
+        assertTrue(layout.drawCover, "cover not laid out");
+
+        store.update(prev -> track("Come to Daddy", true, 0.0, 3L).withImage(true, 300, 300));
+        assertTrue(layout.update(store.get(), config, 0, 854, 480, 9, measurer), "new text didn't recompute the layout");
+
+        store.update(prev -> track(prev.title, false, 5.0, 4L).withImage(true, 300, 300));
+        assertTrue(layout.update(store.get(), config, 0, 854, 480, 9, measurer), "pausing didn't recompute the layout");
+        assertTrue(layout.icon.equals(HudLayout.ICON_PAUSED), "paused icon not laid out");
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    private static Snapshot withTextSource(Snapshot s, long textSource, String title) {
+        return s.withTextAndPlayback(textSource, title, s.artist, s.isSpotify, s.isMediaActive, s.isPlaying,
+                s.targetProgress, s.targetStartSec, s.targetPositionSec, s.targetEndSec, s.playbackRate, s.anchorNanos);
+    }
+
+    private static Snapshot track(String title, boolean playing, double positionSec, long anchorNanos) {
+        return new Snapshot(title, "Aphex Twin", false, true, playing,
+                positionSec / 360.0, 0.0, positionSec, 360.0, 1.0, anchorNanos, false, 0, 0);
+    }
+}
@@ -0,0 +1,247 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validates {@link StateFrameCodec} and the socket transport on any OS with {@code AF_UNIX}.
+ *
+ * <ol>
+ *   <li>Round trip: random states (Unicode, empty and missing fields, optional artwork) decode to what was encoded.</li>
+ *   <li>Versions: a frame from a peer speaking another version is rejected, not decoded.</li>
+ *   <li>Fuzz: random bytes and mutated valid frames (bit flips, truncation, splices) must only ever
+ *       fail with an {@link IOException}, never another exception or a hang.</li>
+ *   <li>End to end: {@link MediaSocketStream} against the stand-in's socket server.</li>
+ * </ol>
+ *
+ * The random inputs come from a new seed on every run; a fuzz failure names it.
+ */
+class StateFrameCodecTest {
+
+    private static final String[] SAMPLES = {
+            "", "a", "Stand-In Overture", "Ångström Über Café ☕", "日本語のタイトル", "🎵🎶", "x".repeat(300)
+    };
+
+    private static final int FUZZ_ITERATIONS = 200_000;
+
+    private final long seed = System.nanoTime();
+    private final Random random = new Random(seed);
+
+    // -------------------------
+    // Round trip
+    // -------------------------
+
+    @Test
+    void roundTrip() throws IOException {
+        StateFrameCodec.Decoder decoder = new StateFrameCodec.Decoder();
+        MediaInfo decoded = new MediaInfo();
+        ByteBuffer buf = null;
+        String previousTitle = null;
+
+        for (int i = 0; i < 10_000; i++) {
+            MediaInfo info = randomInfo(random);
+            byte[] art = random.nextInt(4) == 0 ? randomBytes(random, random.nextInt(300_000)) : null;
+
+            buf = StateFrameCodec.encode(info, art, buf);
+            boolean hasArt = decoder.decode(buf, decoded);
+
+            assertTrue(!buf.hasRemaining(), "decoder did not consume the whole frame");
+            assertTrue(hasArt == (art != null), "artwork flag");
+            if (art != null) {
+                ByteBuffer view = decoder.artwork();
+                byte[] got = new byte[view.remaining()];
+                view.get(got);
+                assertTrue(java.util.Arrays.equals(art, got), "artwork bytes");
+            }
+
+            assertTrue(Objects.equals(orEmpty(info.title), decoded.title), "title");
+            assertTrue(Objects.equals(orEmpty(info.artist), decoded.artist), "artist");
+            assertTrue(Objects.equals(orEmpty(info.app), decoded.app), "app");
+            assertTrue(Objects.equals(orEmpty(info.status), decoded.status), "status");
+            assertTrue(Objects.equals(info.imageHash == null || info.imageHash.isEmpty() ? null : info.imageHash, decoded.imageHash), "imageHash");
+            assertTrue(info.positionMs == decoded.positionMs, "positionMs");
+            assertTrue(info.startMs == decoded.startMs, "startMs");
+            assertTrue(info.endMs == decoded.endMs, "endMs");
+            assertTrue(info.playbackRate == decoded.playbackRate, "playbackRate");
+            assertTrue(info.anchorMs == decoded.anchorMs, "anchorMs");
+            assertTrue(info.nowMs == decoded.nowMs, "nowMs");
+
+            // Unchanged fields must come back as the very same String
+            if (previousTitle != null && previousTitle.equals(decoded.title)) {
+                assertTrue(previousTitle == decoded.title, "unchanged title was decoded again");
+            }
+            previousTitle = decoded.title;
+        }
+    }
+
+    @Test
+    void otherVersion() {
+        ByteBuffer frame = StateFrameCodec.encode(randomInfo(random), null, null);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+
+        for (int version : new int[] {StateFrameCodec.VERSION - 1, StateFrameCodec.VERSION + 1}) {
+            bytes[2] = (byte) version;
+            try {
+                new StateFrameCodec.Decoder().decode(ByteBuffer.wrap(bytes), new MediaInfo());
+                throw new AssertionError("Version " + version + " frame was decoded");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().startsWith("Unsupported frame version"), "version " + version + ": " + expected.getMessage());
+            }
+        }
+    }
+
+    // -------------------------
+    // Fuzz
+    // -------------------------
+
+    @Test
+    void fuzz() {
+        StateFrameCodec.Decoder decoder = new StateFrameCodec.Decoder();
+        MediaInfo into = new MediaInfo();
+
+        List<byte[]> corpus = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ByteBuffer frame = StateFrameCodec.encode(randomInfo(random),
+                    random.nextBoolean() ? randomBytes(random, random.nextInt(2048)) : null, null);
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            corpus.add(bytes);
+        }
+
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            byte[] input = mutate(random, corpus.get(random.nextInt(corpus.size())), corpus);
+            ByteBuffer buf = random.nextBoolean() ? ByteBuffer.wrap(input) : direct(input);
+            try {
+                decoder.decode(buf, into);
+            } catch (IOException expected) {
+                // Malformed input is fine as long as it is reported this way
+            } catch (RuntimeException e) {
+                throw new AssertionError("Decoder threw " + e + " for input #" + i + " (" + input.length + " bytes, seed " + seed + ")", e);
+            }
+        }
+    }
+
+    private static byte[] mutate(Random random, byte[] valid, List<byte[]> corpus) {
+        byte[] out;
+        switch (random.nextInt(6)) {
+            case 0 -> out = randomBytes(random, random.nextInt(64));
+            case 1 -> {
+                out = valid.clone();
+                int flips = 1 + random.nextInt(8);
+                for (int f = 0; f < flips; f++) out[random.nextInt(out.length)] ^= (byte) (1 << random.nextInt(8));
+            }
+            case 2 -> out = java.util.Arrays.copyOf(valid, random.nextInt(valid.length));
+            case 3 -> {
+                // Splice the head of one frame onto the tail of another
+                byte[] other = corpus.get(random.nextInt(corpus.size()));
+                int cut = random.nextInt(Math.min(valid.length, other.length));
+                out = valid.clone();
+                System.arraycopy(other, cut, out, cut, Math.min(other.length, out.length) - cut);
+            }
+            case 4 -> {
+                // Valid header, random body length field
+                out = valid.clone();
+                ByteBuffer.wrap(out).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(4, random.nextInt());
+            }
+            default -> {
+                // Overwrite a byte with a varint continuation marker
+                out = valid.clone();
+                out[StateFrameCodec.HEADER_BYTES + random.nextInt(out.length - StateFrameCodec.HEADER_BYTES)] = (byte) 0xFF;
+            }
+        }
+        return out;
+    }
+
+    // -------------------------
+    // End to end
+    // -------------------------
+
+    @Test
+    void endToEnd() throws Exception {
+        Path socket = Files.createTempDirectory("nowplaying").resolve("np.sock");
+        StandInCompanionServer server = new StandInCompanionServer(0, TimeUnit.SECONDS.toMillis(60));
+        server.start();
+        server.serveSocket(socket);
+
+        AtomicReference<String> lastTitle = new AtomicReference<>();
+        AtomicReference<String> lastArtHash = new AtomicReference<>();
+        CountDownLatch firstFrame = new CountDownLatch(1);
+        CountDownLatch changedFrame = new CountDownLatch(1);
+
+        MediaSocketStream stream = new MediaSocketStream(socket, info -> {
+            String previous = lastTitle.getAndSet(info.title);
+            firstFrame.countDown();
+            if (previous != null && !previous.equals(info.title)) changedFrame.countDown();
+        }, (hash, bytes) -> lastArtHash.set(hash + ":" + bytes.length));
+
+        try {
+            stream.start();
+            assertTrue(firstFrame.await(5, TimeUnit.SECONDS), "no frame after connecting");
+            assertTrue(stream.isConnected(), "stream not connected");
+            assertTrue(lastArtHash.get() != null, "first frame carried no artwork");
+
+            String firstArt = lastArtHash.get();
+            server.nextTrack();
+            assertTrue(changedFrame.await(5, TimeUnit.SECONDS), "no frame after a track change");
+            assertTrue(!firstArt.equals(lastArtHash.get()), "new artwork was not pushed");
+        } finally {
+            stream.stop();
+            server.stop();
+        }
+    }
+
+    // -------------------------
+    // Helpers
+    // -------------------------
+
+    private static MediaInfo randomInfo(Random random) {
+        MediaInfo info = new MediaInfo();
+        info.reset();
+        info.title = randomText(random);
+        info.artist = randomText(random);
+        info.app = randomText(random);
+        info.status = random.nextBoolean() ? "Playing" : "Paused";
+        info.imageHash = random.nextBoolean() ? null : Long.toHexString(random.nextLong());
+        info.positionMs = random.nextInt(Integer.MAX_VALUE);
+        info.startMs = random.nextInt(3) == 0 ? random.nextLong() : 0L;
+        info.endMs = random.nextInt(Integer.MAX_VALUE);
+        info.playbackRate = random.nextBoolean() ? 1.0 : 0.25 + random.nextInt(8) * 0.25;
+        info.nowMs = random.nextInt(3) == 0 ? 0L : 1_700_000_000_000L + random.nextInt(Integer.MAX_VALUE);
+        info.anchorMs = info.nowMs == 0L ? 0L : info.nowMs - random.nextInt(60_000);
+        return info;
+    }
+
+    private static String randomText(Random random) {
+        return random.nextInt(3) == 0 ? null : SAMPLES[random.nextInt(SAMPLES.length)];
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes).flip();
+        return buf;
+    }
+
+    private static String orEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
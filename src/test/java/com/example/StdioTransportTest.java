@@ -0,0 +1,105 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the stdio transport end to end: starts {@link StandInCompanionServer} {@code --stdio} as a
+ * child process with {@link ProcessBuilder}, exactly like the mod starts the companion, and reads
+ * its output with the same split between log lines and {@link MediaStdioStream} state lines.
+ *
+ * Checks that state and artwork arrive, that log lines pass through untouched in between, that
+ * commands written to the child's stdin show up as new state, and that the child exits once its
+ * stdin is closed.
+ */
+class StdioTransportTest {
+
+    @Test
+    void stateThroughThePipe() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StandInCompanionServer.class.getName(), "--stdio", "60");
+        pb.redirectErrorStream(true);
+
+        AtomicReference<String> lastState = new AtomicReference<>();
+        AtomicReference<String> lastArt = new AtomicReference<>();
+        AtomicInteger logLines = new AtomicInteger();
+        AtomicInteger badLines = new AtomicInteger();
+        CountDownLatch firstState = new CountDownLatch(1);
+        CountDownLatch nextTrack = new CountDownLatch(1);
+        CountDownLatch paused = new CountDownLatch(1);
+
+        MediaStdioStream stream = new MediaStdioStream(info -> {
+            String previous = lastState.getAndSet(info.title);
+            firstState.countDown();
+            if (previous != null && !previous.equals(info.title)) nextTrack.countDown();
+            if ("Paused".equals(info.status)) paused.countDown();
+        }, (hash, bytes) -> lastArt.set(hash + ":" + bytes.length));
+        stream.start();
+
+        Process process = pb.start();
+
+        // Same split as NowPlayingClient.readCompanionOutput
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (MediaStdioStream.isStateLine(line)) {
+                        stream.accept(line);
+                        continue;
+                    }
+                    if (line.contains("NP1")) badLines.incrementAndGet();
+                    logLines.incrementAndGet();
+                    System.out.println("[child] " + line);
+                }
+            } catch (Exception e) {
+                System.err.println("Reading child output failed: " + e);
+            } finally {
+                stream.endOfStream();
+            }
+        }, "StdioTest-Reader");
+        reader.start();
+
+        try (OutputStream stdin = process.getOutputStream()) {
+            assertTrue(firstState.await(10, TimeUnit.SECONDS), "no state line from the child");
+            assertTrue(stream.isConnected(), "stream not connected after the first state");
+            assertTrue(!stream.ignoredByCompanion(0L, () -> true), "a companion printing state was taken for one that ignored --stdio");
+            assertTrue(lastArt.get() != null, "first state carried no artwork");
+
+            String firstArt = lastArt.get();
+            command(stdin, "next");
+            assertTrue(nextTrack.await(5, TimeUnit.SECONDS), "no state after 'next'");
+            assertTrue(!firstArt.equals(lastArt.get()), "new artwork was not pushed");
+
+            command(stdin, "pause");
+            assertTrue(paused.await(5, TimeUnit.SECONDS), "no paused state after 'pause'");
+        } catch (Throwable t) {
+            process.destroyForcibly();
+            throw t;
+        }
+
+        // Closing stdin is how the child learns its parent is gone
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS), "child did not exit after stdin closed");
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(!stream.isConnected(), "stream still connected after end of output");
+
+        assertTrue(logLines.get() >= 3, "expected log lines between the state lines, got " + logLines.get());
+        assertTrue(badLines.get() == 0, "state lines leaked into the log");
+    }
+
+    private static void command(OutputStream stdin, String command) throws Exception {
+        stdin.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+    }
+}